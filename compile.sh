@@ -8,3 +8,7 @@ javac \
  -Xlint:unchecked \
  -Xmaxerrs 1000 \
  $(find src/ -name \*.java)
+
+java \
+ -cp bin/:resources/ \
+ org.khelekore.parjac.JavaGrammarHelper bin/java_8.pj.image
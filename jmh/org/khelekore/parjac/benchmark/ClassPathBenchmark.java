@@ -0,0 +1,33 @@
+package org.khelekore.parjac.benchmark;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.khelekore.parjac.CompilerDiagnosticCollector;
+import org.khelekore.parjac.semantics.ClassResourceHolder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Scan the boot class path, as every compilation does. */
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+@Warmup (iterations = 5)
+@Measurement (iterations = 5)
+@Fork (1)
+public class ClassPathBenchmark {
+
+    @Benchmark public ClassResourceHolder scanClassPath () throws IOException {
+	CompilerDiagnosticCollector diagnostics = new CompilerDiagnosticCollector ();
+	ClassResourceHolder crh = new ClassResourceHolder (Collections.emptyList (), diagnostics);
+	crh.scanClassPath ();
+	if (diagnostics.hasError ())
+	    throw new IllegalStateException ("Failed to scan class path");
+	return crh;
+    }
+}
@@ -0,0 +1,101 @@
+package org.khelekore.parjac.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.khelekore.parjac.BytecodeWriter;
+import org.khelekore.parjac.CompilationArguments;
+import org.khelekore.parjac.Compiler;
+import org.khelekore.parjac.CompilerDiagnosticCollector;
+import org.khelekore.parjac.FileSourceProvider;
+import org.khelekore.parjac.JavaGrammarHelper;
+import org.khelekore.parjac.batch.CorpusGenerator;
+import org.khelekore.parjac.grammar.Grammar;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Run the whole compiler, from reading the files to generating bytecode,
+ *  on a project from the CorpusGenerator, in packages of 100 classes.
+ *  The compiler runs its parallel steps in a pool with the given number of threads.
+ *  The bytecode is thrown away, so disk writes are not part of the time.
+ *  Use "-p files=100000" for really large projects.
+ */
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+@Warmup (iterations = 5)
+@Measurement (iterations = 5)
+@Fork (1)
+public class CompilerBenchmark {
+    @Param ({"1", "2", "4"})
+    private int threads;
+
+    @Param ({"1000"})
+    private int files;
+
+    private Grammar g;
+    private Path srcDir;
+    private ForkJoinPool pool;
+
+    @Setup public void setup () throws IOException {
+	g = JavaGrammarHelper.getValidatedJavaGrammar (false);
+	srcDir = Files.createTempDirectory ("parjac_bench");
+	int classes = Math.min (files, 100);
+	new CorpusGenerator (files / classes, classes, 10, 4).write (srcDir);
+	pool = new ForkJoinPool (threads);
+    }
+
+    @TearDown (Level.Trial) public void shutdown () throws IOException {
+	pool.shutdown ();
+	try (Stream<Path> s = Files.walk (srcDir)) {
+	    s.sorted (Comparator.reverseOrder ()).forEach (p -> p.toFile ().delete ());
+	}
+    }
+
+    @Benchmark public CompilerDiagnosticCollector compile () throws InterruptedException, ExecutionException {
+	return pool.submit (this::compileAll).get ();
+    }
+
+    private CompilerDiagnosticCollector compileAll () {
+	CompilerDiagnosticCollector diagnostics = new CompilerDiagnosticCollector ();
+	FileSourceProvider sourceProvider =
+	    new FileSourceProvider (Collections.singletonList (srcDir), StandardCharsets.UTF_8);
+	CompilationArguments settings =
+	    new CompilationArguments (sourceProvider, new NullBytecodeWriter (),
+				      Collections.emptyList (), new CompilationArguments.Options ());
+	new Compiler (diagnostics, g, settings).compile ();
+	if (diagnostics.hasError ())
+	    throw new IllegalStateException ("Failed to compile benchmark input: " +
+					     diagnostics.getDiagnostics ().findFirst ().get ());
+	return diagnostics;
+    }
+
+    private static class NullBytecodeWriter implements BytecodeWriter {
+	public void createDirectory (Path path) {
+	    // nothing to do
+	}
+
+	public void write (Path path, byte[] data) {
+	    // thrown away
+	}
+    }
+}
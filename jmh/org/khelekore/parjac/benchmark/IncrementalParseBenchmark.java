@@ -0,0 +1,92 @@
+package org.khelekore.parjac.benchmark;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.khelekore.parjac.CompilerDiagnosticCollector;
+import org.khelekore.parjac.JavaGrammarHelper;
+import org.khelekore.parjac.grammar.Grammar;
+import org.khelekore.parjac.lexer.CharBufferLexer;
+import org.khelekore.parjac.parser.EarleyParser;
+import org.khelekore.parjac.parser.IncrementalParser;
+import org.khelekore.parjac.parser.JavaTreeBuilder;
+import org.khelekore.parjac.parser.PredictCache;
+import org.khelekore.parjac.tree.SyntaxTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Make small edits in the middle of a file with about 10k lines, to compare
+ *  parsing the edited text again with the incremental parser to a full parse.
+ *  Each operation does an edit or undoes the previous one.
+ */
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+@Warmup (iterations = 5)
+@Measurement (iterations = 5)
+@Fork (1)
+public class IncrementalParseBenchmark {
+    @Param ({"literal", "statement"})
+    private String edit;
+
+    private Grammar g;
+    private PredictCache predictCache;
+    private JavaTreeBuilder treeBuilder;
+    private final Path path = Paths.get ("Benchmark.java");
+    private IncrementalParser incrementalParser;
+    private String from;
+    private String to;
+    // True if the text has the edit, to can contain from so the text can not tell
+    private boolean edited;
+
+    @Setup public void setup () throws IOException {
+	g = JavaGrammarHelper.getValidatedJavaGrammar (false);
+	predictCache = new PredictCache (g);
+	treeBuilder = new JavaTreeBuilder (g);
+	// 11 lines for each method
+	String source = SourceGenerator.classWithMethods ("C", 910);
+	if (edit.equals ("literal")) {
+	    from = "\tint x = a * 455 + counter;\n";
+	    to = "\tint x = a * 4550 + counter;\n";
+	} else {
+	    from = "\tint x = a * 455 + counter;\n";
+	    to = from + "\tcounter++;\n";
+	}
+	incrementalParser = new IncrementalParser (g, path, predictCache, treeBuilder);
+	check (incrementalParser.parse (source, new CompilerDiagnosticCollector ()));
+    }
+
+    @Benchmark public SyntaxTree incremental () {
+	String current = edited ? to : from;
+	String replacement = edited ? from : to;
+	edited = !edited;
+	int offset = incrementalParser.getText ().indexOf (current);
+	return check (incrementalParser.edit (offset, current.length (), replacement,
+					      new CompilerDiagnosticCollector ()));
+    }
+
+    @Benchmark public SyntaxTree full () {
+	CharBufferLexer lexer = new CharBufferLexer (CharBuffer.wrap (incrementalParser.getText ()));
+	EarleyParser ep = new EarleyParser (g, path, lexer, predictCache, treeBuilder,
+					    new CompilerDiagnosticCollector (), false);
+	return check (ep.parse ());
+    }
+
+    private static SyntaxTree check (SyntaxTree tree) {
+	if (tree == null)
+	    throw new IllegalStateException ("Failed to parse benchmark input");
+	return tree;
+    }
+}
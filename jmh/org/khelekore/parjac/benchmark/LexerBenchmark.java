@@ -0,0 +1,78 @@
+package org.khelekore.parjac.benchmark;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.khelekore.parjac.lexer.ByteBufferLexer;
+import org.khelekore.parjac.lexer.CharBufferLexer;
+import org.khelekore.parjac.lexer.Lexer;
+import org.khelekore.parjac.lexer.Token;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Lex a generated class, the tokens counter gives tokens per second.
+ *  Lexers do not share anything but the symbol table, run with "-t 4" to
+ *  see how that scales and "-prof gc" for allocations.
+ */
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.Throughput)
+@OutputTimeUnit (TimeUnit.SECONDS)
+@Warmup (iterations = 5)
+@Measurement (iterations = 5)
+@Fork (1)
+public class LexerBenchmark {
+    @Param ({"char", "byte"})
+    private String lexer;
+
+    @Param ({"code", "comments", "literals"})
+    private String input;
+
+    private char[] chars;
+    private byte[] bytes;
+
+    @State (Scope.Thread)
+    @AuxCounters
+    public static class Counters {
+	public long tokens;
+
+	@Setup (Level.Iteration) public void clean () {
+	    tokens = 0;
+	}
+    }
+
+    @Setup public void setup () {
+	String source;
+	switch (input) {
+	case "code": source = SourceGenerator.classWithMethods ("Methods", 200); break;
+	case "comments": source = SourceGenerator.commentedClass (200); break;
+	case "literals": source = SourceGenerator.literalTable ("int", 5000); break;
+	default: throw new IllegalArgumentException ("Unknown input: " + input);
+	}
+	chars = source.toCharArray ();
+	bytes = source.getBytes (StandardCharsets.UTF_8);
+    }
+
+    @Benchmark public int lex (Counters counters) {
+	Lexer l = lexer.equals ("char") ?
+	    new CharBufferLexer (CharBuffer.wrap (chars)) :
+	    new ByteBufferLexer (ByteBuffer.wrap (bytes));
+	int tokens = 0;
+	while (l.nextNonWhitespaceToken () != Token.END_OF_INPUT)
+	    tokens++;
+	counters.tokens += tokens;
+	return tokens;
+    }
+}
@@ -0,0 +1,55 @@
+package org.khelekore.parjac.benchmark;
+
+import java.nio.CharBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.khelekore.parjac.lexer.CharBufferLexer;
+import org.khelekore.parjac.lexer.Token;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Lex generated lookup tables that are mostly numeric literals. */
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+@Warmup (iterations = 5)
+@Measurement (iterations = 5)
+@Fork (1)
+public class NumericLiteralBenchmark {
+    @Param ({"int", "hex", "long", "double"})
+    private String kind;
+
+    @Param ({"10000", "100000"})
+    private int size;
+
+    private String source;
+
+    @Setup public void setup () {
+	source = SourceGenerator.literalTable (kind, size);
+    }
+
+    @Benchmark public long lex () {
+	CharBufferLexer lexer = new CharBufferLexer (CharBuffer.wrap (source));
+	long sum = 0;
+	while (lexer.hasMoreTokens ()) {
+	    Token t = lexer.nextNonWhitespaceToken ();
+	    switch (t) {
+	    case INT_LITERAL: sum += lexer.getIntValue (); break;
+	    case LONG_LITERAL: sum += lexer.getLongValue (); break;
+	    case DOUBLE_LITERAL: sum += (long)lexer.getDoubleValue (); break;
+	    case ERROR: throw new IllegalStateException ("Failed to lex benchmark input: " + lexer.getError ());
+	    default: break;
+	    }
+	}
+	return sum;
+    }
+}
@@ -0,0 +1,88 @@
+package org.khelekore.parjac.benchmark;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.khelekore.parjac.CompilerDiagnosticCollector;
+import org.khelekore.parjac.JavaGrammarHelper;
+import org.khelekore.parjac.grammar.Grammar;
+import org.khelekore.parjac.lexer.CharBufferLexer;
+import org.khelekore.parjac.parser.EarleyParser;
+import org.khelekore.parjac.parser.JavaTreeBuilder;
+import org.khelekore.parjac.parser.PredictCache;
+import org.khelekore.parjac.tree.SyntaxTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Parse a set of files in parallel, using one shared PredictCache,
+ *  to see how parsing scales with the number of threads.
+ *  Throughput should grow linearly with the threads up to the number of cores.
+ */
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.Throughput)
+@OutputTimeUnit (TimeUnit.SECONDS)
+@Warmup (iterations = 5)
+@Measurement (iterations = 5)
+@Fork (1)
+public class ParseScalingBenchmark {
+    @Param ({"1", "2", "4", "8"})
+    private int threads;
+
+    @Param ({"64"})
+    private int files;
+
+    private Grammar g;
+    private PredictCache predictCache;
+    private JavaTreeBuilder treeBuilder;
+    private List<String> sources;
+    private ForkJoinPool pool;
+
+    @Setup public void setup () throws IOException {
+	g = JavaGrammarHelper.getValidatedJavaGrammar (false);
+	predictCache = new PredictCache (g);
+	treeBuilder = new JavaTreeBuilder (g);
+	sources = new ArrayList<> ();
+	for (int i = 0; i < files; i++)
+	    sources.add (SourceGenerator.classWithMethods ("C" + i, 20));
+	pool = new ForkJoinPool (threads);
+    }
+
+    @TearDown (Level.Trial) public void shutdown () {
+	pool.shutdown ();
+    }
+
+    /** One operation is parsing all the files */
+    @Benchmark public long parseAll () throws InterruptedException, ExecutionException {
+	return pool.submit (() -> sources.parallelStream ().mapToLong (this::parse).sum ()).get ();
+    }
+
+    private long parse (String source) {
+	CompilerDiagnosticCollector diagnostics = new CompilerDiagnosticCollector ();
+	Path path = Paths.get ("Benchmark.java");
+	CharBufferLexer lexer = new CharBufferLexer (CharBuffer.wrap (source));
+	EarleyParser ep = new EarleyParser (g, path, lexer, predictCache, treeBuilder,
+					    diagnostics, false);
+	SyntaxTree tree = ep.parse ();
+	if (tree == null)
+	    throw new IllegalStateException ("Failed to parse benchmark input");
+	return source.length ();
+    }
+}
@@ -0,0 +1,79 @@
+package org.khelekore.parjac.benchmark;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.khelekore.parjac.CompilerDiagnosticCollector;
+import org.khelekore.parjac.JavaGrammarHelper;
+import org.khelekore.parjac.grammar.Grammar;
+import org.khelekore.parjac.lexer.CharBufferLexer;
+import org.khelekore.parjac.parser.EarleyParser;
+import org.khelekore.parjac.parser.JavaTreeBuilder;
+import org.khelekore.parjac.parser.PredictCache;
+import org.khelekore.parjac.tree.SyntaxTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Parse generated sources: a large switch, a large enum and a class with many methods. */
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+@Warmup (iterations = 5)
+@Measurement (iterations = 5)
+@Fork (1)
+public class ParserBenchmark {
+    @Param ({"100", "1000"})
+    private int size;
+
+    private Grammar g;
+    private PredictCache predictCache;
+    private JavaTreeBuilder treeBuilder;
+    private String switchSource;
+    private String enumSource;
+    private String classSource;
+    private final Path path = Paths.get ("Benchmark.java");
+
+    @Setup public void setup () throws IOException {
+	g = JavaGrammarHelper.getValidatedJavaGrammar (false);
+	predictCache = new PredictCache (g);
+	treeBuilder = new JavaTreeBuilder (g);
+	switchSource = SourceGenerator.switchTable (size);
+	enumSource = SourceGenerator.enumBody (size);
+	classSource = SourceGenerator.classWithMethods ("Methods", size / 10);
+    }
+
+    @Benchmark public SyntaxTree parseSwitch () {
+	return parse (switchSource);
+    }
+
+    @Benchmark public SyntaxTree parseEnum () {
+	return parse (enumSource);
+    }
+
+    @Benchmark public SyntaxTree parseClass () {
+	return parse (classSource);
+    }
+
+    private SyntaxTree parse (String source) {
+	CompilerDiagnosticCollector diagnostics = new CompilerDiagnosticCollector ();
+	CharBufferLexer lexer = new CharBufferLexer (CharBuffer.wrap (source));
+	EarleyParser ep = new EarleyParser (g, path, lexer, predictCache, treeBuilder,
+					    diagnostics, false);
+	SyntaxTree tree = ep.parse ();
+	if (diagnostics.hasError ())
+	    throw new IllegalStateException ("Failed to parse benchmark input");
+	return tree;
+    }
+}
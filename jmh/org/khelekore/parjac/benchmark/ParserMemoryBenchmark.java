@@ -0,0 +1,109 @@
+package org.khelekore.parjac.benchmark;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.CharBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.khelekore.parjac.CompilerDiagnosticCollector;
+import org.khelekore.parjac.JavaGrammarHelper;
+import org.khelekore.parjac.grammar.Grammar;
+import org.khelekore.parjac.lexer.CharBufferLexer;
+import org.khelekore.parjac.parser.EarleyParser;
+import org.khelekore.parjac.parser.JavaTreeBuilder;
+import org.khelekore.parjac.parser.PackedEarleyParser;
+import org.khelekore.parjac.parser.PredictCache;
+import org.khelekore.parjac.tree.SyntaxTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Compare the memory use of the object and the packed earley parser.
+ *  Run with "-prof gc", divide gc.alloc.rate.norm with the token count
+ *  to get allocated bytes per token. The heap retained by a finished
+ *  parser is printed as bytes per token at tear down.
+ */
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+@Warmup (iterations = 5)
+@Measurement (iterations = 5)
+@Fork (1)
+public class ParserMemoryBenchmark {
+    @Param ({"object", "packed"})
+    private String parser;
+
+    @Param ({"1000"})
+    private int size;
+
+    private Grammar g;
+    private PredictCache predictCache;
+    private JavaTreeBuilder treeBuilder;
+    private String source;
+    private int tokens;
+    private final Path path = Paths.get ("Benchmark.java");
+
+    @Setup public void setup () throws IOException {
+	g = JavaGrammarHelper.getValidatedJavaGrammar (false);
+	predictCache = new PredictCache (g);
+	treeBuilder = new JavaTreeBuilder (g);
+	source = SourceGenerator.classWithMethods ("Memory", size);
+	CharBufferLexer lexer = new CharBufferLexer (CharBuffer.wrap (source));
+	while (lexer.hasMoreTokens ()) {
+	    lexer.nextNonWhitespaceToken ();
+	    tokens++;
+	}
+	System.out.println ("\ntokens: " + tokens);
+    }
+
+    @TearDown public void reportRetained () {
+	MemoryMXBean mem = ManagementFactory.getMemoryMXBean ();
+	long before = usedAfterGC (mem);
+	Object p = createParser (new CompilerDiagnosticCollector ());
+	parse (p);
+	long after = usedAfterGC (mem);
+	System.out.printf ("\n%s: retained after parse: %d bytes/token%n", parser,
+			   (after - before) / tokens);
+	if (p == null)	// keep the parser alive until we have measured
+	    System.out.println ();
+    }
+
+    private static long usedAfterGC (MemoryMXBean mem) {
+	for (int i = 0; i < 5; i++)
+	    System.gc ();
+	return mem.getHeapMemoryUsage ().getUsed ();
+    }
+
+    @Benchmark public SyntaxTree parse () {
+	CompilerDiagnosticCollector diagnostics = new CompilerDiagnosticCollector ();
+	SyntaxTree tree = parse (createParser (diagnostics));
+	if (diagnostics.hasError ())
+	    throw new IllegalStateException ("Failed to parse benchmark input");
+	return tree;
+    }
+
+    private Object createParser (CompilerDiagnosticCollector diagnostics) {
+	CharBufferLexer lexer = new CharBufferLexer (CharBuffer.wrap (source));
+	if (parser.equals ("packed"))
+	    return new PackedEarleyParser (g, path, lexer, predictCache, treeBuilder, diagnostics, false);
+	return new EarleyParser (g, path, lexer, predictCache, treeBuilder, diagnostics, false);
+    }
+
+    private static SyntaxTree parse (Object p) {
+	if (p instanceof PackedEarleyParser)
+	    return ((PackedEarleyParser)p).parse ();
+	return ((EarleyParser)p).parse ();
+    }
+}
@@ -0,0 +1,66 @@
+package org.khelekore.parjac.benchmark;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.khelekore.parjac.CompilerDiagnosticCollector;
+import org.khelekore.parjac.JavaGrammarHelper;
+import org.khelekore.parjac.grammar.Grammar;
+import org.khelekore.parjac.lexer.CharBufferLexer;
+import org.khelekore.parjac.parser.EarleyParser;
+import org.khelekore.parjac.parser.JavaTreeBuilder;
+import org.khelekore.parjac.parser.PredictCache;
+import org.khelekore.parjac.tree.SyntaxTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Parse deeply nested right recursive input, the time should grow linearly with depth. */
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+@Warmup (iterations = 5)
+@Measurement (iterations = 5)
+@Fork (1)
+public class RightRecursionBenchmark {
+    @Param ({"elseif", "assign", "ternary"})
+    private String kind;
+
+    @Param ({"250", "500", "1000", "2000"})
+    private int depth;
+
+    private Grammar g;
+    private PredictCache predictCache;
+    private JavaTreeBuilder treeBuilder;
+    private String source;
+    private final Path path = Paths.get ("Nested.java");
+
+    @Setup public void setup () throws IOException {
+	g = JavaGrammarHelper.getValidatedJavaGrammar (false);
+	predictCache = new PredictCache (g);
+	treeBuilder = new JavaTreeBuilder (g);
+	source = SourceGenerator.rightRecursive (kind, depth);
+    }
+
+    @Benchmark public SyntaxTree parse () {
+	CompilerDiagnosticCollector diagnostics = new CompilerDiagnosticCollector ();
+	CharBufferLexer lexer = new CharBufferLexer (CharBuffer.wrap (source));
+	EarleyParser ep = new EarleyParser (g, path, lexer, predictCache, treeBuilder,
+					    diagnostics, false);
+	SyntaxTree tree = ep.parse ();
+	if (diagnostics.hasError ())
+	    throw new IllegalStateException ("Failed to parse benchmark input");
+	return tree;
+    }
+}
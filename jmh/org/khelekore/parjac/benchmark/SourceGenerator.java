@@ -0,0 +1,154 @@
+package org.khelekore.parjac.benchmark;
+
+/** Generate java sources for the benchmarks. */
+public class SourceGenerator {
+
+    /** A class with one method holding a switch with the given number of cases */
+    public static String switchTable (int cases) {
+	StringBuilder sb = new StringBuilder ();
+	sb.append ("class Switch {\n");
+	sb.append ("    int get (int i) {\n");
+	sb.append ("\tswitch (i) {\n");
+	for (int i = 0; i < cases; i++)
+	    sb.append ("\tcase ").append (i).append (": return ").append (i * 7).append (" + i;\n");
+	sb.append ("\tdefault: return -1;\n");
+	sb.append ("\t}\n");
+	sb.append ("    }\n");
+	sb.append ("}\n");
+	return sb.toString ();
+    }
+
+    /** An enum with the given number of constants */
+    public static String enumBody (int constants) {
+	StringBuilder sb = new StringBuilder ();
+	sb.append ("enum Constants {\n");
+	for (int i = 0; i < constants; i++) {
+	    sb.append ("    C").append (i).append (" (").append (i).append (", \"c").append (i).append ("\")");
+	    sb.append (i < constants - 1 ? ",\n" : ";\n");
+	}
+	sb.append ("    private final int id;\n");
+	sb.append ("    private final String name;\n");
+	sb.append ("    private Constants (int id, String name) {\n");
+	sb.append ("\tthis.id = id;\n");
+	sb.append ("\tthis.name = name;\n");
+	sb.append ("    }\n");
+	sb.append ("}\n");
+	return sb.toString ();
+    }
+
+    /** A class with some fields and the given number of methods */
+    public static String classWithMethods (String name, int methods) {
+	StringBuilder sb = new StringBuilder ();
+	sb.append ("package bench;\n\n");
+	sb.append ("import java.util.ArrayList;\n");
+	sb.append ("import java.util.List;\n\n");
+	sb.append ("public class ").append (name).append (" {\n");
+	sb.append ("    private final List<String> values = new ArrayList<> ();\n");
+	sb.append ("    private int counter;\n\n");
+	for (int i = 0; i < methods; i++) {
+	    sb.append ("    public int method").append (i).append (" (int a, String s) {\n");
+	    sb.append ("\tint x = a * ").append (i).append (" + counter;\n");
+	    sb.append ("\tif (x > 10 && s != null) {\n");
+	    sb.append ("\t    values.add (s + x);\n");
+	    sb.append ("\t} else {\n");
+	    sb.append ("\t    for (int j = 0; j < a; j++)\n");
+	    sb.append ("\t\tcounter += j;\n");
+	    sb.append ("\t}\n");
+	    sb.append ("\treturn values.size () + x;\n");
+	    sb.append ("    }\n\n");
+	}
+	sb.append ("}\n");
+	return sb.toString ();
+    }
+
+    /** A class with a license header and javadoc on each of the given number of methods */
+    public static String commentedClass (int methods) {
+	StringBuilder sb = new StringBuilder ();
+	sb.append ("/*\n");
+	for (int i = 0; i < 15; i++)
+	    sb.append (" * Licensed under the same terms as the rest of this project, see the license file.\n");
+	sb.append (" */\n");
+	sb.append ("package bench;\n\n");
+	sb.append ("/** A class that has more comments than code. */\n");
+	sb.append ("public class Commented {\n");
+	for (int i = 0; i < methods; i++) {
+	    sb.append ("    /** Get the value for the given index.\n");
+	    sb.append ("     *  This comment is here to make the input look like a documented api.\n");
+	    sb.append ("     * @param a the index to look at\n");
+	    sb.append ("     * @return the value at the index\n");
+	    sb.append ("     */\n");
+	    sb.append ("    public int method").append (i).append (" (int a) {\n");
+	    sb.append ("\t// scale the index, see the class comment\n");
+	    sb.append ("\treturn a * ").append (i).append (";\n");
+	    sb.append ("    }\n\n");
+	}
+	sb.append ("}\n");
+	return sb.toString ();
+    }
+
+    /** A method with a right recursive construct nested to the given depth.
+     *  @param kind one of "elseif", "assign" or "ternary"
+     */
+    public static String rightRecursive (String kind, int depth) {
+	StringBuilder sb = new StringBuilder ();
+	sb.append ("class Nested {\n");
+	sb.append ("    int get (int a) {\n");
+	sb.append ("\tint x;\n\t");
+	switch (kind) {
+	case "elseif":
+	    sb.append ("if (a == 0) x = 0;");
+	    for (int i = 1; i < depth; i++)
+		sb.append ("\n\telse if (a == ").append (i).append (") x = ").append (i).append (";");
+	    break;
+	case "assign":
+	    sb.append ("x = ");
+	    for (int i = 0; i < depth; i++)
+		sb.append ("a = ");
+	    sb.append ("0;");
+	    break;
+	case "ternary":
+	    sb.append ("x = ");
+	    for (int i = 0; i < depth; i++)
+		sb.append ("a == ").append (i).append (" ? ").append (i).append (" : ");
+	    sb.append ("-1;");
+	    break;
+	default:
+	    throw new IllegalArgumentException ("Unknown kind: " + kind);
+	}
+	sb.append ("\n\treturn x;\n");
+	sb.append ("    }\n");
+	sb.append ("}\n");
+	return sb.toString ();
+    }
+
+    /** A class with lookup tables holding the given number of numeric literals per kind.
+     *  @param kind one of "int", "hex", "long" or "double"
+     */
+    public static String literalTable (String kind, int size) {
+	StringBuilder sb = new StringBuilder ();
+	sb.append ("class Table {\n");
+	switch (kind) {
+	case "int": sb.append ("    static final int[] VALUES = {"); break;
+	case "hex": sb.append ("    static final int[] VALUES = {"); break;
+	case "long": sb.append ("    static final long[] VALUES = {"); break;
+	case "double": sb.append ("    static final double[] VALUES = {"); break;
+	default: throw new IllegalArgumentException ("Unknown kind: " + kind);
+	}
+	long seed = 4711;
+	for (int i = 0; i < size; i++) {
+	    seed = seed * 6364136223846793005L + 1442695040888963407L;
+	    int v = (int)(seed >>> 33);
+	    sb.append (i % 8 == 0 ? "\n\t" : " ");
+	    switch (kind) {
+	    case "int": sb.append (v); break;
+	    case "hex": sb.append ("0x").append (Integer.toHexString (v)); break;
+	    case "long": sb.append (seed >>> 1).append ('L'); break;
+	    case "double": sb.append (v / 1000.0); break;
+	    }
+	    sb.append (',');
+	}
+	sb.append ("\n    };\n");
+	sb.append ("}\n");
+	return sb.toString ();
+    }
+}
@@ -0,0 +1,93 @@
+package org.khelekore.parjac.parser;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.khelekore.parjac.CompilerDiagnosticCollector;
+import org.khelekore.parjac.JavaGrammarHelper;
+import org.khelekore.parjac.benchmark.SourceGenerator;
+import org.khelekore.parjac.grammar.Grammar;
+import org.khelekore.parjac.lexer.CharBufferLexer;
+import org.khelekore.parjac.lexer.Token;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Look up the predictions that a parser asks for when it parses a generated class.
+ *  This is in the parser package since the lookups are package private.
+ *  "cached" only does lookups in a filled cache, "cold" starts with an
+ *  empty cache so that it also calculates the predictions.
+ *  Run with "-t 4" to see how lookups in the shared cache scale.
+ */
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.Throughput)
+@OutputTimeUnit (TimeUnit.SECONDS)
+@Warmup (iterations = 5)
+@Measurement (iterations = 5)
+@Fork (1)
+public class PredictCacheBenchmark {
+    private Grammar g;
+    private PredictCache cache;
+    private final List<RuleSet> keys = new ArrayList<> ();
+    private final List<Token> nextTokens = new ArrayList<> ();
+
+    @State (Scope.Thread)
+    @AuxCounters
+    public static class Counters {
+	public long lookups;
+
+	@Setup (Level.Iteration) public void clean () {
+	    lookups = 0;
+	}
+    }
+
+    @Setup public void setup () throws IOException {
+	g = JavaGrammarHelper.getValidatedJavaGrammar (false);
+	PredictCache recorder = new PredictCache (g) {
+		@Override ListRuleHolder getPredictedRules (RuleSet rules, Token next) {
+		    keys.add (rules.copy ());
+		    nextTokens.add (next);
+		    return super.getPredictedRules (rules, next);
+		}
+	    };
+	String source = SourceGenerator.classWithMethods ("Methods", 20);
+	CompilerDiagnosticCollector diagnostics = new CompilerDiagnosticCollector ();
+	CharBufferLexer lexer = new CharBufferLexer (CharBuffer.wrap (source));
+	new EarleyParser (g, Paths.get ("Methods.java"), lexer, recorder,
+			  new JavaTreeBuilder (g), diagnostics, false).parse ();
+	if (diagnostics.hasError ())
+	    throw new IllegalStateException ("Failed to parse benchmark input");
+	cache = new PredictCache (g);
+	for (int i = 0, s = keys.size (); i < s; i++)
+	    cache.getPredictedRules (keys.get (i), nextTokens.get (i));
+    }
+
+    @Benchmark public void cached (Counters counters, Blackhole bh) {
+	counters.lookups += keys.size ();
+	lookupAll (cache, bh);
+    }
+
+    @Benchmark public void cold (Counters counters, Blackhole bh) {
+	counters.lookups += keys.size ();
+	lookupAll (new PredictCache (g), bh);
+    }
+
+    private void lookupAll (PredictCache pc, Blackhole bh) {
+	for (int i = 0, s = keys.size (); i < s; i++)
+	    bh.consume (pc.getPredictedRules (keys.get (i), nextTokens.get (i)));
+    }
+}
@@ -29,6 +29,7 @@ public class BytecodeGenerator implements TreeVisitor {
     private final Path origin;
     private final ClassInformationProvider cip;
     private final BytecodeWriter classWriter;
+    private final boolean headerOnly;
     private DottedName packageName;
     private final Deque<ClassWriterHolder> classes = new ArrayDeque<> ();
     private ClassWriterHolder currentClass;
@@ -39,12 +40,24 @@ public class BytecodeGenerator implements TreeVisitor {
     private static final String CLINIT = "<clinit>";
     private static final String ISIG = "()V";
     private static final String UNNAMED_LABEL = "";
+    private static final String STUB_EXCEPTION = "java/lang/UnsupportedOperationException";
 
     public BytecodeGenerator (Path origin, ClassInformationProvider cip,
 			      BytecodeWriter classWriter) {
+	this (origin, cip, classWriter, false);
+    }
+
+    /** Create a new generator
+     * @param headerOnly if true only the signatures are generated, fields get
+     *        no initializers, apart from constants, and every method body throws
+     *        an UnsupportedOperationException.
+     */
+    public BytecodeGenerator (Path origin, ClassInformationProvider cip,
+			      BytecodeWriter classWriter, boolean headerOnly) {
 	this.origin = origin;
 	this.cip = cip;
 	this.classWriter = classWriter;
+	this.headerOnly = headerOnly;
     }
 
     @Override public boolean visit (CompilationUnit cu) {
@@ -92,6 +105,10 @@ public class BytecodeGenerator implements TreeVisitor {
 	cid.write ();
     }
 
+    @Override public boolean visit (StaticInitializer s) {
+	return !headerOnly;
+    }
+
     @Override public boolean visit (ConstructorDeclaration c) {
 	ClassWriter cw = currentClass.cw;
 
@@ -103,12 +120,17 @@ public class BytecodeGenerator implements TreeVisitor {
 					cw.visitMethod (mods, INIT, c.getDescription (), null, getExceptions (c.getThrows ())));
 	addMethod (mi);
 	addParameters (c.getParameters ());
+	if (headerOnly) {
+	    throwStub ();
+	    return false;
+	}
 	return true;
     }
 
     @Override public void endConstructor (ConstructorDeclaration c) {
 	MethodInfo mi = removeMethod ();
-	mi.mv.visitInsn (RETURN);
+	if (!headerOnly)
+	    mi.mv.visitInsn (RETURN);
 	mi.mv.visitMaxs (mi.maxStackDepth, mi.nextId);
         mi.mv.visitEnd ();
     }
@@ -138,6 +160,14 @@ public class BytecodeGenerator implements TreeVisitor {
     @Override public boolean visit (FieldDeclaration f) {
 	ClassWriter cw = currentClass.cw;
 	int mods = f.getFlags ();
+	if (headerOnly) {
+	    for (VariableDeclarator vd : f.getVariables ().get ()) {
+		Object value = getConstantValue (mods, f.getType (), vd.getInitializer ());
+		FieldVisitor fw = cw.visitField (mods, vd.getId (), getType (f.getType ()), null, value);
+		fw.visitEnd ();
+	    }
+	    return false;
+	}
 	if (FlagsHelper.isStatic (mods))
 	    addMethod (getStaticBlock ());
 	// TODO: handle initializer blocks
@@ -178,9 +208,61 @@ public class BytecodeGenerator implements TreeVisitor {
 							getExceptions (m.getThrows ())));
 	addMethod (mi);
 	addParameters (m.getParameters ());
+	if (headerOnly) {
+	    if (!m.getBody ().isEmpty ())
+		throwStub ();
+	    return false;
+	}
 	return true;
     }
 
+    /** Generate code that throws an UnsupportedOperationException */
+    private void throwStub () {
+	MethodVisitor mv = currentMethod.mv;
+	mv.visitTypeInsn (NEW, STUB_EXCEPTION);
+	mv.visitInsn (DUP);
+	mv.visitMethodInsn (INVOKESPECIAL, STUB_EXCEPTION, INIT, ISIG, false);
+	mv.visitInsn (ATHROW);
+	currentMethod.addStack (2);
+    }
+
+    /** Get the value of a static final field that is initialized with a literal,
+     *  null for all other fields.
+     */
+    private Object getConstantValue (int mods, TreeNode type, TreeNode init) {
+	if (!FlagsHelper.isStatic (mods) || !FlagsHelper.isFinal (mods) || init == null)
+	    return null;
+	ExpressionType et = type.getExpressionType ();
+	if (et == null)
+	    return null;
+	if (init instanceof StringLiteral)
+	    return et.equals (ExpressionType.STRING) ? ((StringLiteral)init).get () : null;
+	if (!et.isPrimitiveType ())
+	    return null;
+	Number n;
+	if (init instanceof IntLiteral)
+	    n = ((IntLiteral)init).get ();
+	else if (init instanceof LongLiteral)
+	    n = ((LongLiteral)init).get ();
+	else if (init instanceof FloatLiteral)
+	    n = ((FloatLiteral)init).get ();
+	else if (init instanceof DoubleLiteral)
+	    n = ((DoubleLiteral)init).get ();
+	else if (init instanceof CharLiteral)
+	    n = (int)((CharLiteral)init).get ();
+	else if (init instanceof BooleanLiteral)
+	    n = ((BooleanLiteral)init).get () ? 1 : 0;
+	else
+	    return null;
+	if (et == ExpressionType.LONG)
+	    return n.longValue ();
+	if (et == ExpressionType.FLOAT)
+	    return n.floatValue ();
+	if (et == ExpressionType.DOUBLE)
+	    return n.doubleValue ();
+	return n.intValue ();
+    }
+
     private String[] getExceptions (Throws t) {
 	if (t == null)
 	    return null;
@@ -207,7 +289,7 @@ public class BytecodeGenerator implements TreeVisitor {
 
     @Override public void endMethod (MethodDeclaration m) {
 	MethodInfo mi = removeMethod ();
-	if (m.getResult () instanceof Result.VoidResult && methodMissingReturn (m)) {
+	if (!headerOnly && m.getResult () instanceof Result.VoidResult && methodMissingReturn (m)) {
 	    mi.mv.visitInsn (RETURN);
 	}
 	mi.mv.visitMaxs (mi.maxStackDepth, mi.nextId);
@@ -10,15 +10,26 @@ public class CompilationArguments {
     private final List<Path> classPathEntries;
     private final boolean reportTime;
     private final boolean debug;
+    private final boolean packedParser;
+    private final String clearableRules;
+    private final boolean splitFiles;
+    private final boolean deferBodies;
+    private final boolean headerOnly;
+    private final boolean fastParser;
 
     public CompilationArguments (SourceProvider sourceProvider, BytecodeWriter classWriter,
-				 List<Path> classPathEntries,
-				 boolean reportTime, boolean debug) {
+				 List<Path> classPathEntries, Options options) {
 	this.sourceProvider = sourceProvider;
 	this.classWriter = classWriter;
 	this.classPathEntries = classPathEntries;
-	this.reportTime = reportTime;
-	this.debug = debug;
+	this.reportTime = options.reportTime;
+	this.debug = options.debug;
+	this.packedParser = options.packedParser;
+	this.clearableRules = options.clearableRules;
+	this.splitFiles = options.splitFiles;
+	this.deferBodies = options.deferBodies;
+	this.headerOnly = options.headerOnly;
+	this.fastParser = options.fastParser;
     }
 
     public SourceProvider getSourceProvider () {
@@ -41,10 +52,98 @@ public class CompilationArguments {
 	return debug;
     }
 
+    /** Check if the parser that stores its states in primitive arrays should be used */
+    public boolean getPackedParser () {
+	return packedParser;
+    }
+
+    /** Get the rules that the parser clears states at, may be null to use the default rules.
+     *  @see JavaGrammarHelper#getValidatedJavaGrammar(boolean, String)
+     */
+    public String getClearableRules () {
+	return clearableRules;
+    }
+
+    /** Check if large files should be split up and parsed in parallel */
+    public boolean getSplitFiles () {
+	return splitFiles;
+    }
+
+    /** Check if method and constructor bodies should be parsed after the rest of the files */
+    public boolean getDeferBodies () {
+	return deferBodies;
+    }
+
+    /** Check if only header class files, with the signatures and constants
+     *  but no method code, should be generated
+     */
+    public boolean getHeaderOnly () {
+	return headerOnly;
+    }
+
+    /** Check if the table driven parser should be tried before the Earley parser */
+    public boolean getFastParser () {
+	return fastParser;
+    }
+
     public void validate (CompilerDiagnosticCollector diagnostics) {
     	if (sourceProvider == null)
 	    diagnostics.report (new NoSourceDiagnostics ("SourceProvider may not be null"));
 	if (classWriter == null)
 	    diagnostics.report (new NoSourceDiagnostics ("BytecodeWriter may not be null"));
     }
-}
\ No newline at end of file
+
+    /** The optional settings, all of them are off by default.
+     *  The values are copied when the CompilationArguments are created.
+     */
+    public static class Options {
+	private boolean reportTime;
+	private boolean debug;
+	private boolean packedParser;
+	private String clearableRules;
+	private boolean splitFiles;
+	private boolean deferBodies;
+	private boolean headerOnly;
+	private boolean fastParser;
+
+	public Options reportTime (boolean reportTime) {
+	    this.reportTime = reportTime;
+	    return this;
+	}
+
+	public Options debug (boolean debug) {
+	    this.debug = debug;
+	    return this;
+	}
+
+	public Options packedParser (boolean packedParser) {
+	    this.packedParser = packedParser;
+	    return this;
+	}
+
+	public Options clearableRules (String clearableRules) {
+	    this.clearableRules = clearableRules;
+	    return this;
+	}
+
+	public Options splitFiles (boolean splitFiles) {
+	    this.splitFiles = splitFiles;
+	    return this;
+	}
+
+	public Options deferBodies (boolean deferBodies) {
+	    this.deferBodies = deferBodies;
+	    return this;
+	}
+
+	public Options headerOnly (boolean headerOnly) {
+	    this.headerOnly = headerOnly;
+	    return this;
+	}
+
+	public Options fastParser (boolean fastParser) {
+	    this.fastParser = fastParser;
+	    return this;
+	}
+    }
+}
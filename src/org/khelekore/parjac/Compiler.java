@@ -1,20 +1,25 @@
 package org.khelekore.parjac;
 
 import java.io.IOException;
-import java.nio.CharBuffer;
 import java.nio.charset.MalformedInputException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 import org.khelekore.parjac.grammar.Grammar;
-import org.khelekore.parjac.lexer.CharBufferLexer;
 import org.khelekore.parjac.lexer.Lexer;
+import org.khelekore.parjac.lexer.SymbolTable;
+import org.khelekore.parjac.parser.DeferredBodyParser;
+import org.khelekore.parjac.parser.DeterministicParser;
+import org.khelekore.parjac.parser.DeterministicTable;
 import org.khelekore.parjac.parser.EarleyParser;
 import org.khelekore.parjac.parser.JavaTreeBuilder;
+import org.khelekore.parjac.parser.PackedEarleyParser;
+import org.khelekore.parjac.parser.ParallelFileParser;
 import org.khelekore.parjac.parser.PredictCache;
 import org.khelekore.parjac.semantics.ClassInformationProvider;
 import org.khelekore.parjac.semantics.ClassResourceHolder;
@@ -32,12 +37,18 @@ import org.khelekore.parjac.tree.SyntaxTree;
 /** The actual compiler
  */
 public class Compiler {
+    // When files are split, the smallest number of tokens to parse in one part
+    private static final int SPLIT_CHUNK_TOKENS = 5000;
+
     private final CompilerDiagnosticCollector diagnostics;
     private final Grammar g;
     private final PredictCache predictCache;
     private final JavaTreeBuilder treeBuilder;
+    private final DeterministicTable table;
     private final CompilationArguments settings;
     private final ClassInformationProvider cip;
+    // The identifiers of all the files, they are dropped with the compiler
+    private final SymbolTable symbols = new SymbolTable ();
 
     public Compiler (CompilerDiagnosticCollector diagnostics, Grammar g,
 		     CompilationArguments settings) {
@@ -45,6 +56,7 @@ public class Compiler {
 	this.g = g;
 	this.predictCache = new PredictCache (g);
 	this.treeBuilder = new JavaTreeBuilder (g);
+	this.table = settings.getFastParser () ? new DeterministicTable (g) : null;
 	this.settings = settings;
 
 	ClassResourceHolder crh = new ClassResourceHolder (settings.getClassPathEntries (), diagnostics);
@@ -58,11 +70,34 @@ public class Compiler {
 	if (diagnostics.hasError ())
 	    return;
 
-	List<SyntaxTree> trees = runTimed (() -> parse (sourceProvider), "Parsing");
+	List<SyntaxTree> trees;
+	if (settings.getHeaderOnly ()) {
+	    // the bodies are never needed
+	    List<DeferredBodyParser> parsers =
+		runTimed (() -> parseSignatures (sourceProvider), "Parsing signatures");
+	    if (diagnostics.hasError ())
+		return;
+	    runTimed (() -> scanClassPaths (), "Scanning classpath");
+	    trees = parsers.stream ().map (DeferredBodyParser::getTree).collect (Collectors.toList ());
+	} else if (settings.getDeferBodies ()) {
+	    List<DeferredBodyParser> parsers =
+		runTimed (() -> parseSignatures (sourceProvider), "Parsing signatures");
+	    if (diagnostics.hasError ())
+		return;
+	    // The bodies do not need the classpath, so they are parsed while it is scanned
+	    CompletableFuture<Void> scan =
+		CompletableFuture.runAsync (() -> runTimed (() -> scanClassPaths (), "Scanning classpath"));
+	    trees = runTimed (() -> parseBodies (parsers), "Parsing bodies");
+	    scan.join ();
+	} else {
+	    trees = runTimed (() -> parse (sourceProvider), "Parsing");
+	    if (diagnostics.hasError ())
+		return;
+	    runTimed (() -> scanClassPaths (), "Scanning classpath");
+	}
 	if (diagnostics.hasError ())
 	    return;
 
-	runTimed (() -> scanClassPaths (), "Scanning classpath");
 	checkSemantics (trees);
 	if (diagnostics.hasError ())
 	    return;
@@ -93,19 +128,62 @@ public class Compiler {
     }
 
     private SyntaxTree parse (SourceProvider sourceProvider, Path path) {
+	long start = System.nanoTime ();
+	Lexer lexer = getLexer (sourceProvider, path);
+	if (lexer == null)
+	    return null;
+	SyntaxTree tree;
+	if (settings.getSplitFiles ()) {
+	    ParallelFileParser pfp =
+		new ParallelFileParser (lexer, (l, goal, d) -> parse (path, l, goal, d),
+					diagnostics, SPLIT_CHUNK_TOKENS);
+	    tree = pfp.parse ();
+	} else {
+	    tree = parse (path, lexer, "Goal", diagnostics);
+	}
+	long end = System.nanoTime ();
+	if (settings.getDebug () && settings.getReportTime ())
+	    reportTime ("Parsing " + path, start, end);
+	return tree;
+    }
+
+    /** Parse the files with empty method and constructor bodies */
+    private List<DeferredBodyParser> parseSignatures (SourceProvider sourceProvider) {
+	return
+	    sourceProvider.getSourcePaths ().parallelStream ().
+	    map (p -> parseSignatures (sourceProvider, p)).
+	    filter (p -> p != null).
+	    collect (Collectors.toList ());
+    }
+
+    private DeferredBodyParser parseSignatures (SourceProvider sourceProvider, Path path) {
+	Lexer lexer = getLexer (sourceProvider, path);
+	if (lexer == null)
+	    return null;
+	DeferredBodyParser dbp =
+	    new DeferredBodyParser (lexer, (l, goal, d) -> parse (path, l, goal, d), diagnostics);
+	return dbp.parse () != null ? dbp : null;
+    }
+
+    /** Parse all the bodies of all the files as independent tasks */
+    private List<SyntaxTree> parseBodies (List<DeferredBodyParser> parsers) {
+	List<DeferredBodyParser.Body> bodies =
+	    parsers.stream ().
+	    flatMap (p -> p.getBodies ().stream ()).
+	    collect (Collectors.toList ());
+	bodies.parallelStream ().forEach (DeferredBodyParser.Body::parse);
+	return
+	    parsers.parallelStream ().
+	    map (DeferredBodyParser::finish).
+	    filter (t -> t != null).
+	    collect (Collectors.toList ());
+    }
+
+    private Lexer getLexer (SourceProvider sourceProvider, Path path) {
 	try {
-	    long start = System.nanoTime ();
 	    if (settings.getDebug ())
 		System.out.println ("parsing: " + path);
-	    CharBuffer charBuf = sourceProvider.getInput (path);
-	    Lexer lexer = new CharBufferLexer (charBuf);
-	    EarleyParser parser = new EarleyParser (g, path, lexer, predictCache, treeBuilder,
-						    diagnostics, settings.getDebug ());
-	    SyntaxTree tree = parser.parse ();
-	    long end = System.nanoTime ();
-	    if (settings.getDebug () && settings.getReportTime ())
-		reportTime ("Parsing " + path, start, end);
-	    return tree;
+	    return sourceProvider.getLexer (path, symbols);
 	} catch (MalformedInputException e) {
 	    diagnostics.report (new NoSourceDiagnostics ("Failed to decode text: %s, wrong encoding?", path));
 	    return null;
@@ -115,6 +193,40 @@ public class Compiler {
 	}
     }
 
+    private SyntaxTree parse (Path path, Lexer lexer, String goal,
+			      CompilerDiagnosticCollector diagnostics) {
+	if (table == null)
+	    return parseEarley (path, lexer, goal, diagnostics);
+	DeterministicParser parser =
+	    new DeterministicParser (table, path, lexer, treeBuilder, diagnostics, goal,
+				     (l, fallbackGoal, d) -> parseEarley (path, l, fallbackGoal, d));
+	SyntaxTree tree = parser.parse ();
+	if (settings.getDebug () && settings.getReportTime ())
+	    System.out.format ("Parsing %s, member fallbacks: %d\n", path, parser.getMemberFallbacks ());
+	return tree;
+    }
+
+    private SyntaxTree parseEarley (Path path, Lexer lexer, String goal,
+				    CompilerDiagnosticCollector diagnostics) {
+	SyntaxTree tree;
+	int peakStates;
+	if (settings.getPackedParser ()) {
+	    PackedEarleyParser parser =
+		new PackedEarleyParser (g, path, lexer, predictCache, treeBuilder,
+					diagnostics, settings.getDebug (), goal);
+	    tree = parser.parse ();
+	    peakStates = parser.getPeakRetainedStates ();
+	} else {
+	    EarleyParser parser = new EarleyParser (g, path, lexer, predictCache, treeBuilder,
+						    diagnostics, settings.getDebug (), goal);
+	    tree = parser.parse ();
+	    peakStates = parser.getPeakRetainedStates ();
+	}
+	if (settings.getDebug () && settings.getReportTime ())
+	    System.out.format ("Parsing %s, peak retained states: %d\n", path, peakStates);
+	return tree;
+    }
+
     private void scanClassPaths () {
 	try {
 	    cip.scanClassPath ();
@@ -145,6 +257,9 @@ public class Compiler {
 	runTimed (() -> checkConstructors (trees), "Checking constructors");
 	if (diagnostics.hasError ())
 	    return;
+	// Headers only need the signatures, not the types of the expressions in the bodies
+	if (settings.getHeaderOnly ())
+	    return;
 	runTimed (() -> setFieldsAndMethods (trees), "Setting fields and method types");
 	if (diagnostics.hasError ())
 	    return;
@@ -232,7 +347,8 @@ public class Compiler {
 
     private void writeClasses (SyntaxTree tree) {
 	BytecodeGenerator w =
-	    new BytecodeGenerator (tree.getOrigin (), cip, settings.getClassWriter ());
+	    new BytecodeGenerator (tree.getOrigin (), cip, settings.getClassWriter (),
+				   settings.getHeaderOnly ());
 	tree.getCompilationUnit ().visit (w);
     }
 
@@ -262,6 +378,9 @@ public class Compiler {
     }
 
     private void reportTime (String type, long start, long end) {
-	System.out.format ("%s, time taken: %.3f millis\n", type, (end - start) / 1.0e6);
+	Runtime rt = Runtime.getRuntime ();
+	long used = rt.totalMemory () - rt.freeMemory ();
+	System.out.format ("%s, time taken: %.3f millis, heap used: %d MiB\n",
+			   type, (end - start) / 1.0e6, used >> 20);
     }
 }
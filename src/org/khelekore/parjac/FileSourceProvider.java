@@ -3,18 +3,28 @@ package org.khelekore.parjac;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileVisitOption;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.stream.Collectors;
 
+import org.khelekore.parjac.lexer.ByteBufferLexer;
+import org.khelekore.parjac.lexer.Lexer;
+import org.khelekore.parjac.lexer.SymbolTable;
+
 public class FileSourceProvider implements SourceProvider {
+    // Files larger than this are memory mapped when we lex the bytes directly
+    private static final long MAP_THRESHOLD = 64 * 1024;
+
     private final List<Path> srcDirs;
     private final Charset encoding;
     private List<Path> paths = null;
@@ -62,4 +72,16 @@ public class FileSourceProvider implements SourceProvider {
 	decoder.onUnmappableCharacter (CodingErrorAction.REPORT);
 	return decoder.decode (buf);
     }
-}
\ No newline at end of file
+
+    /** Get a lexer for the given path, UTF-8 input is lexed without decoding it first */
+    @Override public Lexer getLexer (Path path, SymbolTable symbols) throws IOException {
+	if (!encoding.equals (StandardCharsets.UTF_8))
+	    return SourceProvider.super.getLexer (path, symbols);
+	try (FileChannel fc = FileChannel.open (path, StandardOpenOption.READ)) {
+	    long size = fc.size ();
+	    if (size >= MAP_THRESHOLD)
+		return new ByteBufferLexer (fc.map (FileChannel.MapMode.READ_ONLY, 0, size), symbols);
+	}
+	return new ByteBufferLexer (ByteBuffer.wrap (Files.readAllBytes (path)), symbols);
+    }
+}
@@ -1,19 +1,172 @@
 package org.khelekore.parjac;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
+import org.khelekore.parjac.grammar.ClearableRuleFinder;
 import org.khelekore.parjac.grammar.Grammar;
+import org.khelekore.parjac.grammar.GrammarImage;
 import org.khelekore.parjac.grammar.GrammarReader;
 import org.khelekore.parjac.lexer.Token;
+import org.khelekore.parjac.parser.PredictCache;
 
 public class JavaGrammarHelper {
+    private static final String GRAMMAR = "/java_8.pj";
+    private static final String IMAGE = GRAMMAR + ".image";
+    // Rules that finish a part of the input, completing them lets the parser drop states.
+    // Statements can not be cleared at, a trailing else can extend them, so the sets
+    // of a single large method are all kept until the method is done.
+    private static final List<String> CLEARABLE_RULES =
+	Arrays.asList ("ClassBodyDeclaration", "EnumConstant");
+    /** The goal for parsing a part of a class body, used when a large file is split up */
+    public static final String MEMBER_GOAL = "MemberGoal";
+    /** The goals for parsing method and constructor bodies on their own */
+    public static final String METHOD_BODY_GOAL = "MethodBodyGoal";
+    public static final String CONSTRUCTOR_BODY_GOAL = "ConstructorBodyGoal";
+    // Describes what we add to the text grammar, part of the image checksum
+    private static final String SETUP =
+	"Goal: CompilationUnit " + Token.END_OF_INPUT +
+	", " + MEMBER_GOAL + ": {ClassBodyDeclaration} " + Token.END_OF_INPUT +
+	", " + METHOD_BODY_GOAL + ": Block " + Token.END_OF_INPUT +
+	", " + CONSTRUCTOR_BODY_GOAL + ": ConstructorBody " + Token.END_OF_INPUT +
+	", clearable: " + CLEARABLE_RULES;
+
+    /** Get the java grammar, from the precompiled grammar image if there is
+     *  one that matches the text grammar, otherwise from the text grammar.
+     */
     public static Grammar getValidatedJavaGrammar (boolean debug) throws IOException {
+	return getValidatedJavaGrammar (debug, null);
+    }
+
+    /** Get the java grammar with the given clearable rules.
+     * @param clearableRules a comma separated list of rule names, "auto" to use
+     *        the rules that ClearableRuleFinder finds, "none" to not clear any
+     *        states or null to use the default rules.
+     * @throws IllegalArgumentException if a given rule can not be cleared at
+     */
+    public static Grammar getValidatedJavaGrammar (boolean debug, String clearableRules)
+	throws IOException {
+	CompilerDiagnosticCollector diagnostics = new CompilerDiagnosticCollector ();
+	Grammar g = getValidatedJavaGrammar (debug, clearableRules, diagnostics);
+	if (g == null)
+	    throw new IllegalArgumentException ("Bad clearable rules: " + clearableRules);
+	return g;
+    }
+
+    /** Get the java grammar with the given clearable rules.
+     *  Given rule names have to be known and found by ClearableRuleFinder,
+     *  since clearing at other rules can make the parse fail.
+     * @return the grammar or null if a rule name was reported as an error
+     */
+    public static Grammar getValidatedJavaGrammar (boolean debug, String clearableRules,
+						   CompilerDiagnosticCollector diagnostics)
+	throws IOException {
+	Grammar g = loadJavaGrammar (debug);
+	if (clearableRules != null) {
+	    List<String> names;
+	    if (clearableRules.equals ("auto")) {
+		names = new ClearableRuleFinder (g).find ();
+	    } else if (clearableRules.equals ("none")) {
+		names = Collections.emptyList ();
+	    } else {
+		names = Arrays.asList (clearableRules.split (","));
+		List<String> safe = new ClearableRuleFinder (g).find ();
+		boolean ok = true;
+		for (String name : names) {
+		    if (g.getRules (name) == null) {
+			diagnostics.report (new NoSourceDiagnostics ("Unknown clearable rule: %s", name));
+			ok = false;
+		    } else if (!safe.contains (name)) {
+			diagnostics.report (new NoSourceDiagnostics ("Not safe to clear states at: %s, " +
+								     "safe rules: %s", name, safe));
+			ok = false;
+		    }
+		}
+		if (!ok)
+		    return null;
+	    }
+	    g.setClearableRules (names);
+	    if (debug)
+		System.err.println ("Clearable rules: " + names);
+	}
+	return g;
+    }
+
+    private static Grammar loadJavaGrammar (boolean debug) throws IOException {
+	byte[] text = readAll (JavaGrammarHelper.class.getResource (GRAMMAR));
+	long checksum = GrammarImage.checksum (text, SETUP);
+	URL imageUrl = JavaGrammarHelper.class.getResource (IMAGE);
+	if (imageUrl != null) {
+	    Grammar g = GrammarImage.read (getImage (imageUrl), checksum, debug);
+	    if (g != null)
+		return g;
+	    if (debug)
+		System.err.println ("Grammar image is stale, using text grammar");
+	}
+	return getTextGrammar (text, debug);
+    }
+
+    private static Grammar getTextGrammar (byte[] text, boolean debug) throws IOException {
 	GrammarReader gr = new GrammarReader (debug);
-	gr.read (JavaGrammarHelper.class.getResource ("/java_8.pj"));
+	gr.read (new ByteArrayInputStream (text));
 	Grammar g = gr.getGrammar ();
 	g.addRule ("Goal", "CompilationUnit", Token.END_OF_INPUT);
-	g.addClearableRule ("ClassBodyDeclaration");
+	g.addRule (MEMBER_GOAL, g.zeroOrMore ("ClassBodyDeclaration"), Token.END_OF_INPUT);
+	g.addRule (METHOD_BODY_GOAL, "Block", Token.END_OF_INPUT);
+	g.addRule (CONSTRUCTOR_BODY_GOAL, "ConstructorBody", Token.END_OF_INPUT);
+	CLEARABLE_RULES.forEach (g::addClearableRule);
 	g.validateRules ();
 	return g;
     }
-}
\ No newline at end of file
+
+    private static ByteBuffer getImage (URL u) throws IOException {
+	if ("file".equals (u.getProtocol ())) {
+	    try (FileChannel fc = FileChannel.open (Paths.get (u.toURI ()), StandardOpenOption.READ)) {
+		return fc.map (FileChannel.MapMode.READ_ONLY, 0, fc.size ());
+	    } catch (URISyntaxException e) {
+		// fall through and read it as a stream
+	    }
+	}
+	return ByteBuffer.wrap (readAll (u));
+    }
+
+    private static byte[] readAll (URL u) throws IOException {
+	try (InputStream is = u.openStream ()) {
+	    ByteArrayOutputStream bos = new ByteArrayOutputStream ();
+	    byte[] buf = new byte[8192];
+	    int r;
+	    while ((r = is.read (buf)) != -1)
+		bos.write (buf, 0, r);
+	    return bos.toByteArray ();
+	}
+    }
+
+    /** Write the grammar image for the text grammar */
+    public static void writeGrammarImage (Path file) throws IOException {
+	byte[] text = readAll (JavaGrammarHelper.class.getResource (GRAMMAR));
+	Grammar g = getTextGrammar (text, false);
+	PredictCache pc = new PredictCache (g);
+	GrammarImage.write (g, pc.getPredictSets (), GrammarImage.checksum (text, SETUP), file);
+    }
+
+    /** Build step, write the grammar image to the given file */
+    public static void main (String[] args) throws IOException {
+	if (args.length != 1) {
+	    System.err.println ("usage: java " + JavaGrammarHelper.class.getName () + " <image file>");
+	    return;
+	}
+	writeGrammarImage (Paths.get (args[0]));
+    }
+}
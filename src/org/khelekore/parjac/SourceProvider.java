@@ -5,6 +5,10 @@ import java.nio.CharBuffer;
 import java.nio.file.Path;
 import java.util.Collection;
 
+import org.khelekore.parjac.lexer.CharBufferLexer;
+import org.khelekore.parjac.lexer.Lexer;
+import org.khelekore.parjac.lexer.SymbolTable;
+
 public interface SourceProvider {
     /** Setup for use, will be called before other methods */
     void setup (CompilerDiagnosticCollector diagnostics) throws IOException;
@@ -14,4 +18,11 @@ public interface SourceProvider {
 
     /** Get the source data for a given input path */
     CharBuffer getInput (Path path) throws IOException;
+
+    /** Get a lexer for the given input path
+     * @param symbols the table to intern the identifiers in
+     */
+    default Lexer getLexer (Path path, SymbolTable symbols) throws IOException {
+	return new CharBufferLexer (getInput (path), symbols);
+    }
 }
\ No newline at end of file
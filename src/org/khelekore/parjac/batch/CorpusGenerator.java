@@ -0,0 +1,199 @@
+package org.khelekore.parjac.batch;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/** Generate a large, synthetic, project to see how the compiler scales.
+ *
+ *  The project has a number of packages, each with the same number of classes,
+ *  class names include the package number so imports never clash.
+ *  Each class has static and instance methods with expressions of a given depth,
+ *  a static inner class, a method that returns an anonymous class, imports and
+ *  calls to classes in the same and other packages. The output is the same for
+ *  the same settings and only uses things that the compiler can check.
+ */
+public class CorpusGenerator {
+    private final int packages;
+    private final int classes;
+    private final int methods;
+    private final int depth;
+
+    /** Something that takes the generated files */
+    public interface SourceWriter {
+	/** Write one generated file
+	 * @param path the path of the file, relative to the source root
+	 * @param source the java source
+	 */
+	void write (Path path, String source) throws IOException;
+    }
+
+    /** Create a new generator
+     * @param packages the number of packages
+     * @param classes the number of classes in each package
+     * @param methods the number of static methods in each class
+     * @param depth the depth of the expressions in the methods
+     */
+    public CorpusGenerator (int packages, int classes, int methods, int depth) {
+	if (packages < 1 || classes < 1 || methods < 1 || depth < 1)
+	    throw new IllegalArgumentException ("All sizes must be positive");
+	this.packages = packages;
+	this.classes = classes;
+	this.methods = methods;
+	this.depth = depth;
+    }
+
+    /** Get the number of files this generator gives */
+    public int getNumberOfFiles () {
+	return packages * classes;
+    }
+
+    /** Write all the files into the given directory */
+    public void write (Path dir) throws IOException {
+	generate ((path, source) -> {
+		Path p = dir.resolve (path);
+		Files.createDirectories (p.getParent ());
+		Files.write (p, source.getBytes (StandardCharsets.UTF_8));
+	    });
+    }
+
+    /** Generate all the files */
+    public void generate (SourceWriter writer) throws IOException {
+	for (int p = 0; p < packages; p++) {
+	    for (int c = 0; c < classes; c++) {
+		Path path = Paths.get (packageName (p), className (p, c) + ".java");
+		writer.write (path, generateClass (p, c));
+	    }
+	}
+    }
+
+    /** Generate the source of one class */
+    public String generateClass (int p, int c) {
+	StringBuilder sb = new StringBuilder ();
+	String name = className (p, c);
+	// refer to the next class in this package and the same class in the next
+	// package, both by an import and by its full name
+	int otherPackage = (p + 1) % packages;
+	String sameRef = className (p, (c + 1) % classes);
+	String otherRef = className (otherPackage, c);
+	String fullOtherRef = packageName (otherPackage) + "." + otherRef;
+	boolean hasOther = otherPackage != p;
+
+	sb.append ("package ").append (packageName (p)).append (";\n\n");
+	sb.append ("import java.util.List;\n");
+	if (hasOther)
+	    sb.append ("import ").append (fullOtherRef).append (";\n");
+	sb.append ("\n");
+	sb.append ("/** Generated class ").append (c).append (" in package ").append (p).append (" */\n");
+	sb.append ("public class ").append (name).append (" {\n");
+	sb.append ("    public static int shared = ").append (c).append (";\n");
+	sb.append ("    private int counter;\n\n");
+
+	for (int m = 0; m < methods; m++) {
+	    sb.append ("    public static int method").append (m).append (" (int a, boolean b) {\n");
+	    sb.append ("\tint x = ");
+	    appendExpression (sb, depth, m + c);
+	    sb.append (";\n");
+	    sb.append ("\tif (b)\n");
+	    sb.append ("\t    return x + ").append (sameRef).append (".method").append (m).append (" (a, false);\n");
+	    if (m > 0)
+		sb.append ("\tx += method").append (m - 1).append (" (x, b);\n");
+	    sb.append ("\tfor (int i = 0; i < a; i++)\n");
+	    sb.append ("\t    x += Inner.get (i);\n");
+	    if (hasOther) {
+		sb.append ("\tx += ").append (otherRef).append (".shared;\n");
+		sb.append ("\treturn x + ").append (fullOtherRef).append (".method").append (m).append (" (x, false);\n");
+	    } else {
+		sb.append ("\treturn x;\n");
+	    }
+	    sb.append ("    }\n\n");
+	}
+
+	sb.append ("    public int add (int a) {\n");
+	sb.append ("\tcounter += a;\n");
+	sb.append ("\treturn counter;\n");
+	sb.append ("    }\n\n");
+
+	sb.append ("    public static List<String> names () {\n");
+	sb.append ("\treturn null;\n");
+	sb.append ("    }\n\n");
+
+	sb.append ("    public static Runnable runner () {\n");
+	sb.append ("\treturn new Runnable () {\n");
+	sb.append ("\t    public void run () {\n");
+	sb.append ("\t    }\n");
+	sb.append ("\t};\n");
+	sb.append ("    }\n\n");
+
+	sb.append ("    static class Inner {\n");
+	sb.append ("\tstatic int get (int a) {\n");
+	sb.append ("\t    return a * ").append (c + 2).append (";\n");
+	sb.append ("\t}\n");
+	sb.append ("    }\n");
+	sb.append ("}\n");
+	return sb.toString ();
+    }
+
+    private void appendExpression (StringBuilder sb, int depth, int seed) {
+	if (depth == 1) {
+	    sb.append ((seed & 1) == 0 ? "a" : String.valueOf (seed % 100));
+	    return;
+	}
+	sb.append ("(");
+	appendExpression (sb, depth - 1, seed * 31 + 7);
+	sb.append (OPERATORS[seed & 3]);
+	appendExpression (sb, depth - 1, seed * 17 + 3);
+	sb.append (")");
+    }
+
+    // no division, we do not want to divide by a zero literal
+    private static final String[] OPERATORS = { " + ", " - ", " * ", " + " };
+
+    private static String packageName (int p) {
+	return "p" + p;
+    }
+
+    private static String className (int p, int c) {
+	return "C" + p + "_" + c;
+    }
+
+    /** Write a generated project to a directory */
+    public static void main (String[] args) throws IOException {
+	Path dir = null;
+	int packages = 10;
+	int classes = 100;
+	int methods = 10;
+	int depth = 4;
+	try {
+	    for (int i = 0; i < args.length; i++) {
+		switch (args[i]) {
+		case "-d": dir = Paths.get (args[++i]); break;
+		case "--packages": packages = Integer.parseInt (args[++i]); break;
+		case "--classes": classes = Integer.parseInt (args[++i]); break;
+		case "--methods": methods = Integer.parseInt (args[++i]); break;
+		case "--depth": depth = Integer.parseInt (args[++i]); break;
+		default:
+		    usage ();
+		    return;
+		}
+	    }
+	} catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+	    usage ();
+	    return;
+	}
+	if (dir == null) {
+	    usage ();
+	    return;
+	}
+	CorpusGenerator cg = new CorpusGenerator (packages, classes, methods, depth);
+	cg.write (dir);
+	System.out.println ("Wrote " + cg.getNumberOfFiles () + " files to " + dir);
+    }
+
+    private static void usage () {
+	System.err.println ("usage: java " + CorpusGenerator.class.getName () +
+			    " -d <dir> [--packages n] [--classes n] [--methods n] [--depth n]");
+    }
+}
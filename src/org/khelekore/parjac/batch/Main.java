@@ -53,7 +53,10 @@ public class Main {
 	if (diagnostics.hasError ())
 	    return;
 
-	Grammar g = JavaGrammarHelper.getValidatedJavaGrammar (settings.getDebug ());
+	Grammar g = JavaGrammarHelper.getValidatedJavaGrammar (settings.getDebug (),
+							       settings.getClearableRules (), diagnostics);
+	if (g == null)
+	    return;
 	Compiler c = new Compiler (diagnostics, g, settings);
 	c.compile ();
 	long endTime = System.nanoTime ();
@@ -67,6 +70,12 @@ public class Main {
 	List<Path> classPathEntries = new ArrayList<> ();
 	boolean reportTime = true;
 	boolean debug = false;
+	boolean packedParser = false;
+	String clearableRules = null;
+	boolean splitFiles = false;
+	boolean deferBodies = false;
+	boolean headerOnly = false;
+	boolean fastParser = false;
 	for (int i = 0; i < args.length; i++) {
 	    switch (args[i]) {
 	    case "-i":
@@ -95,6 +104,25 @@ public class Main {
 	    case "--debug":
 		debug = true;
 		break;
+	    case "--packed-parser":
+		packedParser = true;
+		break;
+	    case "--split-files":
+		splitFiles = true;
+		break;
+	    case "--defer-bodies":
+		deferBodies = true;
+		break;
+	    case "--header-only":
+		headerOnly = true;
+		break;
+	    case "--fast-parser":
+		fastParser = true;
+		break;
+	    case "--clearable-rules":
+		if (hasFollowingArgExists (args, i))
+		    clearableRules = args[++i];
+		break;
 	    case "-h":
 	    case "--help":
 		usage ();
@@ -114,7 +142,16 @@ public class Main {
 	}
 	SourceProvider sp = new FileSourceProvider (srcDirs, encoding);
 	CompilationArguments ca =
-	    new CompilationArguments (sp, output, classPathEntries, reportTime, debug);
+	    new CompilationArguments (sp, output, classPathEntries,
+				      new CompilationArguments.Options ().
+				      reportTime (reportTime).
+				      debug (debug).
+				      packedParser (packedParser).
+				      clearableRules (clearableRules).
+				      splitFiles (splitFiles).
+				      deferBodies (deferBodies).
+				      headerOnly (headerOnly).
+				      fastParser (fastParser));
 	ca.validate (diagnostics);
 	if (diagnostics.hasError ()) {
 	    System.err.println ("Invalid arguments, use \"--help\" for usage.\nProblems found:");
@@ -169,6 +206,8 @@ public class Main {
 			    " [-cp <path>] [-classpath <path>]" + // same thing
 			    " [--encoding encoding]" +
 			    " [-i|--input srcdir]+ [-d|--destination dir]" +
-			    " [--no-timing] [--debug] [-h|--help]");
+			    " [--no-timing] [--debug] [--packed-parser] [--split-files] [--defer-bodies]" +
+			    " [--header-only] [--fast-parser]" +
+			    " [--clearable-rules <rule,rule...|auto|none>] [-h|--help]");
     }
 }
\ No newline at end of file
@@ -0,0 +1,313 @@
+package org.khelekore.parjac.grammar;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+
+import org.khelekore.parjac.lexer.Token;
+
+/** Finds the rule names that are good points to clear parser states at.
+ *
+ *  A rule name is a candidate if it is an element of a list that is enclosed
+ *  in curly braces: it is repeated by a zero or more rule and every time it is
+ *  used it is either last in the rule or followed only by the rest of its own
+ *  list. It may not be empty and it has to be able to contain itself, so that
+ *  it may span a lot of input. It may also not end with something that can be
+ *  extended to the right, like an expression or an if statement without an
+ *  else, since another parse of that would cross the end of the list element.
+ *  Class body declarations and enum constants are typical candidates.
+ *
+ *  This is a heuristic, the parser tests should be run with the found rules
+ *  before they are used.
+ */
+public class ClearableRuleFinder {
+    private final CompiledGrammar cg;
+    private final int numTokens;
+    private final int numSymbols;
+    // Rule ids for each symbol, indexed by symbol - numTokens
+    private final List<List<Integer>> rulesFor;
+    // The symbols that may start and end each symbol, indexed by symbol - numTokens,
+    // filled in when needed
+    private final BitSet[] startsFor;
+    private final BitSet[] endsFor;
+
+    public ClearableRuleFinder (Grammar g) {
+	cg = g.getCompiledGrammar ();
+	numTokens = cg.getNumberOfTokens ();
+	numSymbols = cg.getNumberOfSymbols ();
+	rulesFor = new ArrayList<> ();
+	startsFor = new BitSet[numSymbols - numTokens];
+	endsFor = new BitSet[numSymbols - numTokens];
+	for (int s = numTokens; s < numSymbols; s++)
+	    rulesFor.add (new ArrayList<> ());
+	for (int id = 0; id < cg.getNumberOfRules (); id++)
+	    rulesFor.get (cg.getRuleSymbol (id) - numTokens).add (id);
+    }
+
+    /** Get the names of the rules that can be used as clearable rules */
+    public List<String> find () {
+	List<String> ret = new ArrayList<> ();
+	for (int s = numTokens; s < numSymbols; s++) {
+	    String name = cg.getRuleName (s);
+	    if (name.equals ("Goal") || isZom (s) || cg.isNullable (s))
+		continue;
+	    if (isRepeated (s) && onlyUsedAsListElement (s) && isInCurlyList (s) &&
+		canContainItself (s) && !canBeExtended (s))
+		ret.add (name);
+	}
+	return ret;
+    }
+
+    private boolean isZom (int symbol) {
+	return !cg.isToken (symbol) && cg.getRuleName (symbol).startsWith ("ZOM_");
+    }
+
+    private boolean isRepeated (int symbol) {
+	for (int s = numTokens; s < numSymbols; s++)
+	    if (isZom (s) && allEndWith (s, symbol))
+		return true;
+	return false;
+    }
+
+    /** Check if all the rules for the given list ends with the element */
+    private boolean allEndWith (int list, int element) {
+	for (int id : rulesFor.get (list - numTokens)) {
+	    int[] parts = cg.getParts (id);
+	    if (parts.length == 0 || parts[parts.length - 1] != element)
+		return false;
+	}
+	return true;
+    }
+
+    private boolean onlyUsedAsListElement (int symbol) {
+	for (int id = 0; id < cg.getNumberOfRules (); id++) {
+	    int[] parts = cg.getParts (id);
+	    for (int i = 0; i < parts.length; i++) {
+		if (parts[i] != symbol || i == parts.length - 1)
+		    continue;
+		// EnumConstant (',' EnumConstant)*
+		int next = parts[i + 1];
+		if (i + 2 != parts.length || !isZom (next) || !allEndWith (next, symbol))
+		    return false;
+	    }
+	}
+	return true;
+    }
+
+    /** Check if a list of the given element directly follows a '{' */
+    private boolean isInCurlyList (int symbol) {
+	int curly = CompiledGrammar.getSymbol (Token.LEFT_CURLY);
+	for (int id = 0; id < cg.getNumberOfRules (); id++) {
+	    int[] parts = cg.getParts (id);
+	    for (int i = 0; i < parts.length - 1; i++)
+		if (parts[i] == curly && isList (parts[i + 1], symbol))
+		    return true;
+	}
+	return false;
+    }
+
+    /** Check if the symbol is a list of the element, either a zero or more rule
+     *  or something like: BlockStatements: BlockStatement BlockStatement*
+     */
+    private boolean isList (int symbol, int element) {
+	if (cg.isToken (symbol))
+	    return false;
+	if (isZom (symbol))
+	    return allEndWith (symbol, element);
+	for (int id : rulesFor.get (symbol - numTokens)) {
+	    int[] parts = cg.getParts (id);
+	    if (parts.length == 0 || parts.length > 2 || parts[0] != element)
+		return false;
+	    if (parts.length == 2 && !isList (parts[1], element))
+		return false;
+	}
+	return true;
+    }
+
+    /** Check if any symbol that ends the given symbol can be extended to the right.
+     *  That is either a left recursive symbol or a symbol that starts after the
+     *  given one and that another rule can take as a prefix, like an if statement
+     *  without else, which the if then else rule can continue.
+     *  Zero or more rules are left recursive, but only repeat their own element.
+     */
+    private boolean canBeExtended (int symbol) {
+	BitSet seen = new BitSet ();
+	Deque<Integer> toVisit = new ArrayDeque<> ();
+	toVisit.add (symbol);
+	seen.set (symbol);
+	while (!toVisit.isEmpty ()) {
+	    int s = toVisit.pop ();
+	    for (int id : rulesFor.get (s - numTokens)) {
+		int[] parts = cg.getParts (id);
+		if (parts.length == 0)
+		    continue;
+		if (parts[0] == s && !isZom (s))
+		    return true;
+		int last = parts[parts.length - 1];
+		if (!cg.isToken (last) && !seen.get (last)) {
+		    seen.set (last);
+		    toVisit.add (last);
+		}
+	    }
+	}
+	BitSet inner = getInnerEnds (symbol);
+	for (int s = inner.nextSetBit (0); s >= 0; s = inner.nextSetBit (s + 1))
+	    for (int id : rulesFor.get (s - numTokens))
+		if (canBeContinued (id))
+		    return true;
+	return false;
+    }
+
+    /** Get the symbols that may end the given symbol without starting where it starts.
+     *  The parser only clears the sets inside the given symbol, so only states
+     *  that start in those sets get lost.
+     */
+    private BitSet getInnerEnds (int symbol) {
+	BitSet outer = new BitSet ();
+	BitSet inner = new BitSet ();
+	Deque<Integer> toVisit = new ArrayDeque<> ();
+	toVisit.add (symbol);
+	outer.set (symbol);
+	while (!toVisit.isEmpty ()) {
+	    int s = toVisit.pop ();
+	    boolean isInner = inner.get (s);
+	    for (int id : rulesFor.get (s - numTokens)) {
+		int[] parts = cg.getParts (id);
+		for (int i = parts.length - 1; i >= 0; i--) {
+		    int part = parts[i];
+		    if (cg.isToken (part))
+			break;
+		    BitSet bs = isInner || i > cg.getNullablePrefix (id) ? inner : outer;
+		    if (!bs.get (part)) {
+			bs.set (part);
+			toVisit.add (part);
+		    }
+		    if (!cg.isNullable (part))
+			break;
+		}
+	    }
+	}
+	return inner;
+    }
+
+    /** Check if a state for the given, completed, rule may have a sibling state
+     *  that goes on after it: a longer rule for another symbol that may be
+     *  predicted in the same place, that starts with the same parts and where
+     *  the part after them can end the same way as the given rule.
+     *  A sibling for the same symbol is fine, it completes the same parent states.
+     */
+    private boolean canBeContinued (int ruleId) {
+	int[] parts = cg.getParts (ruleId);
+	int symbol = cg.getRuleSymbol (ruleId);
+	if (parts.length == 0)
+	    return false;
+	for (int id = 0; id < cg.getNumberOfRules (); id++) {
+	    int[] other = cg.getParts (id);
+	    int j = 0;
+	    while (j < parts.length && j < other.length && parts[j] == other[j])
+		j++;
+	    int otherSymbol = cg.getRuleSymbol (id);
+	    if (otherSymbol == symbol || j == 0 || j >= other.length ||
+		!canBePredictedTogether (symbol, otherSymbol))
+		continue;
+	    if (j == parts.length)  // the same parts, and then some more
+		return true;
+	    if (j + 1 < other.length && endsTheSame (other[j], parts[parts.length - 1]))
+		return true;
+	}
+	return false;
+    }
+
+    /** Check if there is a symbol that may start with both of the given symbols */
+    private boolean canBePredictedTogether (int s1, int s2) {
+	for (int s = numTokens; s < numSymbols; s++) {
+	    BitSet starts = getStarts (s);
+	    if (starts.get (s1) && starts.get (s2))
+		return true;
+	}
+	return false;
+    }
+
+    /** Get the non token symbols that the given symbol may start with, including the symbol */
+    private BitSet getStarts (int symbol) {
+	BitSet ret = startsFor[symbol - numTokens];
+	if (ret != null)
+	    return ret;
+	ret = new BitSet ();
+	Deque<Integer> toVisit = new ArrayDeque<> ();
+	toVisit.add (symbol);
+	ret.set (symbol);
+	while (!toVisit.isEmpty ()) {
+	    int s = toVisit.pop ();
+	    for (int id : rulesFor.get (s - numTokens)) {
+		for (int part : cg.getParts (id)) {
+		    if (cg.isToken (part))
+			break;
+		    if (!ret.get (part)) {
+			ret.set (part);
+			toVisit.add (part);
+		    }
+		    if (!cg.isNullable (part))
+			break;
+		}
+	    }
+	}
+	startsFor[symbol - numTokens] = ret;
+	return ret;
+    }
+
+    private boolean endsTheSame (int s1, int s2) {
+	if (cg.isToken (s1) || cg.isToken (s2))
+	    return false;
+	return getEnds (s1).intersects (getEnds (s2));
+    }
+
+    /** Get the non token symbols that may end the given symbol, including the symbol */
+    private BitSet getEnds (int symbol) {
+	BitSet ret = endsFor[symbol - numTokens];
+	if (ret != null)
+	    return ret;
+	ret = new BitSet ();
+	Deque<Integer> toVisit = new ArrayDeque<> ();
+	toVisit.add (symbol);
+	ret.set (symbol);
+	while (!toVisit.isEmpty ()) {
+	    int s = toVisit.pop ();
+	    for (int id : rulesFor.get (s - numTokens)) {
+		int[] parts = cg.getParts (id);
+		for (int i = parts.length - 1; i >= 0 && !cg.isToken (parts[i]); i--) {
+		    if (!ret.get (parts[i])) {
+			ret.set (parts[i]);
+			toVisit.add (parts[i]);
+		    }
+		    if (!cg.isNullable (parts[i]))
+			break;
+		}
+	    }
+	}
+	endsFor[symbol - numTokens] = ret;
+	return ret;
+    }
+
+    private boolean canContainItself (int symbol) {
+	BitSet seen = new BitSet ();
+	Deque<Integer> toVisit = new ArrayDeque<> ();
+	toVisit.add (symbol);
+	while (!toVisit.isEmpty ()) {
+	    int s = toVisit.pop ();
+	    for (int id : rulesFor.get (s - numTokens)) {
+		for (int part : cg.getParts (id)) {
+		    if (part == symbol)
+			return true;
+		    if (!cg.isToken (part) && !seen.get (part)) {
+			seen.set (part);
+			toVisit.add (part);
+		    }
+		}
+	    }
+	}
+	return false;
+    }
+}
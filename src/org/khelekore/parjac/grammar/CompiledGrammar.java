@@ -0,0 +1,243 @@
+package org.khelekore.parjac.grammar;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.khelekore.parjac.lexer.Token;
+
+/** A grammar where tokens and rule names are mapped into one dense int space.
+ *  Tokens are given their ordinal, rule names are numbered after the last token.
+ *  Each rule is stored as an int[] of symbols, indexed by the rule id.
+ */
+public class CompiledGrammar {
+    private static final Token[] TOKENS = Token.values ();
+
+    private final List<Rule> rules;
+    private final String[] ruleNames;
+    private final Map<String, Integer> nameToSymbol;
+    private final int[][] ruleParts;
+    private final int[] ruleSymbols;
+    private boolean[] clearable;
+    // Symbols that can derive the empty string
+    private final boolean[] nullable;
+    private final boolean hasNullable;
+    // The tokens that each symbol and each rule can start with
+    private final EnumSet<Token>[] firsts;
+    private final EnumSet<Token>[] ruleFirsts;
+    // Predicted rule ids for each symbol, if loaded from a grammar image
+    private int[][] predictSets;
+
+    CompiledGrammar (List<Rule> rules, List<String> names, List<Rule> clearableRules) {
+	this.rules = new ArrayList<> (rules);
+	int numTokens = TOKENS.length;
+	ruleNames = names.toArray (new String[names.size ()]);
+	nameToSymbol = new HashMap<> ();
+	for (int i = 0; i < ruleNames.length; i++)
+	    nameToSymbol.put (ruleNames[i], numTokens + i);
+
+	ruleParts = new int[rules.size ()][];
+	ruleSymbols = new int[rules.size ()];
+	for (Rule r : rules) {
+	    List<SimplePart> parts = r.getParts ();
+	    int[] symbols = new int[parts.size ()];
+	    for (int i = 0; i < symbols.length; i++)
+		symbols[i] = getSymbol (parts.get (i));
+	    ruleParts[r.getId ()] = symbols;
+	    ruleSymbols[r.getId ()] = getRuleSymbol (r.getName ());
+	}
+
+	setClearable (clearableRules);
+
+	nullable = findNullable ();
+	boolean anyNullable = false;
+	for (boolean b : nullable)
+	    anyNullable |= b;
+	hasNullable = anyNullable;
+
+	firsts = findFirsts ();
+	ruleFirsts = newTokenSets (ruleParts.length);
+	for (int id = 0; id < ruleParts.length; id++)
+	    addFirsts (ruleFirsts[id], ruleParts[id]);
+    }
+
+    private EnumSet<Token>[] findFirsts () {
+	EnumSet<Token>[] ret = newTokenSets (getNumberOfSymbols ());
+	for (int i = 0; i < TOKENS.length; i++)
+	    ret[i].add (TOKENS[i]);
+	boolean thereWasChange;
+	do {
+	    thereWasChange = false;
+	    for (int id = 0; id < ruleParts.length; id++) {
+		EnumSet<Token> f = ret[ruleSymbols[id]];
+		for (int part : ruleParts[id]) {
+		    thereWasChange |= f.addAll (ret[part]);
+		    if (!nullable[part])
+			break;
+		}
+	    }
+	} while (thereWasChange);
+	return ret;
+    }
+
+    private void addFirsts (EnumSet<Token> f, int[] parts) {
+	for (int part : parts) {
+	    f.addAll (firsts[part]);
+	    if (!nullable[part])
+		break;
+	}
+    }
+
+    @SuppressWarnings ("unchecked")
+    private static EnumSet<Token>[] newTokenSets (int size) {
+	EnumSet<Token>[] ret = new EnumSet[size];
+	for (int i = 0; i < size; i++)
+	    ret[i] = EnumSet.noneOf (Token.class);
+	return ret;
+    }
+
+    private boolean[] findNullable () {
+	boolean[] ret = new boolean[getNumberOfSymbols ()];
+	boolean thereWasChange;
+	do {
+	    thereWasChange = false;
+	    for (int id = 0; id < ruleParts.length; id++) {
+		int symbol = ruleSymbols[id];
+		if (ret[symbol])
+		    continue;
+		boolean allNullable = true;
+		for (int part : ruleParts[id])
+		    allNullable &= ret[part];
+		if (allNullable) {
+		    ret[symbol] = true;
+		    thereWasChange = true;
+		}
+	    }
+	} while (thereWasChange);
+	return ret;
+    }
+
+    /** Get the total number of symbols, that is tokens and rule names */
+    public int getNumberOfSymbols () {
+	return TOKENS.length + ruleNames.length;
+    }
+
+    public int getNumberOfTokens () {
+	return TOKENS.length;
+    }
+
+    public int getNumberOfRules () {
+	return ruleParts.length;
+    }
+
+    public Rule getRule (int ruleId) {
+	return rules.get (ruleId);
+    }
+
+    public boolean isToken (int symbol) {
+	return symbol < TOKENS.length;
+    }
+
+    public Token getToken (int symbol) {
+	return TOKENS[symbol];
+    }
+
+    public static int getSymbol (Token t) {
+	return t.ordinal ();
+    }
+
+    /** Get the symbol for the given rule name
+     * @throws IllegalArgumentException if the rule name is unknown
+     */
+    public int getRuleSymbol (String name) {
+	Integer i = nameToSymbol.get (name);
+	if (i == null)
+	    throw new IllegalArgumentException ("Unknown rule: " + name);
+	return i;
+    }
+
+    public String getRuleName (int symbol) {
+	return ruleNames[symbol - TOKENS.length];
+    }
+
+    /** Get the symbol for the rule name of the given rule */
+    public int getRuleSymbol (int ruleId) {
+	return ruleSymbols[ruleId];
+    }
+
+    /** Get the symbols that the rule is made of */
+    public int[] getParts (int ruleId) {
+	return ruleParts[ruleId];
+    }
+
+    public int getPart (int ruleId, int pos) {
+	return ruleParts[ruleId][pos];
+    }
+
+    public boolean isClearable (int ruleId) {
+	return clearable[ruleId];
+    }
+
+    void setClearable (Collection<Rule> clearableRules) {
+	boolean[] c = new boolean[ruleParts.length];
+	for (Rule r : clearableRules)
+	    c[r.getId ()] = true;
+	clearable = c;
+    }
+
+    /** Check if the symbol can derive the empty string, tokens never can */
+    public boolean isNullable (int symbol) {
+	return nullable[symbol];
+    }
+
+    /** Check if there are any nullable symbols in this grammar */
+    public boolean hasNullable () {
+	return hasNullable;
+    }
+
+    /** Get the number of leading parts of the rule that are nullable */
+    public int getNullablePrefix (int ruleId) {
+	int[] parts = ruleParts[ruleId];
+	int i = 0;
+	while (i < parts.length && nullable[parts[i]])
+	    i++;
+	return i;
+    }
+
+    /** Get the tokens that the symbol can start with */
+    public EnumSet<Token> getFirsts (int symbol) {
+	return firsts[symbol];
+    }
+
+    /** Check if the rule can match input that starts with the given token.
+     *  Rules that can be empty may match anything.
+     */
+    public boolean canStartWith (int ruleId, Token t) {
+	return ruleFirsts[ruleId].contains (t) || getNullablePrefix (ruleId) == ruleParts[ruleId].length;
+    }
+
+    /** Get the precomputed predicted rule ids for each symbol, may be null */
+    public int[][] getPredictSets () {
+	return predictSets;
+    }
+
+    void setPredictSets (int[][] predictSets) {
+	this.predictSets = predictSets;
+    }
+
+    /** Get a readable description of the given symbol */
+    public String toString (int symbol) {
+	if (isToken (symbol))
+	    return getToken (symbol).toString ();
+	return getRuleName (symbol);
+    }
+
+    private int getSymbol (SimplePart sp) {
+	if (sp.isTokenPart ())
+	    return getSymbol ((Token)sp.getId ());
+	return getRuleSymbol ((String)sp.getId ());
+    }
+}
@@ -3,6 +3,7 @@ package org.khelekore.parjac.grammar;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -22,6 +23,8 @@ public class Grammar {
     // To avoid dups
     private final Set<Rule> ruleSet = new HashSet<> ();
     private final List<RuleCollection> ruleCollections = new ArrayList<> ();
+    // The rule names, in the same order as ruleCollections
+    private final List<String> ruleNames = new ArrayList<> ();
     // Index from name to all the generated rules
     private final Map<String, RuleCollection> nameToRules = new HashMap<> ();
 
@@ -31,6 +34,9 @@ public class Grammar {
 
     private Set<Rule> clearableRules = new HashSet<> ();
 
+    // Lazily built, reset whenever the rules change
+    private CompiledGrammar compiled;
+
     public Grammar (boolean debug) {
 	this.debug = debug;
     }
@@ -40,6 +46,7 @@ public class Grammar {
 	this.rules.addAll (toCopy.rules);
 	ruleSet.addAll (toCopy.ruleSet);
 	ruleCollections.addAll (toCopy.ruleCollections);
+	ruleNames.addAll (toCopy.ruleNames);
 	nameToRules.putAll (toCopy.nameToRules);
 	zomRules.putAll (toCopy.zomRules);
 	zomCounter = toCopy.zomCounter;
@@ -67,6 +74,18 @@ public class Grammar {
 	    throw new IllegalStateException ("no Goal rule defined");
 	if (ls.size () > 1)
 	    throw new IllegalStateException ("Multiple Goal rules defined");
+	compileRuleCollections ();
+    }
+
+    /** Set up nullable and first tokens of the rule collections */
+    void compileRuleCollections () {
+	CompiledGrammar cg = getCompiledGrammar ();
+	for (int i = 0; i < ruleNames.size (); i++) {
+	    RuleCollection rc = ruleCollections.get (i);
+	    int symbol = cg.getRuleSymbol (ruleNames.get (i));
+	    rc.setCanBeEmpty (cg.isNullable (symbol));
+	    rc.setFirsts (EnumSet.copyOf (cg.getFirsts (symbol)));
+	}
     }
 
     public void addRule (String name, Object... os) {
@@ -99,12 +118,43 @@ public class Grammar {
      */
     public void addClearableRule (String name) {
 	clearableRules.addAll (getRules (name).getRules ());
+	compiled = null;
+    }
+
+    /** Add one clearable rule, used when loading a grammar image */
+    void addClearableRule (Rule r) {
+	clearableRules.add (r);
+	compiled = null;
+    }
+
+    /** Replace the clearable rules with the rules of the given names.
+     *  A compiled grammar is updated in place so that predict sets loaded
+     *  from a grammar image are kept.
+     */
+    public synchronized void setClearableRules (Collection<String> names) {
+	Set<Rule> rs = new HashSet<> ();
+	for (String name : names) {
+	    RuleCollection rc = getRules (name);
+	    if (rc == null)
+		throw new IllegalArgumentException ("Unknown rule: " + name);
+	    rs.addAll (rc.getRules ());
+	}
+	clearableRules = rs;
+	if (compiled != null)
+	    compiled.setClearable (rs);
     }
 
     public boolean isClearableRule (Rule r) {
 	return clearableRules.contains (r);
     }
 
+    /** Get the compiled form of this grammar, it is rebuilt if rules have been added. */
+    public synchronized CompiledGrammar getCompiledGrammar () {
+	if (compiled == null)
+	    compiled = new CompiledGrammar (rules, ruleNames, new ArrayList<> (clearableRules));
+	return compiled;
+    }
+
     private static List<List<SimplePart>> split (ComplexPart[] parts) {
 	List<List<SimplePart>> ret = new ArrayList<> ();
 	ret.add (new ArrayList<> ());
@@ -113,7 +163,15 @@ public class Grammar {
 	return ret;
     }
 
-    private void addRule (String name, List<SimplePart> parts) {
+    int getZomCounter () {
+	return zomCounter;
+    }
+
+    void setZomCounter (int zomCounter) {
+	this.zomCounter = zomCounter;
+    }
+
+    void addRule (String name, List<SimplePart> parts) {
 	// Remove duplicate entries (ZOM_x ZOM_x).
 	Iterator<SimplePart> i = parts.iterator ();
 	SimplePart p = null;
@@ -134,8 +192,10 @@ public class Grammar {
 	if (rc == null) {
 	    rc = new RuleCollection ();
 	    ruleCollections.add (rc);
+	    ruleNames.add (name);
 	    nameToRules.put (name, rc);
 	}
+	compiled = null;
 	rc.getRules ().add (r);
     }
 
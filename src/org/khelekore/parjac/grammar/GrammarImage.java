@@ -0,0 +1,149 @@
+package org.khelekore.parjac.grammar;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.khelekore.parjac.lexer.Token;
+
+/** A precompiled grammar, stored in a binary form that is fast to load.
+ *
+ *  The image holds the rules with their ids, the clearable rules and the
+ *  predict sets. It is tagged with a checksum of the grammar text and the
+ *  setup of the grammar so that a stale image can be detected.
+ */
+public class GrammarImage {
+    private static final int MAGIC = 0x504a4749; // PJGI
+    private static final int VERSION = 1;
+
+    /** Calculate the checksum for the given grammar text and setup description.
+     *  The current tokens are also part of the checksum since the image uses token ordinals.
+     */
+    public static long checksum (byte[] grammarText, String setup) {
+	CRC32 crc = new CRC32 ();
+	crc.update (grammarText);
+	crc.update (setup.getBytes (StandardCharsets.UTF_8));
+	crc.update (Arrays.toString (Token.values ()).getBytes (StandardCharsets.UTF_8));
+	return crc.getValue () | ((long)VERSION << 32);
+    }
+
+    /** Write the grammar and its predict sets to the given file */
+    public static void write (Grammar g, int[][] predictSets, long checksum, Path file)
+	throws IOException {
+	CompiledGrammar cg = g.getCompiledGrammar ();
+	int numTokens = cg.getNumberOfTokens ();
+	int numSymbols = cg.getNumberOfSymbols ();
+	List<byte[]> names = new ArrayList<> ();
+	int size = 6 * 4 + 8;
+	for (int s = numTokens; s < numSymbols; s++) {
+	    byte[] name = cg.getRuleName (s).getBytes (StandardCharsets.UTF_8);
+	    names.add (name);
+	    size += 4 + name.length;
+	}
+	for (Rule r : g.getRules ())
+	    size += 8 + 4 * r.size () + 1;
+	for (int[] ps : predictSets)
+	    size += 4 + (ps == null ? 0 : 4 * ps.length);
+
+	ByteBuffer buf = ByteBuffer.allocate (size);
+	buf.putInt (MAGIC);
+	buf.putInt (VERSION);
+	buf.putLong (checksum);
+	buf.putInt (numTokens);
+	buf.putInt (g.getZomCounter ());
+	buf.putInt (names.size ());
+	for (byte[] name : names) {
+	    buf.putInt (name.length);
+	    buf.put (name);
+	}
+	buf.putInt (g.getNumberOfRules ());
+	for (Rule r : g.getRules ()) {
+	    buf.putInt (cg.getRuleSymbol (r.getId ()) - numTokens);
+	    buf.put ((byte)(g.isClearableRule (r) ? 1 : 0));
+	    int[] parts = cg.getParts (r.getId ());
+	    buf.putInt (parts.length);
+	    for (int p : parts)
+		buf.putInt (p);
+	}
+	for (int[] ps : predictSets) {
+	    if (ps == null) {
+		buf.putInt (-1);
+	    } else {
+		buf.putInt (ps.length);
+		for (int id : ps)
+		    buf.putInt (id);
+	    }
+	}
+	Files.write (file, Arrays.copyOf (buf.array (), buf.position ()));
+    }
+
+    /** Read a grammar from the image.
+     * @return the grammar or null if the image is not valid for the given checksum
+     */
+    public static Grammar read (ByteBuffer buf, long checksum, boolean debug) {
+	try {
+	    if (buf.getInt () != MAGIC || buf.getInt () != VERSION || buf.getLong () != checksum)
+		return null;
+	    int numTokens = buf.getInt ();
+	    if (numTokens != Token.values ().length)
+		return null;
+	    Token[] tokens = Token.values ();
+	    Grammar g = new Grammar (debug);
+	    g.setZomCounter (buf.getInt ());
+	    String[] names = new String[buf.getInt ()];
+	    for (int i = 0; i < names.length; i++) {
+		byte[] name = new byte[buf.getInt ()];
+		buf.get (name);
+		names[i] = new String (name, StandardCharsets.UTF_8);
+	    }
+	    int numRules = buf.getInt ();
+	    for (int i = 0; i < numRules; i++) {
+		String name = names[buf.getInt ()];
+		boolean clearable = buf.get () != 0;
+		int numParts = buf.getInt ();
+		List<SimplePart> parts = new ArrayList<> (numParts);
+		for (int j = 0; j < numParts; j++) {
+		    int p = buf.getInt ();
+		    if (p < numTokens)
+			parts.add (new TokenPart (tokens[p]));
+		    else
+			parts.add (new RulePart (names[p - numTokens]));
+		}
+		g.addRule (name, parts);
+		if (clearable)
+		    g.addClearableRule (g.getRules ().get (i));
+	    }
+	    if (g.getNumberOfRules () != numRules)
+		return null;
+	    CompiledGrammar cg = g.getCompiledGrammar ();
+	    if (cg.getNumberOfSymbols () != numTokens + names.length)
+		return null;
+	    for (int i = 0; i < names.length; i++)
+		if (!cg.getRuleName (numTokens + i).equals (names[i]))
+		    return null;
+	    int[][] predictSets = new int[numTokens + names.length][];
+	    for (int i = 0; i < predictSets.length; i++) {
+		int size = buf.getInt ();
+		if (size >= 0) {
+		    int[] ps = new int[size];
+		    for (int j = 0; j < size; j++)
+			ps[j] = buf.getInt ();
+		    predictSets[i] = ps;
+		}
+	    }
+	    // The grammar was validated when the image was written
+	    g.compileRuleCollections ();
+	    cg.setPredictSets (predictSets);
+	    return g;
+	} catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+	    return null;
+	}
+    }
+}
@@ -25,8 +25,13 @@ public class GrammarReader {
     }
 
     public void read (URL u) throws IOException {
-	try (InputStream is = u.openStream ();
-	     InputStreamReader isr = new InputStreamReader (is, "UTF-8");
+	try (InputStream is = u.openStream ()) {
+	    read (is);
+	}
+    }
+
+    public void read (InputStream is) throws IOException {
+	try (InputStreamReader isr = new InputStreamReader (is, "UTF-8");
 	     BufferedReader br = new BufferedReader (isr)) {
 		String line = null;
 		while ((line = br.readLine ()) != null) {
@@ -0,0 +1,961 @@
+package org.khelekore.parjac.lexer;
+
+/** The java lexer, subclasses provide the input.
+ *
+ *  Positions are offsets in the input, in whatever unit the subclass uses.
+ *  Subclasses read the next char, after any decoding of the input, but
+ *  unicode escapes are handled here.
+ */
+public abstract class AbstractLexer implements Lexer {
+    // The current position and the end of the input
+    int pos;
+    int limit;
+    final SymbolTable symbols;
+    private final TextSource text;
+    private final TokenBuffer tokens;
+    // False when the lines are already known, from the lexer that read the whole input
+    private final boolean findLines;
+    // Parts of the input to jump over, as start and end pairs, used to parse what is around them
+    private int[] skips;
+    private int skipIndex;
+    private int skipStart = -1;
+    // Most inputs have no unicode escapes, then we can read the chars directly
+    private boolean hasUnicodeEscapes;
+    // The position after the last decoded unicode escape, so that we can push it back
+    private int lastEscapeEnd = -1;
+    private boolean hasSentEOI = false;
+
+    private int tokenStartPosition = 0;
+    private int currentLineStart = 0;
+
+    // Text set when we get an lexer ERROR
+    private String errorText;
+
+    // The different values we can have
+    private LiteralSpan currentLiteral; // for char and String
+    private int literalLength;
+    private long currentIntValue; // for int and long
+    private float currentFloatValue;
+    private double currentDoubleValue;
+    private String currentIdentifier;
+
+    // Decimal values are always positive, hex, oct and binary may be negative.
+    // Values are accumulated as unsigned longs and compared unsigned.
+    private static final long MAX_INT_LITERAL = 0x80000000L;
+    private static final long MAX_LONG_LITERAL = 0x8000000000000000L;
+    private static final long MAX_UINT_LITERAL = 0xFFFFFFFFL;
+    private static final long MAX_ULONG_LITERAL = 0xFFFFFFFFFFFFFFFFL;
+    // Multiplying a larger value by the radix overflows an unsigned long, indexed by radix
+    private static final long[] MULTIPLY_LIMITS = new long[17];
+    static {
+	for (int radix : new int[] { 2, 8, 10, 16 })
+	    MULTIPLY_LIMITS[radix] = Long.divideUnsigned (-1L, radix);
+    }
+
+    private static final boolean[] ASCII_IDENTIFIER_PART = new boolean[128];
+    static {
+	for (char c = 0; c < 128; c++)
+	    ASCII_IDENTIFIER_PART[c] = Character.isJavaIdentifierPart (c);
+    }
+
+    /** Create a lexer for the input in [start, limit) */
+    AbstractLexer (SymbolTable symbols, TextSource text, int start, int limit) {
+	this (symbols, text, start, limit, null);
+    }
+
+    /** Create a lexer for the input in [start, limit)
+     * @param lines the line starts of the whole input or null to find them while lexing
+     */
+    AbstractLexer (SymbolTable symbols, TextSource text, int start, int limit, LineIndex lines) {
+	this.symbols = symbols;
+	this.text = text;
+	this.pos = start;
+	this.limit = limit;
+	findLines = lines == null;
+	tokens = findLines ? new TokenBuffer () : new TokenBuffer (lines);
+	if (!findLines) {
+	    tokenStartPosition = start;
+	    currentLineStart = lines.getLineStart (lines.getLineNumber (start));
+	}
+    }
+
+    /** Create a lexer of the same type for [start, end) of this input
+     * @param lines the line starts of the whole input
+     */
+    abstract AbstractLexer createPartLexer (int start, int end, LineIndex lines);
+
+    @Override public Lexer getPartLexer (int start, int end) {
+	if (skips != null)
+	    return getSkippingLexer (start, end, skips);
+	return createPartLexer (start, end, tokens.getLines ());
+    }
+
+    @Override public Lexer getSkippingLexer (int start, int end, int[] skips) {
+	AbstractLexer l = createPartLexer (start, end, tokens.getLines ());
+	l.skips = skips;
+	while (l.skipIndex < skips.length && skips[l.skipIndex] < start)
+	    l.skipIndex += 2;
+	l.skipStart = l.skipIndex < skips.length ? skips[l.skipIndex] : -1;
+	return l;
+    }
+
+    /** Get the raw char at the given position, without any decoding.
+     *  This is only used to look for ascii chars, so a subclass that decodes
+     *  its input may return anything that is not ascii for a position that
+     *  is part of an encoded char.
+     */
+    abstract char charAt (int p);
+
+    /** Read the char at the current position and move past it */
+    abstract char readChar ();
+
+    /** Move back to the start of the char that was read last */
+    abstract void unreadChar ();
+
+    /** Get the keyword, or null, for the identifier at the given position.
+     *  This is only called when each char of the identifier is one unit of input.
+     */
+    abstract Token getKeyword (int start, int length);
+
+    /** Intern the identifier at the given position.
+     *  This is only called when each char of the identifier is one unit of input.
+     */
+    abstract String intern (int start, int length, int hash);
+
+    /** Get the raw text between the two positions */
+    String getText (int start, int end) {
+	return text.getText (start, end);
+    }
+
+    /* The skip methods below are used for whitespace and comments when the
+     * input has no unicode escapes, subclasses can scan faster than charAt.
+     */
+
+    /** Skip spaces, tabs and form feeds
+     * @return the position of the first other char, or limit
+     */
+    int skipWhitespace (int p) {
+	char c;
+	while (p < limit && ((c = charAt (p)) == ' ' || c == '\t' || c == '\f'))
+	    p++;
+	return p;
+    }
+
+    /** Find the next line terminator
+     * @return the position of the first '\n' or '\r', or limit
+     */
+    int findLineEnd (int p) {
+	char c;
+	while (p < limit && (c = charAt (p)) != '\n' && c != '\r')
+	    p++;
+	return p;
+    }
+
+    /** Find the next char that a multi line comment has to look at
+     * @return the position of the first '*', '\n' or '\r', or limit
+     */
+    int findCommentChar (int p) {
+	char c;
+	while (p < limit && (c = charAt (p)) != '*' && c != '\n' && c != '\r')
+	    p++;
+	return p;
+    }
+
+    /** Scan the input for unicode escapes, subclasses have to call this once
+     *  they are ready for charAt calls.
+     */
+    void findUnicodeEscapes () {
+	hasUnicodeEscapes = false;
+	for (int i = pos, e = limit - 1; i < e; i++) {
+	    if (charAt (i) == '\\' && charAt (i + 1) == 'u') {
+		hasUnicodeEscapes = true;
+		return;
+	    }
+	}
+    }
+
+    public String getError () {
+	return errorText;
+    }
+
+    public char getCharValue () {
+	return currentLiteral.getValue ().charAt (0);
+    }
+
+    public String getStringValue () {
+	return currentLiteral.getValue ();
+    }
+
+    public LiteralSpan getLiteral () {
+	return currentLiteral;
+    }
+
+    public int getIntValue () {
+	// for 2^31 which is the max allowed int literal we get -2^31.
+	// note however that (int)2^31 == (int)(-2^31)
+	return (int)currentIntValue;
+    }
+
+    public long getLongValue () {
+	// similar to int handling above
+	return currentIntValue;
+    }
+
+    public float getFloatValue () {
+	return currentFloatValue;
+    }
+
+    public double getDoubleValue () {
+	return currentDoubleValue;
+    }
+
+    public String getIdentifier () {
+	return currentIdentifier;
+    }
+
+    public ParsePosition getParsePosition () {
+	return tokens.getParsePosition (tokenStartPosition, pos);
+    }
+
+    public TokenBuffer getTokens () {
+	return tokens;
+    }
+
+    public int getLineNumber () {
+	return tokens.getLines ().getLineNumber (tokenStartPosition);
+    }
+
+    public int getTokenStartPos () {
+	return tokens.getLines ().getCharOffset (tokenStartPosition);
+    }
+
+    public int getTokenEndPos () {
+	return tokens.getLines ().getCharOffset (pos);
+    }
+
+    public int getTokenColumn () {
+	return tokens.getLines ().getColumn (tokenStartPosition);
+    }
+
+    public Token nextToken () {
+	if (pos == skipStart)
+	    skip ();
+	tokenStartPosition = pos;
+	if (pos < limit) {
+	    char c = nextChar ();
+	    switch (c) {
+
+	    // whitespace
+	    case ' ':
+	    case '\t':
+	    case '\f':
+		return readWhitespace ();
+
+	    // newlines
+	    case '\n':
+		return handleLF ();
+	    case '\r':
+		return handleCR ();
+
+	     // sub
+	    case '\u001a':
+		return Token.SUB;
+
+	    // separators
+	    case '(':
+		return Token.LEFT_PARENTHESIS;
+	    case ')':
+		return Token.RIGHT_PARENTHESIS;
+	    case '{':
+		return Token.LEFT_CURLY;
+	    case '}':
+		return Token.RIGHT_CURLY;
+	    case '[':
+		return Token.LEFT_BRACKET;
+	    case ']':
+		return Token.RIGHT_BRACKET;
+	    case ';':
+		return Token.SEMICOLON;
+	    case ',':
+		return Token.COMMA;
+	    case '.':
+		return handleDot ();
+	    case '@':
+		return Token.AT;
+	    case ':':  // : is an operator, :: is a separator
+		return handleColon ();
+
+	    // operators (and comments)
+	    case '=':
+		return handleEquals ();
+	    case '>':
+		return handleGT ();
+	    case '<':
+		return handleLT ();
+	    case '!':
+		return handleExtraEqual (Token.NOT, Token.NOT_EQUAL);
+	    case '~':
+		return Token.TILDE;
+	    case '?':
+		return Token.QUESTIONMARK;
+	    case '+':
+		return handleDoubleOrEqual (c, Token.PLUS, Token.INCREMENT, Token.PLUS_EQUAL);
+	    case '-':
+		return handleMinus ();
+	    case '*':
+		return handleExtraEqual (Token.MULTIPLY, Token.MULTIPLY_EQUAL);
+	    case '/':
+		return handleSlash ();
+	    case '%':
+		return handleExtraEqual (Token.REMAINDER, Token.REMAINDER_EQUAL);
+	    case '&':
+		return handleDoubleOrEqual (c, Token.AND, Token.LOGICAL_AND, Token.BIT_AND_EQUAL);
+	    case '|':
+		return handleDoubleOrEqual (c, Token.OR, Token.LOGICAL_OR, Token.BIT_OR_EQUAL);
+	    case '^':
+		return handleExtraEqual (Token.XOR, Token.BIT_XOR_EQUAL);
+
+	    case '\'':
+		return readCharacterLiteral ();
+	    case '"':
+		return readStringLiteral ();
+
+	    case '0':
+		return readZero ();
+	    case '1':
+	    case '2':
+	    case '3':
+	    case '4':
+	    case '5':
+	    case '6':
+	    case '7':
+	    case '8':
+	    case '9':
+		return readDecimalNumber (c);
+	    default:
+		if (Character.isJavaIdentifierStart (c))
+		    return readIdentifier (c);
+
+		errorText = "Illegal character: " + c + "(0x" + Integer.toHexString (c) + ")";
+		return Token.ERROR;
+	    }
+	}
+	hasSentEOI = true;
+	return Token.END_OF_INPUT;
+    }
+
+    @Override public Token nextNonWhitespaceToken () {
+	while (hasMoreTokens ()) {
+	    Token t = nextToken ();
+	    if (!t.isWhitespace ()) {
+		tokens.add (t, tokenStartPosition, pos);
+		return t;
+	    }
+	}
+	return Token.END_OF_INPUT;
+    }
+
+    public boolean hasMoreTokens () {
+	return pos != limit || !hasSentEOI;
+    }
+
+    private Token readWhitespace () {
+	if (!hasUnicodeEscapes) {
+	    pos = skipWhitespace (pos);
+	    return Token.WHITESPACE;
+	}
+	char c = 0;
+	while (pos < limit) {
+	    c = nextChar ();
+	    if (c != ' ' && c != '\t' && c != '\f') {
+		pushBack ();
+		break;
+	    }
+	}
+	return Token.WHITESPACE;
+    }
+
+    private Token handleLF () { // easy case
+	nextLine ();
+	return Token.LF;
+    }
+
+    private Token handleCR () { // might be a CR or CRLF
+	Token tt = handleOneExtra (Token.CR, '\n', Token.CRLF);
+	nextLine ();
+	return tt;
+    }
+
+    private Token handleDot () {
+	Token tt = Token.DOT;
+	if (pos < limit) {
+	    int mark = pos;
+	    char c2 = nextChar ();
+	    if (c2 == '.') {
+		if (pos < limit) {
+		    char c3 = nextChar ();
+		    if (c3 == '.')
+			return Token.ELLIPSIS;
+		}
+	    } else if (c2 >= '0' && c2 <= '9') {
+		return readNumber (10, 0, 1, true);
+	    }
+	    pos = mark;
+	}
+	return tt;
+    }
+
+    private Token handleColon () {
+	return handleOneExtra (Token.COLON, ':', Token.DOUBLE_COLON);
+    }
+
+    private Token handleEquals () {
+	return handleOneExtra (Token.EQUAL, '=', Token.DOUBLE_EQUAL);
+    }
+
+    private Token handleExtraEqual (Token base, Token extra) {
+	return handleOneExtra (base, '=', extra);
+    }
+
+    private Token handleDoubleOrEqual (char m, Token base, Token twice, Token baseEqual) {
+	Token tt = base;
+	if (pos < limit) {
+	    char c = nextChar ();
+	    if (c == m)
+		tt = twice;
+	    else if (c == '=')
+		tt = baseEqual;
+	    else
+		pushBack ();
+	}
+	return tt;
+    }
+
+    private Token handleMinus () {
+	// -, --, -=, ->
+	Token tt = Token.MINUS;
+	if (pos < limit) {
+	    char c = nextChar ();
+	    if (c == '-')
+		tt = Token.DECREMENT;
+	    else if (c == '=')
+		tt = Token.MINUS_EQUAL;
+	    else if (c == '>')
+		tt = Token.ARROW;
+	    else
+		pushBack ();
+	}
+	return tt;
+    }
+
+    private Token handleSlash () {
+	// /, /=, //, /* ... */
+	Token tt = Token.DIVIDE;
+	if (pos < limit) {
+	    char c = nextChar ();
+	    if (c == '=')
+		tt = Token.DIVIDE_EQUAL;
+	    else if (c == '/')
+		tt = readOffOneLineComment ();
+	    else if (c == '*')
+		tt = readOffMultiLineComment ();
+	    else
+		pushBack ();
+	}
+	return tt;
+    }
+
+    private Token readOffOneLineComment () {
+	if (!hasUnicodeEscapes) {
+	    // line terminators are ascii, so we can skip encoded chars here
+	    pos = findLineEnd (pos);
+	    return Token.ONELINE_COMMENT;
+	}
+	while (pos < limit) {
+	    char c = nextChar ();
+	    if (c == '\n' || c == '\r') {
+		pushBack ();
+		break;
+	    }
+	}
+	return Token.ONELINE_COMMENT;
+    }
+
+    private Token readOffMultiLineComment () {
+	if (!hasUnicodeEscapes)
+	    return skipMultiLineComment ();
+	boolean previousWasStar = false;
+	while (pos < limit) {
+	    char c = nextChar ();
+	    if (previousWasStar && c == '/')
+		return Token.MULTILINE_COMMENT;
+	    previousWasStar = (c == '*');
+	    if (c == '\n')
+		handleLF ();
+	    else if (c == '\r')
+		handleCR ();
+	}
+	errorText = "Reached end of input while inside comment";
+	return Token.ERROR;
+    }
+
+    private Token skipMultiLineComment () {
+	int p = pos;
+	while ((p = findCommentChar (p)) < limit) {
+	    char c = charAt (p++);
+	    if (c == '*') {
+		if (p < limit && charAt (p) == '/') {
+		    pos = p + 1;
+		    return Token.MULTILINE_COMMENT;
+		}
+	    } else {
+		if (c == '\r' && p < limit && charAt (p) == '\n')
+		    p++;
+		pos = p;
+		nextLine ();
+	    }
+	}
+	pos = limit;
+	errorText = "Reached end of input while inside comment";
+	return Token.ERROR;
+    }
+
+    private Token handleLT () {
+	// <, <=, <<, <<=
+	return handleLTGT ('<', Token.LT, Token.LE,
+			   Token.LEFT_SHIFT, Token.LEFT_SHIFT_EQUAL);
+    }
+
+    private Token handleGT () {
+	// >, >=, >>, >>=, >>>, >>>=
+	Token tt = Token.GT;
+
+	if (pos < limit) {
+	    char c = nextChar ();
+	    if (c == '=') {
+		return Token.GE;
+	    } else if (c == '>') {
+		if (pos < limit) {
+		    char d = nextChar ();
+		    if (d == '=') {
+			return Token.RIGHT_SHIFT_EQUAL;
+		    } else if (d == '>') {
+			if (pos < limit) {
+			    char e = nextChar ();
+			    if (e == '=')
+				return Token.RIGHT_SHIFT_UNSIGNED_EQUAL;
+			    pushBack ();
+			}
+		    }
+		    pushBack ();
+		}
+	    }
+	    pushBack ();
+	}
+	return tt;
+    }
+
+    private Token handleLTGT (char ltgt, Token base, Token baseEqual,
+			      Token doubleBase, Token doubleBaseEqual) {
+	Token tt = base;
+	if (pos < limit) {
+	    char c = nextChar ();
+	    if (c == '=')
+		tt = baseEqual;
+	    else if (c == ltgt)
+		tt = handleOneExtra (doubleBase, '=', doubleBaseEqual);
+	    else
+		pushBack ();
+	}
+	return tt;
+    }
+
+    private Token handleOneExtra (Token base, char match, Token extended) {
+	Token tt = base;
+	if (pos < limit) {
+	    char c = nextChar ();
+	    if (c == match)
+		tt = extended;
+	    else // push back what we read
+		pushBack ();
+	}
+	return tt;
+    }
+
+    private Token readCharacterLiteral () {
+	LiteralSpan span = scanLiteral ('\'', "Character literal not closed");
+	if (span == null)
+	    return Token.ERROR;
+	String s = span.hasEscapes () ? span.getValue () : null;
+	int len = s != null ? s.length () : literalLength;
+	if (len == 0)
+	    return Token.ERROR;
+	if (len > 1) {
+	    errorText = "Unclosed character literal: *" + span.getValue () + "*";
+	    return Token.ERROR;
+	}
+	currentLiteral = span;
+	return Token.CHARACTER_LITERAL;
+    }
+
+    private Token readStringLiteral () {
+	LiteralSpan span = scanLiteral ('"', "String literal not closed");
+	if (span == null)
+	    return Token.ERROR;
+	currentLiteral = span;
+	return Token.STRING_LITERAL;
+    }
+
+    /** Find the end of a string or char literal, the value is decoded when someone asks for it.
+     *  Sets literalLength to the number of chars, which is only correct when there are no escapes.
+     */
+    private LiteralSpan scanLiteral (char end, String newlineError) {
+	errorText = "End of input";
+	int start = pos;
+	int contentEnd = pos;
+	boolean previousWasBackslash = false;
+	boolean hasEscapes = false;
+	int chars = 0;
+	while (pos < limit) {
+	    int before = pos;
+	    char c = nextChar ();
+	    if (pos == lastEscapeEnd)
+		hasEscapes = true;
+	    if (previousWasBackslash) {
+		// the escape is checked when the value is decoded
+		previousWasBackslash = false;
+	    } else if (c == '\n' || c == '\r') {
+		errorText = newlineError;
+		pushBack ();
+		break;
+	    } else if (c == end) {
+		errorText = null;
+		contentEnd = before;
+		break;
+	    } else if (c == '\\') {
+		previousWasBackslash = true;
+		hasEscapes = true;
+	    } else {
+		chars++;
+	    }
+	}
+	literalLength = chars;
+	return errorText == null ? new LiteralSpan (text, start, contentEnd, hasEscapes) : null;
+    }
+
+    private Token readZero () {
+	if (pos < limit) {
+	    char c = nextChar ();
+	    if (c == 'x') {
+		return readNumber (16, 0, 0, false);
+	    } else if (c == 'b') {
+		return readNumber (2, 0, 0, false);
+	    } else if (c == 'l' || c == 'L') {
+		currentIntValue = 0;
+		return Token.LONG_LITERAL;
+	    } else if (c == 'd' || c == 'D') {
+		currentDoubleValue = 0.0;
+		return Token.DOUBLE_LITERAL;
+	    } else if (c == 'f' || c == 'F') {
+		currentFloatValue = 0.0f;
+		return Token.FLOAT_LITERAL;
+	    } else if (c >= '0' && c <= '7') {
+		return readNumber (8, c - '0', 1, false);
+	    } else if (c == '_') {
+		pushBack ();
+		return readNumber (8, 0, 1, false);
+	    } else if (c == '.') {
+		return readNumber (10, 0, 1, true);
+	    } else {
+		currentIntValue = 0;
+		pushBack ();
+		return Token.INT_LITERAL;
+	    }
+	} else {
+	    currentIntValue = 0;
+	}
+	return Token.INT_LITERAL;
+    }
+
+    private Token readDecimalNumber (char start) {
+	return readNumber (10, start - '0', 1, false);
+    }
+
+    /** Read the rest of a number.
+     *  Integer values are accumulated as we go, floating point values are
+     *  parsed from the token text once we know that it is a floating point number.
+     * @param value the value of the digits that have already been read
+     * @param digits the number of digits that have already been read
+     */
+    private Token readNumber (int radix, long value, int digits, boolean hasSeenDot) {
+	boolean lastWasUnderscore = false;
+	boolean hasSeenExponent = false;
+	boolean overflow = false;
+	long multiplyLimit = MULTIPLY_LIMITS[radix];
+	Token type = Token.INT_LITERAL;
+	char minChar = '0';
+	char maxChar = (char)(minChar + Math.min (10, radix));
+	while (pos < limit) {
+	    lastWasUnderscore = false;
+	    char c = nextChar ();
+	    int digit;
+	    if (c >= minChar && c < maxChar) {
+		digit = c - '0';
+	    } else if (isAllowedHexDigit (radix, hasSeenExponent, c)) {
+		digit = Character.digit (c, 16);
+	    } else if (c == '_') { // skip it
+		lastWasUnderscore = true;
+		continue;
+	    } else if (c == 'd' || c == 'D') {
+		type = Token.DOUBLE_LITERAL;
+		break;
+	    } else if (c == 'f' || c == 'F') {
+		type = Token.FLOAT_LITERAL;
+		break;
+	    } else if (c == 'l' || c == 'L') {
+		type = Token.LONG_LITERAL;
+		break;
+	    } else if (c == '.' && !hasSeenDot && (radix == 10 || radix == 16)) {
+		hasSeenDot = true;
+		continue;
+	    } else if (validExponent (radix, hasSeenExponent, c)) {
+		hasSeenExponent = true;
+		if (!readSignedInteger ())
+		    return Token.ERROR;
+		continue;
+	    } else {
+		pushBack ();
+		break;
+	    }
+	    digits++;
+	    if (!hasSeenDot && !overflow) {
+		long m = value * radix;
+		if (Long.compareUnsigned (value, multiplyLimit) > 0 || Long.compareUnsigned (m + digit, m) < 0)
+		    overflow = true;
+		else
+		    value = m + digit;
+	    }
+	}
+	if (lastWasUnderscore) {
+	    errorText = "Number may not end with underscore";
+	    return Token.ERROR;
+	}
+	if (digits == 0) {
+	    errorText = "Number may not be empty";
+	    return Token.ERROR;
+	}
+
+	if ((hasSeenDot || hasSeenExponent) && type != Token.FLOAT_LITERAL)
+	    type = Token.DOUBLE_LITERAL;
+	if (type == Token.INT_LITERAL || type == Token.LONG_LITERAL)
+	    return intValue (value, overflow, radix, type);
+	return doubleValue (getNumberText (), type);
+    }
+
+    private boolean isAllowedHexDigit (int radix, boolean hasSeenExponent, char c) {
+	if (radix != 16)
+	    return false;
+	// Exponents are decimal only
+	if (hasSeenExponent)
+	    return false;
+	return (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    private boolean validExponent (int radix, boolean hasSeenExponent, char c) {
+	if (hasSeenExponent)
+	    return false;
+	if (radix == 10 && (c == 'e' || c == 'E'))
+	    return true;
+	if (radix == 16 && (c == 'p' || c == 'P'))
+	    return true;
+	return false;
+    }
+
+    private boolean readSignedInteger () {
+	boolean lastWasUnderscore = false;
+	boolean first = true;
+	boolean foundDigits = false;
+	while (pos < limit) {
+	    lastWasUnderscore = false;
+	    char c = nextChar ();
+	    if (c >= '0' && c <= '9') {
+		foundDigits = true;
+	    } else if (c == '_') {
+		lastWasUnderscore = true;
+	    } else if (first && (c == '+' || c == '-')) {
+		// sign is part of the token text
+	    } else {
+		pushBack ();
+		break;
+	    }
+	    first = false;
+	}
+	if (lastWasUnderscore) {
+	    errorText = "Number may not end with underscore";
+	    return false;
+	}
+	if (!foundDigits) {
+	    errorText = "Exponent not found";
+	    return false;
+	}
+	return true;
+    }
+
+    private Token intValue (long value, boolean overflow, int radix, Token type) {
+	long maxAllowed;
+	if (type == Token.INT_LITERAL)
+	    maxAllowed = radix == 10 ? MAX_INT_LITERAL : MAX_UINT_LITERAL;
+	else
+	    maxAllowed = radix == 10 ? MAX_LONG_LITERAL : MAX_ULONG_LITERAL;
+
+	if (overflow || Long.compareUnsigned (value, maxAllowed) > 0) {
+	    errorText = "Integer literal too large";
+	    return Token.ERROR;
+	}
+	currentIntValue = value;
+	return type;
+    }
+
+    /** Get the text of the current number token, without underscores */
+    private String getNumberText () {
+	int end = pos;
+	pos = tokenStartPosition;
+	StringBuilder sb = new StringBuilder (end - tokenStartPosition);
+	while (pos < end) {
+	    char c = nextChar ();
+	    if (c != '_')
+		sb.append (c);
+	}
+	pos = end;
+	return sb.toString ();
+    }
+
+    private Token doubleValue (String text, Token type) {
+	try {
+	    if (type == Token.DOUBLE_LITERAL)
+		currentDoubleValue = Double.parseDouble (text);
+	    else
+		currentFloatValue = Float.parseFloat (text);
+	    return type;
+	} catch (NumberFormatException n) {
+	    errorText = "Failed to parse floating point: " + text;
+	    return Token.ERROR;
+	}
+    }
+
+    private Token readIdentifier (char start) {
+	int hash = start;
+	int length = 1;
+	if (!hasUnicodeEscapes) {
+	    int p = pos;
+	    char c;
+	    while (p < limit && (c = charAt (p)) < 128 && ASCII_IDENTIFIER_PART[c]) {
+		hash = 31 * hash + c;
+		p++;
+	    }
+	    length += p - pos;
+	    pos = p;
+	}
+	// Unicode escapes and non ascii chars
+	if (hasUnicodeEscapes || (pos < limit && charAt (pos) >= 128)) {
+	    while (pos < limit) {
+		char c = nextChar ();
+		if (isJavaIdentifierPart (c)) {
+		    hash = 31 * hash + c;
+		    length++;
+		} else {
+		    pushBack ();
+		    break;
+		}
+	    }
+	}
+	if (pos - tokenStartPosition != length)
+	    return readEscapedIdentifier (length);
+	Token t = getKeyword (tokenStartPosition, length);
+	if (t != null)
+	    return t;
+	currentIdentifier = intern (tokenStartPosition, length, hash);
+	return Token.IDENTIFIER;
+    }
+
+    /** The identifier contains unicode escapes or encoded chars so we can not use the input directly */
+    private Token readEscapedIdentifier (int length) {
+	int end = pos;
+	pos = tokenStartPosition;
+	StringBuilder res = new StringBuilder (length);
+	for (int i = 0; i < length; i++)
+	    res.append (nextChar ());
+	pos = end;
+	String identifier = res.toString ();
+	Token t = Token.getFromIdentifier (identifier);
+	if (t != null)
+	    return t;
+	currentIdentifier = symbols.intern (identifier);
+	return Token.IDENTIFIER;
+    }
+
+    private static boolean isJavaIdentifierPart (char c) {
+	return c < 128 ? ASCII_IDENTIFIER_PART[c] : Character.isJavaIdentifierPart (c);
+    }
+
+    private char nextChar () {
+	char c = readChar ();
+	if (c == '\\' && hasUnicodeEscapes)
+	    return readUnicodeEscape ();
+	return c;
+    }
+
+    /** Check if the backslash that was just read starts a unicode escape and decode it */
+    private char readUnicodeEscape () {
+	int p = pos;
+	if (limit - p < 5 || charAt (p) != 'u')
+	    return '\\';
+	int value = 0;
+	for (int j = 1; j <= 4; j++) {
+	    int h = hexValue (charAt (p + j));
+	    if (h < 0)
+		return '\\';
+	    value = (value << 4) | h;
+	}
+	lastEscapeEnd = p + 5;
+	pos = lastEscapeEnd;
+	return (char)value;
+    }
+
+    static int hexValue (char h) {
+	if (h >= '0' && h <= '9')
+	    return h - '0';
+	if (h >= 'a' && h <= 'f')
+	    return h - 'a' + 10;
+	if (h >= 'A' && h <= 'F')
+	    return h - 'A' + 10;
+	return -1;
+    }
+
+    private void pushBack () {
+	if (pos == lastEscapeEnd)
+	    pos -= 6;
+	else
+	    unreadChar ();
+    }
+
+    private void skip () {
+	pos = skips[skipIndex + 1];
+	skipIndex += 2;
+	skipStart = skipIndex < skips.length ? skips[skipIndex] : -1;
+    }
+
+    private void nextLine () {
+	currentLineStart = pos;
+	if (findLines)
+	    tokens.getLines ().addLineStart (currentLineStart);
+    }
+
+    @Override public String getCurrentLine () {
+	int p = currentLineStart;
+	char c;
+	while (p < limit && (c = charAt (p)) != '\n' && c != '\r')
+	    p++;
+	return getText (currentLineStart, p);
+    }
+}
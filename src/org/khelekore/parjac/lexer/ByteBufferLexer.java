@@ -0,0 +1,212 @@
+package org.khelekore.parjac.lexer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/** A lexer for the java language that reads UTF-8 encoded input directly.
+ *
+ *  Ascii is read as is, multi byte sequences are only decoded when the lexer
+ *  reads them as chars. Whitespace and comments are skipped eight bytes at
+ *  a time without decoding anything.
+ *  Positions are byte offsets while lexing, the positions, columns and
+ *  parse positions that are reported are converted to char offsets.
+ *  Malformed input gives U+FFFD, which the lexer reports as an illegal character
+ *  unless it is inside a comment or a literal.
+ */
+public class ByteBufferLexer extends AbstractLexer {
+    private static final char REPLACEMENT = '\uFFFD';
+    // The smallest value for each sequence length, smaller values are overlong
+    private static final int[] MIN_VALUE = { 0, 0, 0x80, 0x800, 0x10000 };
+
+    // Constants for finding bytes in a long
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final long SPACES = ' ' * ONES;
+    private static final long LFS = '\n' * ONES;
+    private static final long CRS = '\r' * ONES;
+    private static final long STARS = '*' * ONES;
+
+    private final Text text;
+    private final ByteBuffer buf;
+    // Same bytes as buf, little endian so the first byte is the lowest in a long
+    private final ByteBuffer words;
+    // Where the last decoded multi byte char started and ended
+    private int lastCharStart = -1;
+    private int lastCharEnd = -1;
+    // A four byte sequence is returned as two chars, the high surrogate covers
+    // the first two bytes and the low surrogate the last two.
+    private int lowSurrogatePos = -1;
+    private char lowSurrogate;
+
+    /** Create a lexer with a symbol table of its own */
+    public ByteBufferLexer (ByteBuffer buf) {
+	this (buf, new SymbolTable ());
+    }
+
+    /** Create a lexer that interns the identifiers in the given symbol table */
+    public ByteBufferLexer (ByteBuffer buf, SymbolTable symbols) {
+	this (new Text (buf.duplicate ()), symbols);
+    }
+
+    private ByteBufferLexer (Text text, SymbolTable symbols) {
+	this (text, symbols, text.buf.position (), text.buf.limit (), null);
+    }
+
+    private ByteBufferLexer (Text text, SymbolTable symbols, int start, int end, LineIndex lines) {
+	super (symbols, text, start, end, lines);
+	this.text = text;
+	this.buf = text.buf;
+	this.words = buf.duplicate ().order (ByteOrder.LITTLE_ENDIAN);
+	if (lines == null)
+	    getTokens ().getLines ().setCharOffsets (new Utf8Offsets (buf, words));
+	findUnicodeEscapes ();
+    }
+
+    @Override AbstractLexer createPartLexer (int start, int end, LineIndex lines) {
+	return new ByteBufferLexer (text, symbols, start, end, lines);
+    }
+
+    @Override char charAt (int p) {
+	return (char)(buf.get (p) & 0xff);
+    }
+
+    @Override char readChar () {
+	byte b = buf.get (pos);
+	if (b >= 0) {
+	    pos++;
+	    return (char)b;
+	}
+	return readMultiByte (b);
+    }
+
+    private char readMultiByte (int b) {
+	int start = pos;
+	if (start == lowSurrogatePos)
+	    return setRead (start, start + 2, lowSurrogate);
+	int value = decode (buf, start, limit);
+	if (value < 0)
+	    return setRead (start, start + 1, REPLACEMENT);
+	if (value >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+	    lowSurrogatePos = start + 2;
+	    lowSurrogate = Character.lowSurrogate (value);
+	    return setRead (start, start + 2, Character.highSurrogate (value));
+	}
+	return setRead (start, start + getEncodedLength (value), (char)value);
+    }
+
+    /** Decode the multi byte sequence at start.
+     * @return the code point or -1 if the sequence is malformed
+     */
+    static int decode (ByteBuffer buf, int start, int limit) {
+	int b = buf.get (start);
+	int length;
+	int value;
+	if ((b & 0xe0) == 0xc0) {
+	    length = 2;
+	    value = b & 0x1f;
+	} else if ((b & 0xf0) == 0xe0) {
+	    length = 3;
+	    value = b & 0x0f;
+	} else if ((b & 0xf8) == 0xf0) {
+	    length = 4;
+	    value = b & 0x07;
+	} else {
+	    return -1;
+	}
+	if (limit - start < length)
+	    return -1;
+	for (int i = 1; i < length; i++) {
+	    int c = buf.get (start + i);
+	    if ((c & 0xc0) != 0x80)
+		return -1;
+	    value = (value << 6) | (c & 0x3f);
+	}
+	if (value < MIN_VALUE[length] || value > Character.MAX_CODE_POINT ||
+	    (value >= Character.MIN_SURROGATE && value <= Character.MAX_SURROGATE))
+	    return -1;
+	return value;
+    }
+
+    /** Get the number of bytes a valid, decoded, code point was encoded in */
+    static int getEncodedLength (int value) {
+	if (value < 0x80)
+	    return 1;
+	if (value < 0x800)
+	    return 2;
+	return value < Character.MIN_SUPPLEMENTARY_CODE_POINT ? 3 : 4;
+    }
+
+    private char setRead (int start, int end, char c) {
+	lastCharStart = start;
+	lastCharEnd = end;
+	pos = end;
+	return c;
+    }
+
+    @Override void unreadChar () {
+	pos = pos == lastCharEnd ? lastCharStart : pos - 1;
+    }
+
+    @Override Token getKeyword (int start, int length) {
+	return Token.getFromIdentifier (buf, start, length);
+    }
+
+    @Override String intern (int start, int length, int hash) {
+	return symbols.intern (buf, start, length, hash);
+    }
+
+    @Override int skipWhitespace (int p) {
+	// indentation is mostly spaces
+	while (limit - p >= 8 && words.getLong (p) == SPACES)
+	    p += 8;
+	return super.skipWhitespace (p);
+    }
+
+    @Override int findLineEnd (int p) {
+	while (limit - p >= 8) {
+	    long w = words.getLong (p);
+	    long found = matches (w, LFS) | matches (w, CRS);
+	    if (found != 0)
+		return p + (Long.numberOfTrailingZeros (found) >>> 3);
+	    p += 8;
+	}
+	return super.findLineEnd (p);
+    }
+
+    @Override int findCommentChar (int p) {
+	while (limit - p >= 8) {
+	    long w = words.getLong (p);
+	    long found = matches (w, STARS) | matches (w, LFS) | matches (w, CRS);
+	    if (found != 0)
+		return p + (Long.numberOfTrailingZeros (found) >>> 3);
+	    p += 8;
+	}
+	return super.findCommentChar (p);
+    }
+
+    /** Get a long with the high bit set in each byte of w that equals the byte in pattern.
+     *  Bytes above a match may also be marked, but the lowest marked byte is always a match.
+     */
+    private static long matches (long w, long pattern) {
+	long x = w ^ pattern;
+	return (x - ONES) & ~x & HIGH_BITS;
+    }
+
+    private static class Text implements TextSource {
+	private final ByteBuffer buf;
+
+	public Text (ByteBuffer buf) {
+	    this.buf = buf;
+	}
+
+	@Override public String getText (int start, int end) {
+	    if (buf.hasArray ())
+		return new String (buf.array (), buf.arrayOffset () + start, end - start, StandardCharsets.UTF_8);
+	    byte[] bytes = new byte[end - start];
+	    for (int i = 0; i < bytes.length; i++)
+		bytes[i] = buf.get (start + i);
+	    return new String (bytes, StandardCharsets.UTF_8);
+	}
+    }
+}
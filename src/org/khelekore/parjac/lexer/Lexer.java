@@ -13,6 +13,11 @@ public interface Lexer {
     /** Get the value of the current String token */
     String getStringValue ();
 
+    /** Get the text of the current String or character token, the value
+     *  is only decoded when it is asked for.
+     */
+    LiteralSpan getLiteral ();
+
     /** Get the value of the current int token */
     int getIntValue ();
 
@@ -31,6 +36,11 @@ public interface Lexer {
     /** Get the current parse position */
     ParsePosition getParsePosition ();
 
+    /** Get the tokens that have been returned from nextNonWhitespaceToken,
+     *  the last token has index getTokens ().size () - 1
+     */
+    TokenBuffer getTokens ();
+
     /** Check if there are any more tokens.
      *  Note that this method will return true until END_OF_INPUT has been returned.
      */
@@ -46,4 +56,17 @@ public interface Lexer {
      *  If there are no more non-whitespace tokens, then END_OF_INPUT will be returned
      */
     Token nextNonWhitespaceToken ();
+
+    /** Get a lexer for the part [start, end) of the same input.
+     *  This lexer has to have read all of its input, the new lexer uses its line starts.
+     *  Positions in the new lexer are positions in the whole input.
+     *  A part of a skipping lexer skips the same parts.
+     */
+    Lexer getPartLexer (int start, int end);
+
+    /** Get a lexer like getPartLexer that jumps over parts of the input.
+     * @param skips pairs of start and end positions, in order. Each start has
+     *        to be the end of a token, or the start of the input.
+     */
+    Lexer getSkippingLexer (int start, int end, int[] skips);
 }
\ No newline at end of file
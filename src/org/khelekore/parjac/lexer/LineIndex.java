@@ -0,0 +1,68 @@
+package org.khelekore.parjac.lexer;
+
+import java.util.Arrays;
+
+/** The offsets where the lines of an input start.
+ *  Line numbers and columns are found with a binary search over the offsets.
+ *  For UTF-8 input the offsets are in bytes, columns and char offsets are
+ *  converted to chars.
+ */
+public class LineIndex {
+    // The first line starts at offset 0
+    private int[] lineStarts = new int[256];
+    private int lines = 1;
+    // Set for UTF-8 input, where byte offsets and char offsets differ
+    private Utf8Offsets charOffsets;
+
+    /** Note that a new line starts at the given offset, offsets have to be added in order */
+    public void addLineStart (int offset) {
+	if (lines == lineStarts.length)
+	    lineStarts = Arrays.copyOf (lineStarts, lines * 2);
+	lineStarts[lines++] = offset;
+    }
+
+    /** Get the number of lines that have been seen so far */
+    public int getNumberOfLines () {
+	return lines;
+    }
+
+    /** Get the line number, starting at 1, that the given offset is on */
+    public int getLineNumber (int offset) {
+	int[] ls = lineStarts;
+	int high = lines - 1;
+	if (offset >= ls[high])
+	    return high + 1;
+	int low = 0;
+	while (low < high) {
+	    int mid = (low + high + 1) >>> 1;
+	    if (ls[mid] <= offset)
+		low = mid;
+	    else
+		high = mid - 1;
+	}
+	return low + 1;
+    }
+
+    /** Get the offset that the given line, starting at 1, starts at */
+    public int getLineStart (int line) {
+	return lineStarts[line - 1];
+    }
+
+    /** Note that the offsets are bytes of the given UTF-8 input */
+    void setCharOffsets (Utf8Offsets charOffsets) {
+	this.charOffsets = charOffsets;
+    }
+
+    /** Get the char offset of the given offset */
+    public int getCharOffset (int offset) {
+	return charOffsets == null ? offset : charOffsets.getCharOffset (offset);
+    }
+
+    /** Get the column, in chars and starting at 0, of the given offset */
+    public int getColumn (int offset) {
+	int lineStart = getLineStart (getLineNumber (offset));
+	if (charOffsets == null)
+	    return offset - lineStart;
+	return charOffsets.getCharOffset (offset) - charOffsets.getCharOffset (lineStart);
+    }
+}
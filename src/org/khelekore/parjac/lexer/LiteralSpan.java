@@ -0,0 +1,117 @@
+package org.khelekore.parjac.lexer;
+
+/** The text of a string or character literal in the input.
+ *
+ *  The lexer only finds the end of a literal, the escapes are decoded when
+ *  someone asks for the value. A literal without any escapes is just the text
+ *  between the quotes. The text is copied out of the input, so a literal that
+ *  is never decoded does not keep the whole input alive.
+ */
+public class LiteralSpan {
+    // the text between the quotes
+    private final String raw;
+    private final boolean hasEscapes;
+
+    LiteralSpan (TextSource source, int start, int end, boolean hasEscapes) {
+	this.raw = source.getText (start, end);
+	this.hasEscapes = hasEscapes;
+    }
+
+    /** Check if this literal has any escapes, unicode escapes included */
+    public boolean hasEscapes () {
+	return hasEscapes;
+    }
+
+    /** Decode the value of this literal, the value is interned */
+    public String getValue () {
+	String s = hasEscapes ? decode (raw) : raw;
+	return s.intern ();
+    }
+
+    /** Decode the value of a character literal */
+    public char getCharValue () {
+	return hasEscapes ? decode (raw).charAt (0) : raw.charAt (0);
+    }
+
+    @Override public String toString () {
+	return getClass ().getSimpleName () + "{" + raw + ", escapes: " + hasEscapes + "}";
+    }
+
+    /** Decode the escapes in the raw text of a literal */
+    static String decode (String raw) {
+	String s = translateUnicodeEscapes (raw);
+	StringBuilder res = new StringBuilder (s.length ());
+	for (int i = 0, l = s.length (); i < l; i++) {
+	    char c = s.charAt (i);
+	    if (c != '\\' || i + 1 == l) {
+		res.append (c);
+		continue;
+	    }
+	    c = s.charAt (++i);
+	    switch (c) {
+	    case 'b': res.append ('\b'); break;
+	    case 't': res.append ('\t'); break;
+	    case 'n': res.append ('\n'); break;
+	    case 'f': res.append ('\f'); break;
+	    case 'r': res.append ('\r'); break;
+	    case '"':  // fall through
+	    case '\'': // fall through
+	    case '\\': res.append (c); break;
+
+	    // octal escape, Unicode \u0000 to \u00ff
+	    case '0':
+	    case '1':
+	    case '2':
+	    case '3':
+	    case '4':
+	    case '5':
+	    case '6':
+	    case '7':
+		int value = c - '0';
+		while (i + 1 < l && (c = s.charAt (i + 1)) >= '0' && c <= '7') {
+		    // anything above 255 is invalid, stop growing so we do not overflow
+		    if (value < 256)
+			value = value * 8 + c - '0';
+		    i++;
+		}
+		if (value < 256)
+		    res.append ((char)value);
+		break;
+	    default:
+		res.append ('\\');
+		res.append (c);
+	    }
+	}
+	return res.toString ();
+    }
+
+    private static String translateUnicodeEscapes (String raw) {
+	if (raw.indexOf ("\\u") < 0)
+	    return raw;
+	StringBuilder res = new StringBuilder (raw.length ());
+	for (int i = 0, l = raw.length (); i < l; i++) {
+	    char c = raw.charAt (i);
+	    int value = c == '\\' ? getUnicodeEscape (raw, i + 1) : -1;
+	    if (value >= 0) {
+		res.append ((char)value);
+		i += 5;
+	    } else {
+		res.append (c);
+	    }
+	}
+	return res.toString ();
+    }
+
+    private static int getUnicodeEscape (String s, int p) {
+	if (s.length () - p < 5 || s.charAt (p) != 'u')
+	    return -1;
+	int value = 0;
+	for (int j = 1; j <= 4; j++) {
+	    int h = AbstractLexer.hexValue (s.charAt (p + j));
+	    if (h < 0)
+		return -1;
+	    value = (value << 4) | h;
+	}
+	return value;
+    }
+}
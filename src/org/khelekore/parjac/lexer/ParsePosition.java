@@ -1,45 +1,67 @@
 package org.khelekore.parjac.lexer;
 
 public class ParsePosition {
-    private int lineNumber;
-    private int tokenColumn;
-    private int tokenStartPos;
-    private int tokenEndPos;
+    // If set the line number and column are looked up when they are first needed
+    private final LineIndex lines;
+    // The line number in the high half and the column in the low half, 0 until known.
+    // Positions are read from parallel phases, so both are published in one write.
+    private volatile long lineAndColumn;
+    // Offsets in the unit of the lexer, converted to chars by lines when they are asked for
+    private final int tokenStartPos;
+    private final int tokenEndPos;
 
     public ParsePosition (int lineNumber, int tokenColumn,
 			  int tokenStartPos, int tokenEndPos) {
-	this.lineNumber = lineNumber;
-	this.tokenColumn = tokenColumn;
+	this.lines = null;
+	this.lineAndColumn = pack (lineNumber, tokenColumn);
+	this.tokenStartPos = tokenStartPos;
+	this.tokenEndPos = tokenEndPos;
+    }
+
+    /** Create a position that finds its line number and column in the given line index */
+    public ParsePosition (LineIndex lines, int tokenStartPos, int tokenEndPos) {
+	this.lines = lines;
 	this.tokenStartPos = tokenStartPos;
 	this.tokenEndPos = tokenEndPos;
     }
 
     @Override public String toString () {
 	return getClass ().getSimpleName () + "{" +
-	    "line: " + lineNumber +
-	    ", column: " + tokenColumn +
-	    ", token start pos: " + tokenStartPos +
-	    ", token end pos: " + tokenEndPos +
+	    "line: " + getLineNumber () +
+	    ", column: " + getTokenColumn () +
+	    ", token start pos: " + getTokenStartPos () +
+	    ", token end pos: " + getTokenEndPos () +
 	    "}";
     }
 
     /** Get the start position of the current token */
     public int getTokenStartPos () {
-	return tokenStartPos;
+	return lines == null ? tokenStartPos : lines.getCharOffset (tokenStartPos);
     }
 
     /** Get the end position of the current token */
     public int getTokenEndPos () {
-	return tokenEndPos;
+	return lines == null ? tokenEndPos : lines.getCharOffset (tokenEndPos);
     }
 
     /** Get the line number of the current token */
     public int getLineNumber () {
-	return lineNumber;
+	return (int)(getLineAndColumn () >>> 32);
     }
 
     /** Get the start column of the current token */
     public int getTokenColumn () {
-	return tokenColumn;
+	return (int)getLineAndColumn ();
+    }
+
+    private long getLineAndColumn () {
+	long lc = lineAndColumn;
+	if (lc == 0 && lines != null)
+	    lineAndColumn = lc = pack (lines.getLineNumber (tokenStartPos), lines.getColumn (tokenStartPos));
+	return lc;
+    }
+
+    private static long pack (int lineNumber, int tokenColumn) {
+	return ((long)lineNumber << 32) | (tokenColumn & 0xffffffffL);
     }
-}
\ No newline at end of file
+}
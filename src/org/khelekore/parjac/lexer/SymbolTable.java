@@ -0,0 +1,127 @@
+package org.khelekore.parjac.lexer;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/** A table of interned identifiers.
+ *
+ *  Looking up an identifier that is already in the table does not allocate
+ *  anything and all lexers that share a table get the same String instance
+ *  for the same identifier, so later lookups of names can use that.
+ *  Lookups are lock free, adding a new identifier is synchronized.
+ *  Identifiers are never removed, so a table should not live longer than
+ *  the compilation, or the parse, that it was created for.
+ */
+public class SymbolTable {
+    private volatile AtomicReferenceArray<Entry> table = new AtomicReferenceArray<> (4096);
+    private int size;
+
+    /** Calculate the hash of the given chars, same as String.hashCode would give */
+    public static int hash (CharBuffer buf, int start, int length) {
+	int h = 0;
+	for (int i = start, end = start + length; i < end; i++)
+	    h = 31 * h + buf.get (i);
+	return h;
+    }
+
+    /** Get the interned identifier for the given part of the buffer.
+     * @param hash the hash of the chars, as calculated by hash
+     */
+    public String intern (CharBuffer buf, int start, int length, int hash) {
+	AtomicReferenceArray<Entry> t = table;
+	for (Entry e = t.get (hash & (t.length () - 1)); e != null; e = e.next)
+	    if (e.hash == hash && e.matches (buf, start, length))
+		return e.text;
+	char[] cs = new char[length];
+	for (int i = 0; i < length; i++)
+	    cs[i] = buf.get (start + i);
+	return add (new String (cs), hash);
+    }
+
+    /** Get the interned identifier for the given ascii bytes of the buffer.
+     * @param hash the hash of the chars, same as String.hashCode would give
+     */
+    public String intern (ByteBuffer buf, int start, int length, int hash) {
+	AtomicReferenceArray<Entry> t = table;
+	for (Entry e = t.get (hash & (t.length () - 1)); e != null; e = e.next)
+	    if (e.hash == hash && e.matches (buf, start, length))
+		return e.text;
+	char[] cs = new char[length];
+	for (int i = 0; i < length; i++)
+	    cs[i] = (char)buf.get (start + i);
+	return add (new String (cs), hash);
+    }
+
+    /** Get the interned version of the given identifier */
+    public String intern (String text) {
+	int hash = text.hashCode ();
+	AtomicReferenceArray<Entry> t = table;
+	for (Entry e = t.get (hash & (t.length () - 1)); e != null; e = e.next)
+	    if (e.hash == hash && e.text.equals (text))
+		return e.text;
+	return add (text, hash);
+    }
+
+    /** Get the number of identifiers in this table */
+    public synchronized int size () {
+	return size;
+    }
+
+    private synchronized String add (String text, int hash) {
+	AtomicReferenceArray<Entry> t = table;
+	int pos = hash & (t.length () - 1);
+	Entry first = t.get (pos);
+	// someone may have added it while we were not holding the lock
+	for (Entry e = first; e != null; e = e.next)
+	    if (e.hash == hash && e.text.equals (text))
+		return e.text;
+	t.set (pos, new Entry (text, hash, first));
+	if (++size > t.length () / 4 * 3)
+	    table = resize (t);
+	return text;
+    }
+
+    private AtomicReferenceArray<Entry> resize (AtomicReferenceArray<Entry> t) {
+	// Entries are immutable so concurrent readers of the old table are not affected
+	AtomicReferenceArray<Entry> n = new AtomicReferenceArray<> (t.length () * 2);
+	int mask = n.length () - 1;
+	for (int i = 0; i < t.length (); i++) {
+	    for (Entry e = t.get (i); e != null; e = e.next) {
+		int pos = e.hash & mask;
+		n.set (pos, new Entry (e.text, e.hash, n.get (pos)));
+	    }
+	}
+	return n;
+    }
+
+    private static final class Entry {
+	private final String text;
+	private final int hash;
+	private final Entry next;
+
+	public Entry (String text, int hash, Entry next) {
+	    this.text = text;
+	    this.hash = hash;
+	    this.next = next;
+	}
+
+	public boolean matches (CharBuffer buf, int start, int length) {
+	    if (text.length () != length)
+		return false;
+	    for (int i = 0; i < length; i++)
+		if (text.charAt (i) != buf.get (start + i))
+		    return false;
+	    return true;
+	}
+
+	public boolean matches (ByteBuffer buf, int start, int length) {
+	    if (text.length () != length)
+		return false;
+	    for (int i = 0; i < length; i++)
+		if (text.charAt (i) != buf.get (start + i))
+		    return false;
+	    return true;
+	}
+    }
+}
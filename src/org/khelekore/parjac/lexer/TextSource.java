@@ -0,0 +1,7 @@
+package org.khelekore.parjac.lexer;
+
+/** The input of a lexer, for text that is only needed after lexing */
+interface TextSource {
+    /** Get the text between the two positions */
+    String getText (int start, int end);
+}
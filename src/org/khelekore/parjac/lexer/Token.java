@@ -1,5 +1,7 @@
 package org.khelekore.parjac.lexer;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
@@ -224,6 +226,65 @@ public enum Token {
 	return nameToToken.get (id);
     }
 
+    // A perfect hash of the keywords and the null, true and false literals
+    private static final int KEYWORD_MASK = 127;
+    private static final Token[] keywordTable = new Token[KEYWORD_MASK + 1];
+    static {
+	for (Token t : nameToToken.values ()) {
+	    String d = t.description;
+	    int h = keywordHash (d.charAt (0), d.charAt (1), d.charAt (d.length () - 1), d.length ());
+	    if (keywordTable[h] != null)
+		throw new IllegalStateException ("Keyword hash collision: " + t + " and " + keywordTable[h]);
+	    keywordTable[h] = t;
+	}
+    }
+
+    private static int keywordHash (char first, char second, char last, int length) {
+	return (first * 30 + second * 24 + last * 46 + length) & KEYWORD_MASK;
+    }
+
+    /** Check if the given part of the buffer is a keyword or the null, true or false literal.
+     *  This does the same thing as getFromIdentifier (String), but does not allocate.
+     */
+    public static Token getFromIdentifier (CharBuffer buf, int start, int length) {
+	if (length < 2 || length > 12)
+	    return null;
+	char first = buf.get (start);
+	if (first < 'a' || first > 'z')
+	    return null;
+	Token t = keywordTable[keywordHash (first, buf.get (start + 1),
+					    buf.get (start + length - 1), length)];
+	if (t == null)
+	    return null;
+	String d = t.description;
+	if (d.length () != length)
+	    return null;
+	for (int i = 1; i < length; i++)
+	    if (d.charAt (i) != buf.get (start + i))
+		return null;
+	return d.charAt (0) == first ? t : null;
+    }
+
+    /** Check if the given ascii bytes of the buffer is a keyword or the null, true or false literal. */
+    public static Token getFromIdentifier (ByteBuffer buf, int start, int length) {
+	if (length < 2 || length > 12)
+	    return null;
+	char first = (char)buf.get (start);
+	if (first < 'a' || first > 'z')
+	    return null;
+	Token t = keywordTable[keywordHash (first, (char)buf.get (start + 1),
+					    (char)buf.get (start + length - 1), length)];
+	if (t == null)
+	    return null;
+	String d = t.description;
+	if (d.length () != length)
+	    return null;
+	for (int i = 1; i < length; i++)
+	    if (d.charAt (i) != buf.get (start + i))
+		return null;
+	return d.charAt (0) == first ? t : null;
+    }
+
     private static final Map<String, Token> descToToken = new HashMap<> ();
     static {
 	for (Token t : values ())
@@ -0,0 +1,79 @@
+package org.khelekore.parjac.lexer;
+
+import java.util.Arrays;
+
+/** The non whitespace tokens of one input in a compact form.
+ *
+ *  Token kind, start and end offset are stored in parallel arrays together
+ *  with the offsets where each line starts. A ParsePosition is only created
+ *  when someone asks for it, most tokens never need one, and it only looks
+ *  up its line and column when they are used.
+ */
+public class TokenBuffer {
+    // Token ordinals are stored as unsigned bytes
+    private static final Token[] TOKENS = Token.values ();
+
+    private byte[] kinds = new byte[1024];
+    private int[] starts = new int[1024];
+    private int[] ends = new int[1024];
+    private int size;
+
+    private final LineIndex lines;
+
+    public TokenBuffer () {
+	this (new LineIndex ());
+    }
+
+    /** Create a buffer that uses the given, already filled, line index */
+    public TokenBuffer (LineIndex lines) {
+	this.lines = lines;
+    }
+
+    /** Add a token
+     * @return the index of the added token
+     */
+    public int add (Token t, int start, int end) {
+	if (size == kinds.length) {
+	    int l = size * 2;
+	    kinds = Arrays.copyOf (kinds, l);
+	    starts = Arrays.copyOf (starts, l);
+	    ends = Arrays.copyOf (ends, l);
+	}
+	kinds[size] = (byte)t.ordinal ();
+	starts[size] = start;
+	ends[size] = end;
+	return size++;
+    }
+
+    /** Get the number of tokens */
+    public int size () {
+	return size;
+    }
+
+    public Token getToken (int i) {
+	return TOKENS[kinds[i] & 0xff];
+    }
+
+    public int getStartPos (int i) {
+	return starts[i];
+    }
+
+    public int getEndPos (int i) {
+	return ends[i];
+    }
+
+    /** Get the line starts of the input */
+    public LineIndex getLines () {
+	return lines;
+    }
+
+    /** Create the parse position for the token with the given index */
+    public ParsePosition getParsePosition (int i) {
+	return getParsePosition (starts[i], ends[i]);
+    }
+
+    /** Create the parse position for the given range */
+    public ParsePosition getParsePosition (int start, int end) {
+	return new ParsePosition (lines, start, end);
+    }
+}
@@ -0,0 +1,92 @@
+package org.khelekore.parjac.lexer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/** Converts byte offsets in UTF-8 input to char offsets.
+ *  The input is scanned for multi byte sequences the first time an offset
+ *  is converted, ascii input is skipped eight bytes at a time.
+ *  Malformed bytes are counted as one char each, the same as the lexer does.
+ */
+class Utf8Offsets {
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    private final ByteBuffer buf;
+    // Same bytes as buf, the byte order does not matter
+    private final ByteBuffer words;
+    // Built on first use, several threads may build it, but they all get the same table
+    private volatile Table table;
+
+    public Utf8Offsets (ByteBuffer buf, ByteBuffer words) {
+	this.buf = buf;
+	this.words = words;
+    }
+
+    /** Get the char offset of the given byte offset */
+    public int getCharOffset (int offset) {
+	Table t = table;
+	if (t == null)
+	    table = t = scan ();
+	return t.getCharOffset (offset);
+    }
+
+    private Table scan () {
+	Table t = new Table ();
+	int p = buf.position ();
+	int limit = buf.limit ();
+	int delta = 0;
+	while (p < limit) {
+	    if (limit - p >= 8 && (words.getLong (p) & HIGH_BITS) == 0) {
+		p += 8;
+	    } else if (buf.get (p) >= 0) {
+		p++;
+	    } else {
+		int value = ByteBufferLexer.decode (buf, p, limit);
+		if (value < 0) {
+		    p++;
+		} else if (value >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+		    // the surrogates are two bytes each
+		    t.add (p + 2, ++delta);
+		    t.add (p + 4, ++delta);
+		    p += 4;
+		} else {
+		    int length = ByteBufferLexer.getEncodedLength (value);
+		    p += length;
+		    delta += length - 1;
+		    t.add (p, delta);
+		}
+	    }
+	}
+	return t;
+    }
+
+    private static class Table {
+	// The byte offsets where the difference changes and how many more bytes than chars there are from there
+	private int[] starts = new int[16];
+	private int[] deltas = new int[16];
+	private int size;
+
+	public void add (int start, int delta) {
+	    if (size == starts.length) {
+		starts = Arrays.copyOf (starts, size * 2);
+		deltas = Arrays.copyOf (deltas, size * 2);
+	    }
+	    starts[size] = start;
+	    deltas[size++] = delta;
+	}
+
+	public int getCharOffset (int offset) {
+	    int low = 0;
+	    int high = size;
+	    // find the number of starts that are at or before offset
+	    while (low < high) {
+		int mid = (low + high) >>> 1;
+		if (starts[mid] <= offset)
+		    low = mid + 1;
+		else
+		    high = mid;
+	    }
+	    return low == 0 ? offset : offset - deltas[low - 1];
+	}
+    }
+}
@@ -0,0 +1,263 @@
+package org.khelekore.parjac.parser;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.khelekore.parjac.CompilerDiagnosticCollector;
+import org.khelekore.parjac.JavaGrammarHelper;
+import org.khelekore.parjac.lexer.Lexer;
+import org.khelekore.parjac.lexer.Token;
+import org.khelekore.parjac.lexer.TokenBuffer;
+import org.khelekore.parjac.tree.Block;
+import org.khelekore.parjac.tree.ConstructorBody;
+import org.khelekore.parjac.tree.ConstructorDeclaration;
+import org.khelekore.parjac.tree.MethodBody;
+import org.khelekore.parjac.tree.MethodDeclaration;
+import org.khelekore.parjac.tree.SyntaxTree;
+import org.khelekore.parjac.tree.TreeNode;
+
+/** Parse a file without the bodies of its methods and constructors.
+ *
+ *  A pass over the tokens brace matches the bodies of methods and constructors
+ *  in class bodies and the file is parsed with those bodies left empty.
+ *  The bodies are then parsed on their own, as independent tasks, and put
+ *  into the tree by calling finish. The tree is the same as from a normal parse.
+ *  If anything fails to parse the whole file is parsed as usual, so errors are
+ *  reported the same way.
+ */
+public class DeferredBodyParser {
+    private final Lexer lexer;
+    private final GoalParser parser;
+    private final CompilerDiagnosticCollector diagnostics;
+
+    private TokenBuffer tokens;
+    private final List<Body> bodies = new ArrayList<> ();
+    private SyntaxTree tree;
+
+    private enum Scope { CLASS_BODY, ENUM_CONSTANTS, METHOD_BODY, OTHER }
+
+    /** Create a new parser
+     * @param lexer a lexer that has not read any tokens yet
+     * @param parser the parser to use for the file and the bodies
+     * @param diagnostics where to report problems
+     */
+    public DeferredBodyParser (Lexer lexer, GoalParser parser,
+			       CompilerDiagnosticCollector diagnostics) {
+	this.lexer = lexer;
+	this.parser = parser;
+	this.diagnostics = diagnostics;
+    }
+
+    /** Parse the file with empty method and constructor bodies.
+     * @return the tree, or null if the file failed to parse
+     */
+    public SyntaxTree parse () {
+	boolean lexOk = readTokens ();
+	if (!lexOk || bodies.isEmpty ())
+	    return parseWhole ();
+
+	int[] skips = new int[bodies.size () * 2];
+	for (int i = 0; i < bodies.size (); i++) {
+	    Body b = bodies.get (i);
+	    skips[i * 2] = tokens.getEndPos (b.open);
+	    skips[i * 2 + 1] = tokens.getStartPos (b.close);
+	}
+	Lexer l = lexer.getSkippingLexer (getStart (), getEnd (), skips);
+	CompilerDiagnosticCollector skeletonDiagnostics = new CompilerDiagnosticCollector ();
+	SyntaxTree skeleton = parser.parse (l, "Goal", skeletonDiagnostics);
+	if (skeleton == null || skeletonDiagnostics.hasError () || !matchBodies (skeleton))
+	    return parseWhole ();
+	skeletonDiagnostics.getDiagnostics ().forEach (diagnostics::report);
+	tree = skeleton;
+	return tree;
+    }
+
+    /** Get the tree, the bodies are empty until finish has been called */
+    public SyntaxTree getTree () {
+	return tree;
+    }
+
+    /** Get the bodies that still have to be parsed, will be empty if the
+     *  whole file was parsed directly.
+     */
+    public List<Body> getBodies () {
+	return Collections.unmodifiableList (bodies);
+    }
+
+    /** Put the parsed bodies into the tree. All the bodies have to be parsed first.
+     * @return the full tree, or null if the file failed to parse
+     */
+    public SyntaxTree finish () {
+	if (tree == null || bodies.isEmpty ())
+	    return tree;
+	if (bodies.stream ().anyMatch (b -> b.tree == null || b.diagnostics.hasError ()))
+	    return parseWhole ();
+	for (Body b : bodies) {
+	    b.diagnostics.getDiagnostics ().forEach (diagnostics::report);
+	    b.setBody ();
+	}
+	bodies.clear ();
+	return tree;
+    }
+
+    private SyntaxTree parseWhole () {
+	bodies.clear ();
+	tree = parser.parse (lexer.getPartLexer (getStart (), getEnd ()), "Goal", diagnostics);
+	return tree;
+    }
+
+    private int getStart () {
+	return tokens.getStartPos (0);
+    }
+
+    private int getEnd () {
+	return tokens.getEndPos (tokens.size () - 1);
+    }
+
+    /** Read all the tokens and find the method and constructor bodies.
+     *  Only class bodies are looked at, everything in other blocks, like
+     *  field initializers and the bodies themselves, is only brace matched.
+     * @return false if the lexer found errors or the braces do not match
+     */
+    private boolean readTokens () {
+	Deque<Scope> scopes = new ArrayDeque<> ();
+	Token pendingType = null; // a 'class', 'interface' or 'enum' whose body we have not seen yet
+	int parens = 0;
+	boolean sawAssign = false;
+	boolean sawThrows = false;
+	int bodyStart = -1;
+	Token previous = null;
+	boolean ok = true;
+	while (lexer.hasMoreTokens ()) {
+	    Token t = lexer.nextNonWhitespaceToken ();
+	    int i = lexer.getTokens ().size () - 1;
+	    Scope scope = scopes.peek ();
+	    boolean inMember = scope != Scope.METHOD_BODY && scope != Scope.OTHER;
+	    switch (t) {
+	    case ERROR:
+		ok = false;
+		break;
+	    case CLASS:
+	    case INTERFACE:
+	    case ENUM:
+		if (inMember && parens == 0 && previous != Token.DOT)
+		    pendingType = t;
+		break;
+	    case THROWS:
+		if (inMember && parens == 0)
+		    sawThrows = true;
+		break;
+	    case EQUAL:
+		if (inMember && parens == 0)
+		    sawAssign = true;
+		break;
+	    case LEFT_PARENTHESIS:
+		if (inMember)
+		    parens++;
+		break;
+	    case RIGHT_PARENTHESIS:
+		if (inMember)
+		    parens--;
+		break;
+	    case SEMICOLON:
+		if (inMember && parens == 0) {
+		    if (scope == Scope.ENUM_CONSTANTS) {
+			scopes.pop ();
+			scopes.push (Scope.CLASS_BODY);
+		    }
+		    sawAssign = false;
+		    sawThrows = false;
+		}
+		break;
+	    case LEFT_CURLY:
+		if (!inMember || parens > 0) {
+		    scopes.push (Scope.OTHER);
+		} else if (pendingType != null) {
+		    scopes.push (pendingType == Token.ENUM ? Scope.ENUM_CONSTANTS : Scope.CLASS_BODY);
+		    pendingType = null;
+		} else if (scope == Scope.CLASS_BODY && !sawAssign &&
+			   (previous == Token.RIGHT_PARENTHESIS || sawThrows)) {
+		    scopes.push (Scope.METHOD_BODY);
+		    bodyStart = i;
+		} else {
+		    scopes.push (Scope.OTHER);
+		}
+		break;
+	    case RIGHT_CURLY:
+		if (scopes.isEmpty ()) {
+		    ok = false;
+		    break;
+		}
+		if (scopes.pop () == Scope.METHOD_BODY)
+		    bodies.add (new Body (bodyStart, i));
+		// a '}' of an initializer may be followed by more of the field
+		if (scopes.peek () != Scope.METHOD_BODY && scopes.peek () != Scope.OTHER && !sawAssign)
+		    sawThrows = false;
+		break;
+	    default:
+	    }
+	    previous = t;
+	}
+	tokens = lexer.getTokens ();
+	return ok && scopes.isEmpty () && parens == 0;
+    }
+
+    /** Find the declarations of the bodies in the tree.
+     * @return true if every body was found
+     */
+    private boolean matchBodies (SyntaxTree skeleton) {
+	Map<Integer, Body> starts = new HashMap<> ();
+	bodies.forEach (b -> starts.put (tokens.getParsePosition (b.open).getTokenStartPos (), b));
+	findDeclarations (skeleton.getCompilationUnit (), starts);
+	return bodies.stream ().allMatch (b -> b.declaration != null);
+    }
+
+    private void findDeclarations (TreeNode tn, Map<Integer, Body> starts) {
+	if (tn instanceof MethodDeclaration || tn instanceof ConstructorDeclaration) {
+	    for (TreeNode body : tn.getChildNodes ()) {
+		Body b = starts.get (body.getParsePosition ().getTokenStartPos ());
+		if (b != null)
+		    b.declaration = tn;
+	    }
+	}
+	tn.getChildNodes ().forEach (cn -> findDeclarations (cn, starts));
+    }
+
+    /** One method or constructor body that can be parsed on its own */
+    public class Body {
+	private final int open;  // token index of the '{'
+	private final int close; // token index of the '}'
+	private final CompilerDiagnosticCollector diagnostics = new CompilerDiagnosticCollector ();
+	private TreeNode declaration;
+	private SyntaxTree tree;
+
+	private Body (int open, int close) {
+	    this.open = open;
+	    this.close = close;
+	}
+
+	/** Parse this body, this may be called from any thread */
+	public void parse () {
+	    Lexer l = lexer.getPartLexer (tokens.getStartPos (open), tokens.getEndPos (close));
+	    String goal = declaration instanceof MethodDeclaration ?
+		JavaGrammarHelper.METHOD_BODY_GOAL : JavaGrammarHelper.CONSTRUCTOR_BODY_GOAL;
+	    tree = parser.parse (l, goal, diagnostics);
+	}
+
+	private void setBody () {
+	    if (declaration instanceof MethodDeclaration) {
+		MethodDeclaration md = (MethodDeclaration)declaration;
+		Block block = (Block)tree.getRoot ();
+		md.setBody (new MethodBody.BlockBody (block, md.getBody ().getParsePosition ()));
+	    } else {
+		ConstructorDeclaration cd = (ConstructorDeclaration)declaration;
+		cd.setBody ((ConstructorBody)tree.getRoot ());
+	    }
+	}
+    }
+}
@@ -0,0 +1,441 @@
+package org.khelekore.parjac.parser;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+import org.khelekore.parjac.CompilerDiagnosticCollector;
+import org.khelekore.parjac.JavaGrammarHelper;
+import org.khelekore.parjac.grammar.Rule;
+import org.khelekore.parjac.lexer.Lexer;
+import org.khelekore.parjac.lexer.Token;
+import org.khelekore.parjac.lexer.TokenBuffer;
+import org.khelekore.parjac.tree.SyntaxTree;
+import org.khelekore.parjac.tree.TreeNode;
+import org.khelekore.parjac.tree.ZOMEntry;
+
+/** A table driven parser that does not need the general Earley machinery.
+ *
+ *  The parser is a shift-reduce parser that follows the actions of a
+ *  DeterministicTable. When the table has a conflict the parser looks further
+ *  ahead, running every choice on copies of the parse stack, until only one
+ *  of them matches the input. If that does not settle it the class member it
+ *  is in is parsed by the fallback parser instead, with MemberGoal as goal.
+ *  If the input does not match the grammar, or there is a conflict outside of
+ *  any member, the whole input is parsed by the fallback parser, so errors are
+ *  reported the same way.
+ *
+ *  The tree is built with the same JavaTreeBuilder and in the same order as the
+ *  Earley parsers build it, so the trees are the same.
+ */
+public class DeterministicParser {
+    // Limits for the lookahead used on conflicts
+    private static final int MAX_LOOKAHEAD = 256;
+    private static final int MAX_STACKS = 1000;
+
+    private static final ParseFailure CONFLICT = new ParseFailure (true);
+    private static final ParseFailure FAILED = new ParseFailure (false);
+
+    private final DeterministicTable table;
+    private final Path path;
+    private final Lexer lexer;
+    private final JavaTreeBuilder treeBuilder;
+    private final CompilerDiagnosticCollector diagnostics;
+    private final String goal;
+    private final GoalParser fallback;
+    private final int goalRule;
+    private final int memberRule;
+
+    // The tokens, their values and their index in the token buffer
+    private TokenBuffer tokens;
+    private Token[] types = new Token[64];
+    private TreeNode[] values = new TreeNode[64];
+    private int[] indexes = new int[64];
+    private int count;
+    private int pos;
+
+    // The parse stack, the states and the token, rule or member for each state
+    private int[] states = new int[64];
+    private Object[] parts = new Object[64];
+    private int[] starts = new int[64];
+    private int sp;
+
+    // The members parsed by the fallback parser
+    private final List<Member> members = new ArrayList<> ();
+
+    /** Create a new parser
+     * @param lexer a lexer that has not read any tokens yet
+     * @param goal the rule to parse, it has to end with END_OF_INPUT
+     * @param fallback the parser to use for members with conflicts and for
+     *        input that does not match the grammar
+     */
+    public DeterministicParser (DeterministicTable table, Path path, Lexer lexer,
+				JavaTreeBuilder treeBuilder, CompilerDiagnosticCollector diagnostics,
+				String goal, GoalParser fallback) {
+	this.table = table;
+	this.path = path;
+	this.lexer = lexer;
+	this.treeBuilder = treeBuilder;
+	this.diagnostics = diagnostics;
+	this.goal = goal;
+	this.fallback = fallback;
+	goalRule = table.getRuleId (goal);
+	memberRule = table.getRuleId ("ClassBodyDeclaration");
+    }
+
+    public SyntaxTree parse () {
+	readTokens ();
+	int startState = table.getStartState (goal);
+	try {
+	    if (startState < 0)
+		throw FAILED;
+	    Derivation d = run (startState);
+	    CompilerDiagnosticCollector buildDiagnostics = new CompilerDiagnosticCollector ();
+	    Deque<TreeNode> parts = new ArrayDeque<> ();
+	    build (d, parts, buildDiagnostics);
+	    if (parts.size () > 1)
+		throw FAILED;
+	    members.forEach (m -> m.diagnostics.getDiagnostics ().forEach (diagnostics::report));
+	    buildDiagnostics.getDiagnostics ().forEach (diagnostics::report);
+	    TreeNode topNode = parts.poll ();
+	    if (topNode == null)
+		return null;
+	    return new SyntaxTree (path, topNode);
+	} catch (ParseFailure e) {
+	    members.clear ();
+	    return fallback.parse (lexer.getPartLexer (getStart (), getEnd ()), goal, diagnostics);
+	}
+    }
+
+    /** Get the number of members that were parsed by the fallback parser */
+    public int getMemberFallbacks () {
+	return members.size ();
+    }
+
+    private int getStart () {
+	return tokens.getStartPos (indexes[0]);
+    }
+
+    private int getEnd () {
+	return tokens.getEndPos (indexes[count - 1]);
+    }
+
+    private void readTokens () {
+	while (lexer.hasMoreTokens ()) {
+	    Token t = lexer.nextNonWhitespaceToken ();
+	    if (count == types.length) {
+		types = Arrays.copyOf (types, count * 2);
+		values = Arrays.copyOf (values, count * 2);
+		indexes = Arrays.copyOf (indexes, count * 2);
+	    }
+	    types[count] = t;
+	    values[count] = treeBuilder.getTokenValue (lexer, t);
+	    indexes[count] = lexer.getTokens ().size () - 1;
+	    count++;
+	}
+	tokens = lexer.getTokens ();
+    }
+
+    private int getLookahead (int position) {
+	return position < count ? types[position].ordinal () : DeterministicTable.NO_TOKEN;
+    }
+
+    private Derivation run (int startState) {
+	push (startState, null, 0);
+	while (true) {
+	    int action = table.getAction (states[sp - 1], getLookahead (pos));
+	    if (DeterministicTable.isConflict (action)) {
+		try {
+		    action = predict (action);
+		} catch (ParseFailure e) {
+		    if (e != CONFLICT)
+			throw e;
+		    parseMemberWithFallback ();
+		    continue;
+		}
+	    }
+	    if (action == DeterministicTable.ERROR)
+		throw FAILED;
+	    int target = DeterministicTable.getTarget (action);
+	    if (DeterministicTable.isShift (action)) {
+		push (target, values[pos], pos);
+		pos++;
+	    } else {
+		Derivation d = reduce (target);
+		if (table.getLhs (target) == goalRule)
+		    return d;
+		push (table.getGoto (states[sp - 1], table.getLhs (target)), d, d == null ? pos : d.start);
+	    }
+	}
+    }
+
+    private void push (int state, Object part, int start) {
+	if (sp == states.length) {
+	    states = Arrays.copyOf (states, sp * 2);
+	    parts = Arrays.copyOf (parts, sp * 2);
+	    starts = Arrays.copyOf (starts, sp * 2);
+	}
+	states[sp] = state;
+	parts[sp] = part;
+	starts[sp] = start;
+	sp++;
+    }
+
+    /** Pop the parts of the rule from the stack.
+     * @return the derivation of the rule, or null if it matched no tokens since
+     *         the Earley parsers skip over such rules and build nothing for them
+     */
+    private Derivation reduce (int rule) {
+	int first = sp - table.getRuleSize (rule);
+	int start = first < sp ? starts[first] : pos;
+	List<Object> children = new ArrayList<> (sp - first);
+	for (int i = first; i < sp; i++)
+	    if (parts[i] != null)
+		children.add (parts[i]);
+	Arrays.fill (parts, first, sp, null);
+	sp = first;
+	if (start == pos)
+	    return null;
+	return new Derivation (table.getRule (rule), start, children);
+    }
+
+    /** Replace the member we are in with one parsed by the fallback parser.
+     *  The member starts after the last state on the stack that can continue
+     *  with a member.
+     */
+    private void parseMemberWithFallback () {
+	int i = sp - 1;
+	while (i >= 0 && table.getGoto (states[i], memberRule) < 0)
+	    i--;
+	if (i < 0)
+	    throw FAILED;
+	int start = i + 1 < sp ? starts[i + 1] : pos;
+	int end = findMemberEnd (start);
+	if (end < 0)
+	    throw FAILED;
+	Lexer l = lexer.getPartLexer (tokens.getStartPos (indexes[start]), tokens.getEndPos (indexes[end]));
+	CompilerDiagnosticCollector d = new CompilerDiagnosticCollector ();
+	SyntaxTree tree = fallback.parse (l, JavaGrammarHelper.MEMBER_GOAL, d);
+	if (tree == null || d.hasError () || !(tree.getRoot () instanceof ZOMEntry))
+	    throw FAILED;
+	List<TreeNode> nodes = ((ZOMEntry)tree.getRoot ()).get ();
+	if (nodes.size () != 1)
+	    throw FAILED;
+	// members inside this one are parsed again
+	members.removeIf (m -> m.start >= start);
+	members.add (new Member (start, d));
+	Arrays.fill (parts, i + 1, sp, null);
+	sp = i + 1;
+	push (table.getGoto (states[i], memberRule), nodes.get (0), start);
+	pos = end + 1;
+    }
+
+    /** Find the last token of the member that starts at the given token
+     * @return the position of the last token or -1 if no end was found
+     */
+    private int findMemberEnd (int start) {
+	int braces = 0;
+	int parens = 0;
+	for (int i = start; i < count; i++) {
+	    switch (types[i]) {
+	    case LEFT_PARENTHESIS:
+		parens++;
+		break;
+	    case RIGHT_PARENTHESIS:
+		parens--;
+		break;
+	    case LEFT_CURLY:
+		braces++;
+		break;
+	    case RIGHT_CURLY:
+		if (--braces < 0)
+		    return -1;
+		if (braces == 0 && parens == 0 && i + 1 < count &&
+		    !ParallelFileParser.continuesField (types[i + 1]))
+		    return i;
+		break;
+	    case SEMICOLON:
+		if (braces == 0 && parens == 0)
+		    return i;
+		break;
+	    default:
+	    }
+	}
+	return -1;
+    }
+
+    /** Find the one choice of a conflict that matches the input.
+     *  Every choice is run on its own copies of the parse stack, one token at
+     *  a time, until only one of them is left. Since the copies start from the
+     *  real stack this is exact, the choice we find is the only one that can
+     *  give a valid parse.
+     * @return the action to take
+     * @throws ParseFailure CONFLICT if the choices can not be told apart,
+     *         FAILED if none of them matches
+     */
+    private int predict (int action) {
+	int lookahead = getLookahead (pos);
+	SimStack top = new SimStack (states[sp - 1], null, sp - 1);
+	List<Integer> choices = new ArrayList<> ();
+	List<Set<SimStack>> stacks = new ArrayList<> ();
+	for (int choice : table.getConflictActions (action)) {
+	    Set<SimStack> s = new HashSet<> ();
+	    perform (top, choice, lookahead, s, 0);
+	    addChoice (choices, stacks, choice, s);
+	}
+
+	for (int i = pos + 1; ; i++) {
+	    if (choices.size () == 1)
+		return choices.get (0);
+	    if (choices.isEmpty ())
+		throw FAILED;
+	    if (i > count || i - pos > MAX_LOOKAHEAD || stacks.stream ().distinct ().count () == 1)
+		throw CONFLICT;
+	    lookahead = getLookahead (i);
+	    List<Integer> nextChoices = new ArrayList<> ();
+	    List<Set<SimStack>> nextStacks = new ArrayList<> ();
+	    for (int j = 0; j < choices.size (); j++) {
+		Set<SimStack> s = new HashSet<> ();
+		for (SimStack ss : stacks.get (j))
+		    step (ss, lookahead, s, 0);
+		addChoice (nextChoices, nextStacks, choices.get (j), s);
+	    }
+	    choices = nextChoices;
+	    stacks = nextStacks;
+	}
+    }
+
+    private void addChoice (List<Integer> choices, List<Set<SimStack>> stacks,
+			    int choice, Set<SimStack> s) {
+	if (s.size () > MAX_STACKS)
+	    throw CONFLICT;
+	if (!s.isEmpty ()) {
+	    choices.add (choice);
+	    stacks.add (s);
+	}
+    }
+
+    /** Run the stack until it has shifted the lookahead, the resulting stacks are added to out */
+    private void step (SimStack s, int lookahead, Set<SimStack> out, int reduces) {
+	if (s == SimStack.ACCEPTED)
+	    return;
+	int action = table.getAction (s.state, lookahead);
+	if (DeterministicTable.isConflict (action)) {
+	    for (int choice : table.getConflictActions (action))
+		perform (s, choice, lookahead, out, reduces);
+	} else {
+	    perform (s, action, lookahead, out, reduces);
+	}
+    }
+
+    private void perform (SimStack s, int action, int lookahead, Set<SimStack> out, int reduces) {
+	if (action == DeterministicTable.ERROR)
+	    return;
+	int target = DeterministicTable.getTarget (action);
+	if (DeterministicTable.isShift (action)) {
+	    out.add (new SimStack (target, s, s.realDepth));
+	    return;
+	}
+	int lhs = table.getLhs (target);
+	if (lhs == goalRule) {
+	    out.add (SimStack.ACCEPTED);
+	    return;
+	}
+	if (reduces > MAX_STACKS)
+	    throw CONFLICT;
+	for (int i = table.getRuleSize (target); i > 0; i--)
+	    s = pop (s);
+	step (new SimStack (table.getGoto (s.state, lhs), s, s.realDepth), lookahead, out, reduces + 1);
+    }
+
+    private SimStack pop (SimStack s) {
+	if (s.previous != null)
+	    return s.previous;
+	int depth = s.realDepth;
+	return new SimStack (states[depth - 1], null, depth - 1);
+    }
+
+    /** Build the tree in the same order as the Earley parsers: the children
+     *  from right to left and then the rule itself.
+     */
+    private void build (Derivation d, Deque<TreeNode> parts, CompilerDiagnosticCollector diagnostics) {
+	List<Object> children = d.children;
+	for (int i = children.size () - 1; i >= 0; i--) {
+	    Object o = children.get (i);
+	    if (o instanceof Derivation)
+		build ((Derivation)o, parts, diagnostics);
+	    else
+		parts.push ((TreeNode)o);
+	}
+	treeBuilder.build (d.rule, parts, tokens.getParsePosition (indexes[d.start]), path, diagnostics);
+    }
+
+    private static class Derivation {
+	private final Rule rule;
+	private final int start;
+	private final List<Object> children;
+
+	public Derivation (Rule rule, int start, List<Object> children) {
+	    this.rule = rule;
+	    this.start = start;
+	    this.children = children;
+	}
+    }
+
+    private static class Member {
+	private final int start;
+	private final CompilerDiagnosticCollector diagnostics;
+
+	public Member (int start, CompilerDiagnosticCollector diagnostics) {
+	    this.start = start;
+	    this.diagnostics = diagnostics;
+	}
+    }
+
+    /** A copy of the parse stack, used when looking ahead. The states of the
+     *  parse stack below realDepth are shared, only the ones above are copied.
+     */
+    private static class SimStack {
+	private static final SimStack ACCEPTED = new SimStack (-1, null, 0);
+
+	private final int state;
+	private final SimStack previous;
+	private final int realDepth;
+	private final int hash;
+
+	public SimStack (int state, SimStack previous, int realDepth) {
+	    this.state = state;
+	    this.previous = previous;
+	    this.realDepth = realDepth;
+	    hash = (state * 31 + Objects.hashCode (previous)) * 31 + realDepth;
+	}
+
+	@Override public int hashCode () {
+	    return hash;
+	}
+
+	@Override public boolean equals (Object o) {
+	    if (o == this)
+		return true;
+	    if (!(o instanceof SimStack))
+		return false;
+	    SimStack s = (SimStack)o;
+	    return hash == s.hash && state == s.state && realDepth == s.realDepth &&
+		Objects.equals (previous, s.previous);
+	}
+    }
+
+    private static class ParseFailure extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	public ParseFailure (boolean conflict) {
+	    super (conflict ? "conflict" : "no match", null, false, false);
+	}
+    }
+}
@@ -0,0 +1,369 @@
+package org.khelekore.parjac.parser;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+import org.khelekore.parjac.grammar.Grammar;
+import org.khelekore.parjac.grammar.Rule;
+import org.khelekore.parjac.grammar.SimplePart;
+import org.khelekore.parjac.lexer.Token;
+
+/** Parse tables for the DeterministicParser, built from the same grammar as
+ *  the Earley parsers use.
+ *
+ *  The tables are the states of an LR(0) automaton with SLR(1) lookahead,
+ *  so left recursion is no problem. For each state and lookahead token there
+ *  is one action: shift, reduce or error. When the lookahead token is not
+ *  enough the action is a conflict that has the actions to choose from.
+ *  The goals of the grammar, the rules that are not used by any other rule,
+ *  get their own start states.
+ */
+public class DeterministicTable {
+    /** The lookahead to use when there are no more tokens */
+    public static final int NO_TOKEN = Token.values ().length;
+
+    /** Action: the input does not match */
+    public static final int ERROR = 0;
+    private static final int SHIFT = 1;
+    private static final int REDUCE = 2;
+    private static final int CONFLICT = 3;
+
+    private final List<String> names = new ArrayList<> ();
+    private final Map<String, Integer> ids = new HashMap<> ();
+    private final Rule[] rules;
+    private final int[] lhs;
+    private final int[][] ruleSymbols;
+    // the first item of each rule, items are rule start + dot position
+    private final int[] itemStarts;
+    private final List<List<Integer>> rulesOf = new ArrayList<> ();
+    private final List<BitSet> firsts = new ArrayList<> ();
+    private final List<BitSet> follows = new ArrayList<> ();
+    private final boolean[] nullable;
+
+    private final Map<Kernel, Integer> states = new HashMap<> ();
+    private final List<int[]> kernels = new ArrayList<> ();
+    private final List<int[]> actions = new ArrayList<> ();
+    private final List<int[]> gotos = new ArrayList<> ();
+    private final List<int[]> conflictActions = new ArrayList<> ();
+    private final Map<String, Integer> startStates = new HashMap<> ();
+    private int conflicts;
+
+    public DeterministicTable (Grammar grammar) {
+	List<Rule> rl = grammar.getRules ();
+	for (String name : grammar.getUniqueRuleNames ())
+	    getId (name);
+	rules = rl.toArray (new Rule[rl.size ()]);
+	lhs = new int[rules.length];
+	ruleSymbols = new int[rules.length][];
+	itemStarts = new int[rules.length];
+	for (int i = 0; i < names.size (); i++) {
+	    rulesOf.add (new ArrayList<> ());
+	    firsts.add (new BitSet ());
+	    follows.add (new BitSet ());
+	}
+	Set<Integer> used = new HashSet<> ();
+	int items = 0;
+	for (int r = 0; r < rules.length; r++) {
+	    Rule rule = rules[r];
+	    lhs[r] = ids.get (rule.getName ());
+	    rulesOf.get (lhs[r]).add (r);
+	    int[] symbols = new int[rule.size ()];
+	    for (int i = 0; i < symbols.length; i++) {
+		symbols[i] = getSymbol (rule.getRulePart (i));
+		if (!isToken (symbols[i]))
+		    used.add (symbols[i]);
+	    }
+	    ruleSymbols[r] = symbols;
+	    itemStarts[r] = items;
+	    items += symbols.length + 1;
+	}
+	nullable = new boolean[names.size ()];
+	buildFirsts ();
+	buildFollows ();
+	for (int i = 0; i < names.size (); i++) {
+	    if (!used.contains (i)) {
+		follows.get (i).set (NO_TOKEN);
+		int[] kernel = rulesOf.get (i).stream ().mapToInt (r -> itemStarts[r]).toArray ();
+		startStates.put (names.get (i), getState (kernel));
+	    }
+	}
+	for (int s = 0; s < kernels.size (); s++)
+	    buildState (s);
+    }
+
+    /** Get the number of states that have a conflict for at least one token */
+    public int getNumberOfConflicts () {
+	return conflicts;
+    }
+
+    public int getNumberOfStates () {
+	return kernels.size ();
+    }
+
+    /** Get the rule id of the given rule name, or -1 if there is no such rule */
+    public int getRuleId (String name) {
+	Integer id = ids.get (name);
+	return id == null ? -1 : id;
+    }
+
+    /** Get the start state of the given goal, or -1 if the rule is not a goal */
+    public int getStartState (String goal) {
+	Integer s = startStates.get (goal);
+	return s == null ? -1 : s;
+    }
+
+    int getAction (int state, int lookahead) {
+	return actions.get (state)[lookahead];
+    }
+
+    /** Get the state to go to after a rule has been reduced, or -1 */
+    int getGoto (int state, int ruleId) {
+	return gotos.get (state)[ruleId];
+    }
+
+    static boolean isShift (int action) {
+	return (action & 3) == SHIFT;
+    }
+
+    static boolean isReduce (int action) {
+	return (action & 3) == REDUCE;
+    }
+
+    static boolean isConflict (int action) {
+	return (action & 3) == CONFLICT;
+    }
+
+    /** Get the state to shift to, the rule to reduce or the conflict number */
+    static int getTarget (int action) {
+	return action >>> 2;
+    }
+
+    /** Get the actions to choose from for a conflict action */
+    int[] getConflictActions (int action) {
+	return conflictActions.get (getTarget (action));
+    }
+
+    Rule getRule (int rule) {
+	return rules[rule];
+    }
+
+    int getRuleSize (int rule) {
+	return ruleSymbols[rule].length;
+    }
+
+    int getLhs (int rule) {
+	return lhs[rule];
+    }
+
+    String getName (int ruleId) {
+	return names.get (ruleId);
+    }
+
+    private int getId (String name) {
+	Integer id = ids.get (name);
+	if (id == null) {
+	    id = names.size ();
+	    ids.put (name, id);
+	    names.add (name);
+	}
+	return id;
+    }
+
+    /** Get the symbol of a rule part, rules are non negative, tokens are negative */
+    private int getSymbol (SimplePart sp) {
+	if (sp.isTokenPart ())
+	    return -1 - ((Token)sp.getId ()).ordinal ();
+	return ids.get ((String)sp.getId ());
+    }
+
+    private static boolean isToken (int symbol) {
+	return symbol < 0;
+    }
+
+    private static int getTokenIndex (int symbol) {
+	return -1 - symbol;
+    }
+
+    private void buildFirsts () {
+	boolean changed = true;
+	while (changed) {
+	    changed = false;
+	    for (int r = 0; r < rules.length; r++) {
+		BitSet target = firsts.get (lhs[r]);
+		int before = target.cardinality ();
+		boolean allNullable = true;
+		for (int symbol : ruleSymbols[r]) {
+		    addFirsts (symbol, target);
+		    if (isToken (symbol) || !nullable[symbol]) {
+			allNullable = false;
+			break;
+		    }
+		}
+		if (allNullable && !nullable[lhs[r]]) {
+		    nullable[lhs[r]] = true;
+		    changed = true;
+		}
+		changed |= target.cardinality () != before;
+	    }
+	}
+    }
+
+    private void addFirsts (int symbol, BitSet target) {
+	if (isToken (symbol))
+	    target.set (getTokenIndex (symbol));
+	else
+	    target.or (firsts.get (symbol));
+    }
+
+    private void buildFollows () {
+	boolean changed = true;
+	while (changed) {
+	    changed = false;
+	    for (int r = 0; r < rules.length; r++) {
+		int[] symbols = ruleSymbols[r];
+		for (int i = 0; i < symbols.length; i++) {
+		    if (isToken (symbols[i]))
+			continue;
+		    BitSet target = follows.get (symbols[i]);
+		    int before = target.cardinality ();
+		    boolean restNullable = true;
+		    for (int j = i + 1; j < symbols.length && restNullable; j++) {
+			addFirsts (symbols[j], target);
+			restNullable = !isToken (symbols[j]) && nullable[symbols[j]];
+		    }
+		    if (restNullable)
+			target.or (follows.get (lhs[r]));
+		    changed |= target.cardinality () != before;
+		}
+	    }
+	}
+    }
+
+    private int getState (int[] kernel) {
+	Arrays.sort (kernel);
+	Kernel k = new Kernel (kernel);
+	Integer s = states.get (k);
+	if (s == null) {
+	    s = kernels.size ();
+	    states.put (k, s);
+	    kernels.add (kernel);
+	}
+	return s;
+    }
+
+    private int getItemRule (int item) {
+	int r = Arrays.binarySearch (itemStarts, item);
+	return r >= 0 ? r : -r - 2;
+    }
+
+    private void buildState (int state) {
+	List<Integer> items = closure (kernels.get (state));
+	Map<Integer, List<Integer>> moves = new HashMap<> ();
+	List<Integer> symbolOrder = new ArrayList<> ();
+	List<Integer> reduces = new ArrayList<> ();
+	for (int item : items) {
+	    int r = getItemRule (item);
+	    int dot = item - itemStarts[r];
+	    int[] symbols = ruleSymbols[r];
+	    if (dot == symbols.length) {
+		reduces.add (r);
+	    } else {
+		List<Integer> l = moves.get (symbols[dot]);
+		if (l == null) {
+		    moves.put (symbols[dot], l = new ArrayList<> ());
+		    symbolOrder.add (symbols[dot]);
+		}
+		l.add (item + 1);
+	    }
+	}
+
+	int[] stateActions = new int[NO_TOKEN + 1];
+	int[] stateGotos = new int[names.size ()];
+	Arrays.fill (stateGotos, -1);
+	for (int symbol : symbolOrder) {
+	    int target = getState (moves.get (symbol).stream ().mapToInt (i -> i).toArray ());
+	    if (isToken (symbol))
+		stateActions[getTokenIndex (symbol)] = (target << 2) | SHIFT;
+	    else
+		stateGotos[symbol] = target;
+	}
+	boolean conflict = false;
+	for (int r : reduces) {
+	    BitSet follow = follows.get (lhs[r]);
+	    int reduce = (r << 2) | REDUCE;
+	    for (int t = follow.nextSetBit (0); t >= 0; t = follow.nextSetBit (t + 1)) {
+		if (stateActions[t] == ERROR) {
+		    stateActions[t] = reduce;
+		} else {
+		    stateActions[t] = addConflict (stateActions[t], reduce);
+		    conflict = true;
+		}
+	    }
+	}
+	if (conflict)
+	    conflicts++;
+	actions.add (stateActions);
+	gotos.add (stateGotos);
+    }
+
+    private int addConflict (int current, int action) {
+	int[] choices;
+	if (isConflict (current)) {
+	    int[] old = getConflictActions (current);
+	    choices = Arrays.copyOf (old, old.length + 1);
+	} else {
+	    choices = new int[] { current, 0 };
+	}
+	choices[choices.length - 1] = action;
+	conflictActions.add (choices);
+	return ((conflictActions.size () - 1) << 2) | CONFLICT;
+    }
+
+    private List<Integer> closure (int[] kernel) {
+	List<Integer> items = new ArrayList<> ();
+	for (int item : kernel)
+	    items.add (item);
+	boolean[] added = new boolean[names.size ()];
+	Queue<Integer> todo = new ArrayDeque<> (items);
+	while (!todo.isEmpty ()) {
+	    int item = todo.remove ();
+	    int r = getItemRule (item);
+	    int dot = item - itemStarts[r];
+	    int[] symbols = ruleSymbols[r];
+	    if (dot < symbols.length && !isToken (symbols[dot]) && !added[symbols[dot]]) {
+		added[symbols[dot]] = true;
+		for (int sr : rulesOf.get (symbols[dot])) {
+		    items.add (itemStarts[sr]);
+		    todo.add (itemStarts[sr]);
+		}
+	    }
+	}
+	return items;
+    }
+
+    private static class Kernel {
+	private final int[] items;
+	private final int hash;
+
+	public Kernel (int[] items) {
+	    this.items = items;
+	    hash = Arrays.hashCode (items);
+	}
+
+	@Override public int hashCode () {
+	    return hash;
+	}
+
+	@Override public boolean equals (Object o) {
+	    return o instanceof Kernel && Arrays.equals (items, ((Kernel)o).items);
+	}
+    }
+}
@@ -3,10 +3,12 @@ package org.khelekore.parjac.parser;
 import java.nio.file.Path;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -14,13 +16,13 @@ import java.util.stream.Collectors;
 
 import org.khelekore.parjac.CompilerDiagnosticCollector;
 import org.khelekore.parjac.SourceDiagnostics;
+import org.khelekore.parjac.grammar.CompiledGrammar;
 import org.khelekore.parjac.grammar.Grammar;
 import org.khelekore.parjac.grammar.Rule;
-import org.khelekore.parjac.grammar.SimplePart;
-import org.khelekore.parjac.grammar.TokenPart;
 import org.khelekore.parjac.lexer.Lexer;
 import org.khelekore.parjac.lexer.ParsePosition;
 import org.khelekore.parjac.lexer.Token;
+import org.khelekore.parjac.lexer.TokenBuffer;
 import org.khelekore.parjac.tree.BooleanLiteral;
 import org.khelekore.parjac.tree.CharLiteral;
 import org.khelekore.parjac.tree.DoubleLiteral;
@@ -36,11 +38,19 @@ import org.khelekore.parjac.tree.TreeNode;
 public class EarleyParser {
     // The grammar we are using
     private final Grammar grammar;
+    // The grammar as dense symbols
+    private final CompiledGrammar cg;
+    // The rule we parse, normally "Goal"
+    private final String goal;
+    private final int goalSymbol;
     // The file we are parsing
     private final Path path;
     // The lexer we are using to get tokens
     private final Lexer lexer;
+    private final TokenBuffer tokens;
     private final PredictCache predictCache;
+    // Reused for predict cache lookups
+    private final RuleSet predictKey;
     // Compiler output
     private final CompilerDiagnosticCollector diagnostics;
     private final boolean debug;
@@ -48,6 +58,17 @@ public class EarleyParser {
     // The state table
     private final List<EarleyState> states = new ArrayList<> ();
     private int attemptedRecoveries;
+    // Bumped when states are removed, since that invalidates memoized leo items
+    private int leoGeneration;
+    // Keep all states so that the sets can be reused after an edit
+    private boolean keepStates;
+    // The number of sets that reparse took from the previous parse
+    private int reused;
+    // Set when reparse has moved the sets of the previous parse into this one
+    private boolean changedPrevious;
+    // The number of states in the finished sets, and the largest that number has been
+    private int retainedStates;
+    private int peakRetainedStates;
 
     // The tree builder
     private final JavaTreeBuilder treeBuilder;
@@ -56,10 +77,25 @@ public class EarleyParser {
 			 PredictCache predictCache, JavaTreeBuilder treeBuilder,
 			 CompilerDiagnosticCollector diagnostics,
 			 boolean debug) {
+	this (grammar, path, lexer, predictCache, treeBuilder, diagnostics, debug, "Goal");
+    }
+
+    /** Create a parser that parses the given goal instead of "Goal".
+     *  The rules of the goal have to end with END_OF_INPUT.
+     */
+    public EarleyParser (Grammar grammar, Path path, Lexer lexer,
+			 PredictCache predictCache, JavaTreeBuilder treeBuilder,
+			 CompilerDiagnosticCollector diagnostics,
+			 boolean debug, String goal) {
 	this.grammar = grammar;
+	this.cg = grammar.getCompiledGrammar ();
+	this.goal = goal;
+	this.goalSymbol = cg.getRuleSymbol (goal);
 	this.path = path;
 	this.lexer = lexer;
+	this.tokens = lexer.getTokens ();
 	this.predictCache = predictCache;
+	this.predictKey = predictCache.createRuleSet ();
 	this.diagnostics = diagnostics;
 	this.debug = debug;
 	this.treeBuilder = treeBuilder;
@@ -74,13 +110,69 @@ public class EarleyParser {
     }
 
     public SyntaxTree parse () {
-	Rule goalRule = grammar.getRules ("Goal").getRules ().get (0);
-	int currentPosition = 0;
-	EarleyState es = new EarleyState (null);
-	es.addState (new State (goalRule, 0, currentPosition));
-	if (grammar.getRules ("Goal").canBeEmpty ())
-	    es.addState (new State (goalRule, 1, currentPosition));
+	EarleyState es = new EarleyState (cg, null);
+	for (Rule goalRule : grammar.getRules (goal).getRules ())
+	    es.addState (new State (goalRule, 0, 0));
+	es.setKernel ();
+	states.add (es);
+	return parse (0, null);
+    }
+
+    /** Do not clear any states, so that the sets can be given to reparse after an edit.
+     *  Error recovery is left to normal parses, a parse that keeps its states
+     *  stops at the first token that does not fit and returns null.
+     */
+    void keepStates () {
+	keepStates = true;
+    }
+
+    /** Get the earley sets of this parse, one for each token and one for the end */
+    List<EarleyState> getStates () {
+	return states;
+    }
+
+    /** Parse input that is an edited version of the input of a previous parse.
+     *  The lexer has to be for the whole of the new input.
+     *
+     *  The sets before the first changed token are reused as they are, parsing
+     *  restarts from the kernel of the set of the first changed token. Once a set
+     *  is the same as the matching old set and none of its states started at or
+     *  after the first changed token, the rest of the parse will be the same as
+     *  the old one. The rest of the old sets are then moved over instead of being
+     *  parsed.
+     * @param previous the sets of a parse that kept its states, they can not be
+     *        used after this if hasChangedPrevious is true, even if the parse failed
+     * @param firstChanged the index of the first token that is not the same as before
+     * @param firstUnchanged the index, in the old tokens, of the first token of the
+     *        unchanged end
+     * @param delta the number of tokens that were added, negative if tokens were removed
+     */
+    SyntaxTree reparse (List<EarleyState> previous, int firstChanged, int firstUnchanged, int delta) {
+	keepStates = true;
+	for (int i = 0; i < firstChanged; i++) {
+	    lexer.nextNonWhitespaceToken ();
+	    states.add (previous.get (i));
+	}
+	EarleyState old = previous.get (firstChanged);
+	EarleyState es = new EarleyState (cg, old.getTokenValue ());
+	es.addStates (old.getKernel ());
+	es.setKernel ();
 	states.add (es);
+	reused = firstChanged;
+	return parse (firstChanged, new Reuse (previous, firstChanged, firstUnchanged, delta));
+    }
+
+    /** Get the number of sets that were taken from the previous parse by reparse */
+    int getReusedSets () {
+	return reused;
+    }
+
+    /** Check if reparse has moved states of the previous sets to new positions */
+    boolean hasChangedPrevious () {
+	return changedPrevious;
+    }
+
+    private SyntaxTree parse (int currentPosition, Reuse reuse) {
 	Token nextToken = Token.END_OF_INPUT;
 	TreeNode currentTokenValue = null;
 	while (lexer.hasMoreTokens ()) {
@@ -92,6 +184,8 @@ public class EarleyParser {
 		handleToken (currentPosition, nextToken, currentTokenValue);
 		currentPosition++;
 		if (states.size () <= currentPosition) {
+		    if (keepStates)
+			return null;
 		    addPossibleNextTokens (currentPosition - 1);
 		    attemptedRecoveries++;
 		    recovery = true;
@@ -103,6 +197,10 @@ public class EarleyParser {
 		    return null;
 		}
 	    } while (recovery);
+	    if (reuse != null && reuse.isConverged (currentPosition - 1)) {
+		currentPosition = reuse.moveRest (currentPosition, currentTokenValue);
+		break;
+	    }
 	}
 
 	EarleyState finishingStates = states.get (currentPosition);
@@ -141,16 +239,20 @@ public class EarleyParser {
 		System.err.println ("nextToken: " + nextToken);
 	}
 	EarleyState current = states.get (currentPosition);
-	current.setParsePosition (lexer.getParsePosition ());
+	current.setTokenIndex (tokens.size () - 1);
 	if (debug)
 	    System.err.println (currentPosition + ": start current: " + current);
 	complete (current);
-	predict (current);
+	predict (current, currentPosition, nextToken);
 	EarleyState sms = scan (current, currentPosition, nextToken, currentTokenValue);
 	if (debug)
 	    System.err.println (currentPosition + ": final current: " + current);
-	if (sms != null)
+	retainedStates += current.getStates ().size ();
+	peakRetainedStates = Math.max (peakRetainedStates, retainedStates);
+	if (sms != null) {
+	    sms.setKernel ();
 	    states.add (sms);
+	}
     }
 
     private void complete (EarleyState current) {
@@ -168,19 +270,33 @@ public class EarleyParser {
 
     private void complete (State completed, Map<State, State> seen,
 			   List<State> allCompleted, Deque<State> multiComplete) {
-	EarleyState originStates = states.get (completed.getStartPos ());
-	for (State s : originStates.getStates ()) {
-	    if (!s.dotIsLast () && s.getPartAfterDot ().getId ().equals (completed.getRule ().getName ())) {
-		complete (completed, seen, allCompleted, multiComplete, s.advance (completed));
+	int origin = completed.getStartPos ();
+	EarleyState originStates = states.get (origin);
+	int symbol = cg.getRuleSymbol (completed.getRule ().getId ());
+	if (origin < states.size () - 1) {
+	    LeoItem li = getLeoItem (origin, symbol);
+	    if (li != null && li.isChain ()) {
+		complete (completed, seen, allCompleted, multiComplete, li.complete (completed));
+		if (cg.isClearable (completed.getRule ().getId ()))
+		    clearStates (completed);
+		return;
 	    }
 	}
+	boolean advanced = false;
+	for (State s : originStates.getStatesWithNext (symbol)) {
+	    complete (completed, seen, allCompleted, multiComplete, s.advance (completed));
+	    advanced = true;
+	}
 	ListRuleHolder lrh = originStates.getListRuleHolder ();
 	if (lrh != null) {
-	    for (Iterator<Rule> i = lrh.getRulesWithRuleNext (completed.getRule ()); i.hasNext (); ) {
-		State previousState = new State (i.next (), 0, completed.getStartPos ());
+	    for (Rule r : lrh.getRulesWithNext (symbol)) {
+		State previousState = new State (r, 0, completed.getStartPos ());
 		complete (completed, seen, allCompleted, multiComplete, previousState.advance (completed));
+		advanced = true;
 	    }
 	}
+	if (advanced && cg.isClearable (completed.getRule ().getId ()))
+	    clearStates (completed);
     }
 
     private void complete (State completed, Map<State, State> seen,
@@ -194,66 +310,168 @@ public class EarleyParser {
 	} else {
 	    alreadySeen.addCompleted (completed);
 	}
+    }
 
-	if (grammar.isClearableRule (completed.getRule ())) {
-	    clearStates (completed);
+    /** Find the deterministic reduction path for the symbol in the given, finished, set.
+     *  @return the memoized path or null if completing symbol is not deterministic
+     */
+    private LeoItem getLeoItem (int setPos, int symbol) {
+	EarleyState es = states.get (setPos);
+	LeoItem li = es.getLeoItem (symbol, leoGeneration);
+	if (li == null) {
+	    es.setLeoItem (symbol, LeoItem.NONE, leoGeneration); // guard against unit rule cycles
+	    li = findLeoItem (setPos, es, symbol);
+	    es.setLeoItem (symbol, li, leoGeneration);
 	}
+	return li == LeoItem.NONE ? null : li;
     }
 
+    private LeoItem findLeoItem (int setPos, EarleyState es, int symbol) {
+	// The only state with symbol after dot may be a predicted one
+	List<State> ls = es.getStatesWithNext (symbol);
+	ListRuleHolder lrh = es.getListRuleHolder ();
+	Collection<Rule> predicted = lrh == null ? Collections.emptyList () : lrh.getRulesWithNext (symbol);
+	if (ls.size () + predicted.size () != 1)
+	    return LeoItem.NONE;
+	State penultimate = ls.isEmpty () ? new State (predicted.iterator ().next (), 0, setPos) : ls.get (0);
+	Rule r = penultimate.getRule ();
+	if (penultimate.getDotPos () + 1 != r.size ())
+	    return LeoItem.NONE;
+	LeoItem next = null;
+	// Completing a clearable rule has to be done by complete so it can clear states
+	if (!cg.isClearable (r.getId ()))
+	    next = getLeoItem (penultimate.getStartPos (), cg.getRuleSymbol (r.getId ()));
+	return new LeoItem (penultimate, next);
+    }
+
+    /** Remove the states that are not part of the given completed state
+     *  from the sets that it spans. The current set is still being completed,
+     *  it is left for a later clearing to handle.
+     */
     private void clearStates (State tc) {
+	if (keepStates)
+	    return;
 	Deque<State> toVisit = new ArrayDeque<> ();
 	toVisit.add (tc);
 
 	// States in current EarleySet to keep, may be many due to completion
 	Set<State> toKeep = new HashSet<> ();
-	int tokenPos = states.size () - 1; // current pos
+	int current = states.size () - 1;
+	int tokenPos = current;
 	while (!toVisit.isEmpty ()) {
-	    EarleyState es = states.get (tokenPos);
 	    State s = toVisit.pop ();
-	    if (!es.hasBeenCleared ())
-		toKeep.add (s);
+	    toKeep.add (s);
 	    State previous = s.getPrevious ();
 	    if (previous != null) {
 		toVisit.push (previous);
-		if (previous.getPartAfterDot () instanceof TokenPart) {
-		    if (!es.hasBeenCleared ()) {
-			es.getStates ().retainAll (toKeep);
-			toKeep.clear ();
-			es.setCleared ();
-		    }
+		if (cg.isToken (getSymbolAfterDot (previous))) {
+		    retain (tokenPos, current, toKeep);
 		    tokenPos--;
 		}
+		List<State> completed = s.getCompleted ();
+		if (completed != null) {
+		    for (State c : completed) {
+			if (cg.isClearable (c.getRule ().getId ())) {
+			    // c has cleared the sets it spans, except the one it ended in
+			    if (tokenPos != c.getStartPos ()) {
+				addLastStates (c, toKeep);
+				retain (tokenPos, current, toKeep);
+				tokenPos = c.getStartPos ();
+			    }
+			} else {
+			    toVisit.push (c);
+			}
+		    }
+		}
+	    }
+	}
+    }
+
+    private void retain (int tokenPos, int current, Set<State> toKeep) {
+	EarleyState es = states.get (tokenPos);
+	if (tokenPos < current && !es.hasBeenCleared ()) {
+	    int before = es.getStates ().size ();
+	    es.retainAll (toKeep);
+	    leoGeneration++;
+	    es.setCleared ();
+	    retainedStates -= before - es.getStates ().size ();
+	}
+	toKeep.clear ();
+    }
+
+    /** Add the states of the completed state that are in the set it ended in */
+    private void addLastStates (State c, Set<State> toKeep) {
+	Deque<State> toVisit = new ArrayDeque<> ();
+	toVisit.push (c);
+	while (!toVisit.isEmpty ()) {
+	    State s = toVisit.pop ();
+	    toKeep.add (s);
+	    State previous = s.getPrevious ();
+	    if (previous != null && !cg.isToken (getSymbolAfterDot (previous))) {
 		List<State> completed = s.getCompleted ();
 		if (completed != null)
-		    for (State c : completed)
-			toVisit.push (c);
+		    completed.forEach (toVisit::push);
+		else // skipped a nullable part
+		    toVisit.push (previous);
 	    }
 	}
     }
 
-    private void predict (EarleyState current) {
-	Set<String> rules = new HashSet<> ();
+    /** Get the largest number of states that the earley sets have held during the parse.
+     *  Predicted states are shared and not counted.
+     */
+    public int getPeakRetainedStates () {
+	return peakRetainedStates;
+    }
+
+    /** Predict the rules that can start with the next token, or all of them if next is null */
+    private void predict (EarleyState current, int currentPosition, Token next) {
+	if (cg.hasNullable ())
+	    skipNullable (current);
+	RuleSet rules = predictKey;
+	rules.clear ();
 	for (State s : current.getStates ()) {
 	    if (!s.dotIsLast ()) {
-		SimplePart sp = s.getPartAfterDot ();
-		if (sp.isRulePart ())
-		    rules.add ((String)sp.getId ());
+		int symbol = getSymbolAfterDot (s);
+		if (!cg.isToken (symbol))
+		    rules.set (symbol);
 	    }
 	}
-	current.setPredictedStates (predictCache.getPredictedRules (rules));
+	ListRuleHolder lrh = predictCache.getPredictedRules (rules, next);
+	current.setPredictedStates (lrh);
+	for (Rule r : lrh.getNullableStartRules ()) {
+	    int prefix = cg.getNullablePrefix (r.getId ());
+	    for (int dotPos = 1; dotPos <= prefix; dotPos++)
+		current.addState (new State (r, dotPos, currentPosition));
+	}
+    }
+
+    /** Move the dot over nullable parts directly, as done by Aycock and Horspool.
+     *  Empty rules are never completed, so the nullable part does not give any tree node.
+     */
+    private void skipNullable (EarleyState current) {
+	Deque<State> toSkip = new ArrayDeque<> ();
+	for (State s : current.getStates ())
+	    if (!s.dotIsLast () && cg.isNullable (getSymbolAfterDot (s)))
+		toSkip.add (s);
+	while (!toSkip.isEmpty ()) {
+	    State s = toSkip.pop ().advance (null);
+	    current.addState (s);
+	    if (!s.dotIsLast () && cg.isNullable (getSymbolAfterDot (s)))
+		toSkip.add (s);
+	}
     }
 
     private EarleyState scan (EarleyState current, int currentPosition,
 			      Token nextToken, TreeNode currentTokenValue) {
-	EarleyState ret = new EarleyState (currentTokenValue);
-	for (State s : current.getStates ()) {
-	    if (!s.dotIsLast () && s.getPartAfterDot ().getId ().equals (nextToken))
-		ret.addState (s.advance (null));
-	}
+	EarleyState ret = new EarleyState (cg, currentTokenValue);
+	int symbol = CompiledGrammar.getSymbol (nextToken);
+	for (State s : current.getStatesWithNext (symbol))
+	    ret.addState (s.advance (null));
 	ListRuleHolder lrh = current.getListRuleHolder ();
 	if (lrh != null) {
-	    for (Iterator<Rule> i = lrh.getRulesWithTokenNext (nextToken); i.hasNext (); ) {
-		State s = new State (i.next (), 0, currentPosition);
+	    for (Rule r : lrh.getRulesWithNext (symbol)) {
+		State s = new State (r, 0, currentPosition);
 		current.addState (s);
 		ret.addState (s.advance (null));
 	    }
@@ -266,6 +484,8 @@ public class EarleyParser {
     private void addPossibleNextTokens (int currentPosition) {
 	EarleyState es = states.get (states.size () - 1);
 	EarleyState current = states.get (currentPosition);
+	// predictions were filtered on the token that failed, we want all of them
+	predict (current, currentPosition, null);
 	EarleyState next = null;
 	for (Token t : es.getPossibleNextToken ()) {
 	    EarleyState sms = scan (current, currentPosition, t, new ErrorTreeNode (lexer.getParsePosition ()));
@@ -278,10 +498,17 @@ public class EarleyParser {
 		}
 	    }
 	}
+	if (next != null)
+	    next.setKernel ();
     }
 
     private boolean isEndState (State s) {
-	return s.getStartPos () == 0 && s.dotIsLast () && s.getRule ().getName ().equals ("Goal");
+	return s.getStartPos () == 0 && s.dotIsLast () &&
+	    cg.getRuleSymbol (s.getRule ().getId ()) == goalSymbol;
+    }
+
+    private int getSymbolAfterDot (State s) {
+	return cg.getPart (s.getRule ().getId (), s.getDotPos ());
     }
 
     private SyntaxTree buildTree (State s) {
@@ -309,16 +536,18 @@ public class EarleyParser {
 	    State previous = s.getPrevious ();
 	    EarleyState es = states.get (tokenPos);
 	    if (previous == null) {
-		treeBuilder.build (s, parts, es.getParsePosition (), path, diagnostics);
+		treeBuilder.build (s, parts, tokens.getParsePosition (es.getTokenIndex ()), path, diagnostics);
 		continue;
 	    } else {
 		toVisit.push (previous);
-		if (previous.getPartAfterDot () instanceof TokenPart) {
+		int symbol = getSymbolAfterDot (previous);
+		if (cg.isToken (symbol)) {
 		    TreeNode tn = es.getTokenValue ();
 		    if (tn instanceof ErrorTreeNode) {
+			Token missing = cg.getToken (symbol);
 			errors.push (SourceDiagnostics.error (path, tn.getParsePosition (),
-							      "Missing: %s", previous.getPartAfterDot ()));
-			tn = getErrorNode (tn.getParsePosition (), (Token)previous.getPartAfterDot ().getId ());
+							      "Missing: %s", missing));
+			tn = getErrorNode (tn.getParsePosition (), missing);
 		    }
 		    if (tn != null)
 			parts.push (tn);
@@ -332,7 +561,7 @@ public class EarleyParser {
 	}
     }
 
-    private TreeNode getErrorNode (ParsePosition pos, Token token) {
+    static TreeNode getErrorNode (ParsePosition pos, Token token) {
 	switch (token) {
 	case INT_LITERAL:
 	    return new IntLiteral (1, pos);
@@ -359,6 +588,181 @@ public class EarleyParser {
 	}
     }
 
+    /** Keeps track of how the sets of a reparse match the sets of the previous parse.
+     *  Positions in the old sets, from firstUnchanged, are delta less than in the new sets.
+     */
+    private class Reuse {
+	private final List<EarleyState> previous;
+	private final int firstChanged;
+	private final int firstUnchanged;
+	private final int delta;
+	// The old position of the last set that was parsed again
+	private int convergedAt;
+	// The states to use for old states that start before the converged set
+	private final Map<State, State> moved = new IdentityHashMap<> ();
+
+	public Reuse (List<EarleyState> previous, int firstChanged, int firstUnchanged, int delta) {
+	    this.previous = previous;
+	    this.firstChanged = firstChanged;
+	    this.firstUnchanged = firstUnchanged;
+	    this.delta = delta;
+	}
+
+	/** Check if the given, processed, set is the same as the old one.
+	 *  Convergence also requires that no state in the set starts inside the
+	 *  edited range, that is at or after firstChanged, since such states started
+	 *  in sets that were parsed again and can not be matched to old states.
+	 */
+	public boolean isConverged (int pos) {
+	    if (pos < firstUnchanged + delta)
+		return false;
+	    EarleyState current = states.get (pos);
+	    EarleyState old = previous.get (pos - delta);
+	    if (current.getStates ().size () != old.getStates ().size ())
+		return false;
+	    for (State s : old.getStates ()) {
+		int origin = getNewPosition (s.getStartPos ());
+		if (origin < 0 || current.getState (getKey (s, origin)) == null)
+		    return false;
+	    }
+	    for (State s : current.getStates ()) {
+		int origin = s.getStartPos ();
+		if (origin >= firstChanged && origin < pos)
+		    return false;
+	    }
+	    return true;
+	}
+
+	/** Get a state that is equal to the given one, but with another start position */
+	private State getKey (State s, int origin) {
+	    if (s.getPrevious () == null)
+		return new State (s.getRule (), s.getDotPos (), origin);
+	    return new StateWithPrevious (s.getRule (), s.getDotPos (), origin, null, null);
+	}
+
+	private int getNewPosition (int oldPosition) {
+	    if (oldPosition < firstChanged)
+		return oldPosition;
+	    if (oldPosition >= firstUnchanged)
+		return oldPosition + delta;
+	    return -1;
+	}
+
+	/** Replace the sets after the converged one with the old sets.
+	 *  The old sets get the new token values and their states are moved to the
+	 *  new positions. States that start before the converged set are replaced by
+	 *  copies that use the states of the new parse.
+	 * @param currentPosition the position of the set after the converged one
+	 * @param currentTokenValue the value of the last read token
+	 * @return the position of the last set
+	 */
+	public int moveRest (int currentPosition, TreeNode currentTokenValue) {
+	    changedPrevious = true;
+	    convergedAt = currentPosition - 1 - delta;
+	    states.remove (currentPosition);
+	    List<TreeNode> values = new ArrayList<> ();
+	    values.add (currentTokenValue);
+	    while (lexer.hasMoreTokens ()) {
+		Token t = lexer.nextNonWhitespaceToken ();
+		previous.get (convergedAt + values.size ()).setTokenIndex (tokens.size () - 1);
+		values.add (treeBuilder != null ? treeBuilder.getTokenValue (lexer, t) : null);
+	    }
+	    // All copies are made before any state is moved, so they only see old positions
+	    for (int i = 1; i <= values.size (); i++) {
+		int end = convergedAt + i;
+		EarleyState es = previous.get (end);
+		List<State> ls = es.getStates ();
+		for (int j = 0, s = ls.size (); j < s; j++) {
+		    State state = ls.get (j);
+		    if (state.getStartPos () <= convergedAt)
+			es.replaceState (j, move (state, state.getStartPos (), end));
+		}
+	    }
+	    for (int i = 1; i <= values.size (); i++) {
+		EarleyState es = previous.get (convergedAt + i);
+		if (delta != 0) {
+		    for (State state : es.getStates ())
+			if (state.getStartPos () >= firstChanged)
+			    state.moveStart (delta);
+		}
+		es.reuse (values.get (i - 1), delta != 0);
+		states.add (es);
+	    }
+	    reused += values.size ();
+	    return states.size () - 1;
+	}
+
+	/** Get the state to use for an old state.
+	 *  States that start before the converged set are copied so that their
+	 *  parts are the states of the new parse, the other states are used as they are.
+	 *  Only the states in the sets are moved, so the start position of any other
+	 *  state, like the predicted ones and the ones that leo paths expand to, may be
+	 *  wrong and is given by the caller.
+	 * @param s the old state
+	 * @param origin the old start position of the state
+	 * @param end the old position of the set that the state ended in
+	 */
+	private State move (State s, int origin, int end) {
+	    if (end < firstChanged || (end > convergedAt && origin > convergedAt))
+		return s;
+	    State m = moved.get (s);
+	    if (m != null)
+		return m;
+	    if (end <= convergedAt) {
+		// part of a set that was parsed again
+		int newOrigin = getNewPosition (origin);
+		if (end < firstUnchanged || newOrigin < 0)
+		    throw new IllegalStateException ("Found state that depends on the edit: " + s);
+		m = states.get (end + delta).getState (getKey (s, newOrigin));
+		if (m == null) // not part of any set
+		    m = copy (s, origin, end);
+	    } else {
+		m = copy (s, origin, end);
+	    }
+	    moved.put (s, m);
+	    return m;
+	}
+
+	private State copy (State s, int origin, int end) {
+	    State previous = s.getPrevious ();
+	    if (previous == null)
+		return s;
+	    List<State> completed = s.getCompleted ();
+	    int previousEnd = getPreviousEnd (s, end);
+	    State first = completed.isEmpty () ? null : move (completed.get (0), previousEnd, end);
+	    State ret = new StateWithPrevious (s.getRule (), s.getDotPos (), origin,
+					       move (previous, origin, previousEnd), first);
+	    for (int i = 1; i < completed.size (); i++) {
+		State c = completed.get (i);
+		ret.addCompleted (move (c, getStartPos (c, end), end));
+	    }
+	    return ret;
+	}
+
+	/** Get the position of the set that the previous state of the given state ended in */
+	private int getPreviousEnd (State s, int end) {
+	    List<State> completed = s.getCompleted ();
+	    if (!completed.isEmpty ())
+		return getStartPos (completed.get (0), end);
+	    if (cg.isToken (getSymbolAfterDot (s.getPrevious ())))
+		return end - 1;
+	    return end; // skipped a nullable part
+	}
+
+	/** Get the start position of a completed state.
+	 *  A state that has been advanced is part of a set, so its position is
+	 *  right, a predicted state starts where it ends.
+	 */
+	private int getStartPos (State s, int end) {
+	    State previous = s.getPrevious ();
+	    if (previous == null)
+		return s.getStartPos ();
+	    if (previous.getDotPos () > 0)
+		return previous.getStartPos ();
+	    return getPreviousEnd (s, end);
+	}
+    }
+
     private void addParserError (String error) {
 	diagnostics.report (SourceDiagnostics.error (path, lexer.getParsePosition (), error));
     }
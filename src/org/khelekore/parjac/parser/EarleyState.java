@@ -4,32 +4,47 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
-import org.khelekore.parjac.grammar.SimplePart;
-import org.khelekore.parjac.lexer.ParsePosition;
+import org.khelekore.parjac.grammar.CompiledGrammar;
 import org.khelekore.parjac.lexer.Token;
 import org.khelekore.parjac.tree.TreeNode;
 
 public class EarleyState {
-
-    private ParsePosition parsePosition;
-    private final TreeNode tokenValue;
+    private final CompiledGrammar cg;
+    // Index of the token that is scanned from this set
+    private int tokenIndex;
+    private TreeNode tokenValue;
     // Predicted rules
     private ListRuleHolder lrh;
     // States that have been advanced in some way
     private List<State> states = Collections.emptyList ();
+    // Open addressed index into states, slot holds list position + 1, 0 means empty.
+    // Only built once the set grows large, small sets are faster to scan.
+    private int[] index;
+    // States grouped by the symbol after the dot (rule name or token), built on first
+    // lookup in a large set.
+    private SymbolMap<List<State>> afterDot;
     private boolean cleared = false; // have we removed non-used states?
+    // Memoized deterministic reduction paths, valid for one leo generation
+    private SymbolMap<LeoItem> leoItems;
+    private int leoGeneration;
+    // The number of states that were scanned or predicted into this set before it was processed
+    private int kernelSize;
+
+    private static final int INDEX_THRESHOLD = 16;
 
-    public EarleyState (TreeNode tokenValue) {
+    public EarleyState (CompiledGrammar cg, TreeNode tokenValue) {
+	this.cg = cg;
 	this.tokenValue = tokenValue;
     }
 
-    public void setParsePosition (ParsePosition parsePosition) {
-	this.parsePosition = parsePosition;
+    public void setTokenIndex (int tokenIndex) {
+	this.tokenIndex = tokenIndex;
     }
 
-    public ParsePosition getParsePosition () {
-	return parsePosition;
+    public int getTokenIndex () {
+	return tokenIndex;
     }
 
     public TreeNode getTokenValue () {
@@ -44,16 +59,145 @@ public class EarleyState {
     public void addState (State state) {
 	if (states.isEmpty ())
 	    states = new ArrayList<> ();
-	for (State s : states)
-	    if (s.equals (state))
+	if (index == null) {
+	    for (int i = 0, s = states.size (); i < s; i++)
+		if (states.get (i).equals (state))
+		    return;
+	    states.add (state);
+	    if (states.size () > INDEX_THRESHOLD)
+		rebuildIndex ();
+	} else {
+	    int slot = findSlot (state);
+	    if (index[slot] != 0)
 		return;
-	states.add (state);
+	    states.add (state);
+	    index[slot] = states.size ();
+	    if (states.size () * 2 > index.length)
+		rebuildIndex ();
+	}
+	if (afterDot != null)
+	    addAfterDot (state);
+    }
+
+    /** Get the state in this set that is equal to the given one, or null if there is none */
+    public State getState (State state) {
+	if (index == null) {
+	    for (int i = 0, s = states.size (); i < s; i++)
+		if (states.get (i).equals (state))
+		    return states.get (i);
+	    return null;
+	}
+	int p = index[findSlot (state)];
+	return p == 0 ? null : states.get (p - 1);
+    }
+
+    /** Get the states that have the given symbol, rule name or token, after the dot */
+    public List<State> getStatesWithNext (int symbol) {
+	if (states.size () <= INDEX_THRESHOLD)
+	    return scanStatesWithNext (symbol);
+	if (afterDot == null) {
+	    afterDot = new SymbolMap<> ();
+	    for (State s : states)
+		addAfterDot (s);
+	}
+	List<State> ls = afterDot.get (symbol);
+	return ls == null ? Collections.emptyList () : ls;
+    }
+
+    private List<State> scanStatesWithNext (int symbol) {
+	List<State> ret = null;
+	for (int i = 0, s = states.size (); i < s; i++) {
+	    State state = states.get (i);
+	    if (!state.dotIsLast () && getSymbolAfterDot (state) == symbol) {
+		if (ret == null)
+		    ret = new ArrayList<> (2);
+		ret.add (state);
+	    }
+	}
+	return ret == null ? Collections.emptyList () : ret;
+    }
+
+    private void addAfterDot (State s) {
+	if (s.dotIsLast ())
+	    return;
+	int symbol = getSymbolAfterDot (s);
+	List<State> ls = afterDot.get (symbol);
+	if (ls == null) {
+	    ls = new ArrayList<> (2);
+	    afterDot.put (symbol, ls);
+	}
+	ls.add (s);
+    }
+
+    /** Remove all the states that are not in the given set */
+    public void retainAll (Set<State> toKeep) {
+	states.retainAll (toKeep);
+	if (index != null)
+	    rebuildIndex ();
+	afterDot = null;
+    }
+
+    private int findSlot (State state) {
+	int mask = index.length - 1;
+	int slot = hash (state) & mask;
+	int p;
+	while ((p = index[slot]) != 0) {
+	    if (states.get (p - 1).equals (state))
+		return slot;
+	    slot = (slot + 1) & mask;
+	}
+	return slot;
+    }
+
+    private static int hash (State s) {
+	// Mix positions and rule id, the lower bits are mostly dot position
+	int h = s.getPositions () * 0x9e3779b9 + s.getRule ().getId ();
+	return h ^ (h >>> 16);
+    }
+
+    private void rebuildIndex () {
+	int size = Integer.highestOneBit (Math.max (states.size (), INDEX_THRESHOLD) * 4);
+	index = new int[size];
+	int mask = size - 1;
+	for (int i = 0, s = states.size (); i < s; i++) {
+	    int slot = hash (states.get (i)) & mask;
+	    while (index[slot] != 0)
+		slot = (slot + 1) & mask;
+	    index[slot] = i + 1;
+	}
     }
 
     public List<State> getStates () {
 	return states;
     }
 
+    /** Replace the state at the given list position with an equal state */
+    public void replaceState (int i, State state) {
+	states.set (i, state);
+    }
+
+    /** Use this set in a new parse of an edited input.
+     * @param tokenValue the value of the scanned token in the new input
+     * @param startsMoved true if the start positions of the states have changed
+     */
+    public void reuse (TreeNode tokenValue, boolean startsMoved) {
+	this.tokenValue = tokenValue;
+	if (startsMoved && index != null)
+	    rebuildIndex ();
+	afterDot = null;
+	leoItems = null;
+    }
+
+    /** Mark the states added so far as the kernel of this set */
+    public void setKernel () {
+	kernelSize = states.size ();
+    }
+
+    /** Get the states that were added before setKernel was called */
+    public List<State> getKernel () {
+	return states.subList (0, kernelSize);
+    }
+
     public ListRuleHolder getListRuleHolder () {
 	return lrh;
     }
@@ -68,15 +212,34 @@ public class EarleyState {
 	    et.addAll (lrh.getStartingTokens ());
 	    for (State s : states) {
 		if (!s.dotIsLast ()) {
-		    SimplePart sp = s.getPartAfterDot ();
-		    if (sp.isTokenPart ())
-			et.add ((Token)sp.getId ());
+		    int symbol = getSymbolAfterDot (s);
+		    if (cg.isToken (symbol))
+			et.add (cg.getToken (symbol));
 		}
 	    }
 	}
 	return et;
     }
 
+    private int getSymbolAfterDot (State s) {
+	return cg.getPart (s.getRule ().getId (), s.getDotPos ());
+    }
+
+    /** Get the memoized leo item for the symbol, null if not known in the given generation */
+    public LeoItem getLeoItem (int symbol, int generation) {
+	if (leoItems == null || leoGeneration != generation)
+	    return null;
+	return leoItems.get (symbol);
+    }
+
+    public void setLeoItem (int symbol, LeoItem li, int generation) {
+	if (leoItems == null || leoGeneration != generation) {
+	    leoItems = new SymbolMap<> ();
+	    leoGeneration = generation;
+	}
+	leoItems.put (symbol, li);
+    }
+
     public boolean isEmpty () {
 	return states.isEmpty () && lrh == null;
     }
@@ -93,7 +256,7 @@ public class EarleyState {
 
     @Override public String toString () {
 	return getClass ().getSimpleName () + "{" +
-	    "parsePosition: " + parsePosition +
+	    "tokenIndex: " + tokenIndex +
 	    ", tokenValue: " + tokenValue +
 	    ", lrh: " + lrh +
 	    ", states: " + states +
@@ -0,0 +1,11 @@
+package org.khelekore.parjac.parser;
+
+import org.khelekore.parjac.CompilerDiagnosticCollector;
+import org.khelekore.parjac.lexer.Lexer;
+import org.khelekore.parjac.tree.SyntaxTree;
+
+/** Something that parses the input of a lexer as a given goal rule */
+public interface GoalParser {
+    /** Parse the input, ending with END_OF_INPUT, as the given goal */
+    SyntaxTree parse (Lexer lexer, String goal, CompilerDiagnosticCollector diagnostics);
+}
@@ -0,0 +1,170 @@
+package org.khelekore.parjac.parser;
+
+import java.nio.CharBuffer;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.khelekore.parjac.CompilerDiagnosticCollector;
+import org.khelekore.parjac.grammar.Grammar;
+import org.khelekore.parjac.lexer.CharBufferLexer;
+import org.khelekore.parjac.lexer.Lexer;
+import org.khelekore.parjac.lexer.SymbolTable;
+import org.khelekore.parjac.lexer.TokenBuffer;
+import org.khelekore.parjac.tree.SyntaxTree;
+
+/** Parse one file over and over as it is edited, for long running checkers.
+ *
+ *  The earley sets of the last good parse are kept together with its tokens.
+ *  After an edit the new text is lexed and compared to those tokens, the
+ *  parse restarts at the first changed token and the rest of the old sets are
+ *  reused once the new sets are the same as the old ones again, see
+ *  EarleyParser.reparse. Lexing is cheap compared to parsing so the whole text
+ *  is lexed again.
+ *
+ *  Text that does not parse is parsed again by a normal parser, so errors are
+ *  reported as usual, and the next edit is compared to the last good parse.
+ *  A reparse that got as far as moving the old sets, but then failed, for
+ *  example on a duplicate modifier, has changed them, so then the next edit
+ *  is parsed from scratch.
+ *  Token values of the unchanged start of the file are shared with the previous tree.
+ *  Identifiers are interned in a table of this parser, edits leave identifiers that
+ *  are no longer used in it, so it is replaced when it has grown too much.
+ */
+public class IncrementalParser {
+    private final Grammar grammar;
+    private final Path path;
+    private final PredictCache predictCache;
+    private final JavaTreeBuilder treeBuilder;
+    // Most tables are at least this large before they are replaced
+    private static final int MIN_SYMBOLS = 1024;
+
+    private String text = "";
+    // The text, tokens and sets of the last good parse, states is null if there is none
+    private String parsedText;
+    private TokenBuffer tokens;
+    private List<EarleyState> states;
+    private int reusedSets;
+    private SymbolTable symbols;
+    // The size that symbols can grow to before it is replaced, 0 until the first parse with it is done
+    private int symbolLimit;
+
+    public IncrementalParser (Grammar grammar, Path path, PredictCache predictCache,
+			      JavaTreeBuilder treeBuilder) {
+	this.grammar = grammar;
+	this.path = path;
+	this.predictCache = predictCache;
+	this.treeBuilder = treeBuilder;
+    }
+
+    /** Parse the given text from scratch */
+    public SyntaxTree parse (String text, CompilerDiagnosticCollector diagnostics) {
+	this.text = text;
+	states = null;
+	reusedSets = 0;
+	newSymbolTable ();
+	Lexer lexer = getLexer (text);
+	CompilerDiagnosticCollector parseDiagnostics = new CompilerDiagnosticCollector ();
+	EarleyParser ep = getParser (lexer, parseDiagnostics);
+	ep.keepStates ();
+	return finish (ep, ep.parse (), lexer, parseDiagnostics, diagnostics);
+    }
+
+    /** Replace part of the current text and parse it again.
+     * @param offset the position of the first replaced char
+     * @param length the number of chars to replace
+     * @param replacement the text to put in their place
+     * @param diagnostics where to report problems
+     */
+    public SyntaxTree edit (int offset, int length, String replacement,
+			    CompilerDiagnosticCollector diagnostics) {
+	String newText = text.substring (0, offset) + replacement + text.substring (offset + length);
+	if (states == null)
+	    return parse (newText, diagnostics);
+	if (symbols.size () > symbolLimit)
+	    newSymbolTable ();
+
+	TokenBuffer newTokens = lexAll (newText);
+	int oldCount = tokens.size ();
+	int newCount = newTokens.size ();
+	int min = Math.min (oldCount, newCount);
+	// The tokens before the edit are used as they are, so they have to be in the same place
+	int firstChanged = 0;
+	while (firstChanged < min && isSameToken (newText, newTokens, firstChanged))
+	    firstChanged++;
+	// Restart at the end of input set if nothing changed
+	firstChanged = Math.min (firstChanged, min - 1);
+	// The tokens after the edit only have to be of the same kind, their values are new
+	int sameEnd = 0;
+	while (sameEnd < min - firstChanged &&
+	       tokens.getToken (oldCount - 1 - sameEnd) == newTokens.getToken (newCount - 1 - sameEnd))
+	    sameEnd++;
+
+	text = newText;
+	Lexer lexer = getLexer (newText);
+	CompilerDiagnosticCollector parseDiagnostics = new CompilerDiagnosticCollector ();
+	EarleyParser ep = getParser (lexer, parseDiagnostics);
+	SyntaxTree tree = ep.reparse (states, firstChanged, oldCount - sameEnd, newCount - oldCount);
+	reusedSets = ep.getReusedSets ();
+	return finish (ep, tree, lexer, parseDiagnostics, diagnostics);
+    }
+
+    /** Get the current text */
+    public String getText () {
+	return text;
+    }
+
+    /** Get the number of earley sets that the last parse took from the last good parse */
+    public int getReusedSets () {
+	return reusedSets;
+    }
+
+    private SyntaxTree finish (EarleyParser ep, SyntaxTree tree, Lexer lexer,
+			       CompilerDiagnosticCollector parseDiagnostics,
+			       CompilerDiagnosticCollector diagnostics) {
+	if (symbolLimit == 0)
+	    symbolLimit = Math.max (MIN_SYMBOLS, 2 * symbols.size ());
+	if (tree == null || parseDiagnostics.hasError ()) {
+	    if (ep.hasChangedPrevious ())
+		states = null;
+	    return getParser (getLexer (text), diagnostics).parse ();
+	}
+	parsedText = text;
+	tokens = lexer.getTokens ();
+	states = ep.getStates ();
+	parseDiagnostics.getDiagnostics ().forEach (diagnostics::report);
+	return tree;
+    }
+
+    private boolean isSameToken (String newText, TokenBuffer newTokens, int i) {
+	int start = tokens.getStartPos (i);
+	int end = tokens.getEndPos (i);
+	return tokens.getToken (i) == newTokens.getToken (i) &&
+	    start == newTokens.getStartPos (i) && end == newTokens.getEndPos (i) &&
+	    parsedText.regionMatches (start, newText, start, end - start);
+    }
+
+    private TokenBuffer lexAll (String s) {
+	Lexer lexer = getLexer (s);
+	while (lexer.hasMoreTokens ())
+	    lexer.nextNonWhitespaceToken ();
+	return lexer.getTokens ();
+    }
+
+    private EarleyParser getParser (Lexer lexer, CompilerDiagnosticCollector diagnostics) {
+	return new EarleyParser (grammar, path, lexer, predictCache, treeBuilder, diagnostics, false);
+    }
+
+    private Lexer getLexer (String s) {
+	return new CharBufferLexer (CharBuffer.wrap (s), symbols);
+    }
+
+    private void newSymbolTable () {
+	symbols = new SymbolTable ();
+	symbolLimit = 0;
+    }
+
+    /** Get the number of identifiers that the current symbol table holds */
+    int getSymbolCount () {
+	return symbols.size ();
+    }
+}
@@ -6,6 +6,7 @@ import java.util.Deque;
 import java.util.List;
 
 import org.khelekore.parjac.CompilerDiagnosticCollector;
+import org.khelekore.parjac.grammar.CompiledGrammar;
 import org.khelekore.parjac.grammar.Grammar;
 import org.khelekore.parjac.grammar.Rule;
 import org.khelekore.parjac.grammar.RuleCollection;
@@ -16,14 +17,22 @@ import org.khelekore.parjac.tree.*;
 
 public class JavaTreeBuilder {
 
+    private final CompiledGrammar cg;
     // Indexed by rule id
     private List<Builder> builders;
 
     public JavaTreeBuilder (Grammar g) {
+	cg = g.getCompiledGrammar ();
 	builders = new ArrayList<> (g.getNumberOfRules ());
 	for (int i = 0; i < g.getNumberOfRules (); i++)
 	    builders.add (null);
 
+	// The generated zero or more rules
+	Builder zom = (r, parts, pos, path, diagnostics) -> buildZOM (r, parts, pos);
+	for (Rule r : g.getRules ())
+	    if (r.getName ().startsWith ("ZOM_"))
+		builders.set (r.getId (), zom);
+
 	// Productions from §3 (Lexical Structure)
 
 	// Productions from §4 (Types, Values, and Variables)
@@ -258,6 +267,9 @@ public class JavaTreeBuilder {
     }
 
     public TreeNode getTokenValue (Lexer lexer, Token token) {
+	// Separators and most keywords do not give a tree node, so do not create a position for them
+	if (!token.hasValue () && !token.isOperator () && !token.isPrimitive () && !token.isModifier ())
+	    return null;
 	ParsePosition pos = lexer.getParsePosition ();
 	if (token.isOperator ())
 	    return new OperatorTokenType (token, pos);
@@ -265,8 +277,6 @@ public class JavaTreeBuilder {
 	    return new PrimitiveTokenType (token, pos);
 	else if (token.isModifier ())
 	    return new ModifierTokenType (token, pos);
-	else if (!token.hasValue ())
-	    return null;
 
 	switch (token) {
 	case INT_LITERAL:
@@ -278,9 +288,9 @@ public class JavaTreeBuilder {
 	case DOUBLE_LITERAL:
 	    return new DoubleLiteral (lexer.getDoubleValue (), pos);
 	case CHARACTER_LITERAL:
-	    return new CharLiteral (lexer.getCharValue (), pos);
+	    return new CharLiteral (lexer.getLiteral (), pos);
 	case STRING_LITERAL:
-	    return new StringLiteral (lexer.getStringValue (), pos);
+	    return new StringLiteral (lexer.getLiteral (), pos);
 	case TRUE:
 	    return new BooleanLiteral (true, pos);
 	case FALSE:
@@ -296,19 +306,20 @@ public class JavaTreeBuilder {
 
     public void build (State start, Deque<TreeNode> parts, ParsePosition pos,
 		       Path path, CompilerDiagnosticCollector diagnostics) {
-	Rule rule = start.getRule ();
+	build (start.getRule (), parts, pos, path, diagnostics);
+    }
+
+    public void build (Rule rule, Deque<TreeNode> parts, ParsePosition pos,
+		       Path path, CompilerDiagnosticCollector diagnostics) {
 	Builder b = builders.get (rule.getId ());
-	if (b != null) {
+	if (b != null)
 	    b.build (rule, parts, pos, path, diagnostics);
-	} else if (rule.getName ().startsWith ("ZOM_")) {
-	    buildZOM (rule, parts, pos);
-	}
     }
 
     private void buildZOM (Rule r, Deque<TreeNode> parts, ParsePosition pos) {
 	ZOMEntry z;
-	String name = r.getName ();
-	if (r.size () > 1 && r.getRulePart (0).getId () == name) {
+	int id = r.getId ();
+	if (r.size () > 1 && cg.getPart (id, 0) == cg.getRuleSymbol (id)) {
 	    z = (ZOMEntry)parts.pop ();
 	} else {
 	    z = new ZOMEntry (r.getRulePart (0).getId ().toString (), pos);
@@ -0,0 +1,61 @@
+package org.khelekore.parjac.parser;
+
+/** A memoized deterministic reduction path, the topmost item of Joop Leo.
+ *
+ *  If an earley set holds exactly one state with a given symbol after the dot
+ *  and that state is complete once the dot has been moved, then completing the
+ *  symbol will always give the same chain of completions. The chain is stored
+ *  so that right recursive input only adds the top state of the chain.
+ */
+class LeoItem {
+    /** Marker for a symbol that does not have a deterministic path */
+    public static final LeoItem NONE = new LeoItem (null, null);
+
+    // The only state in its set with the symbol after dot
+    private final State penultimate;
+    // The path from the set that penultimate starts in, may be null
+    private final LeoItem next;
+    private final State top;
+
+    public LeoItem (State penultimate, LeoItem next) {
+	this.penultimate = penultimate;
+	this.next = next;
+	this.top = next == null ? penultimate : next.top;
+    }
+
+    /** Check if this path holds more than one state */
+    public boolean isChain () {
+	return next != null;
+    }
+
+    /** Create the completed top state for the given completed state.
+     *  The states in between are only created if someone asks for them.
+     */
+    public State complete (State completed) {
+	return new StateWithPrevious (top.getRule (), top.getDotPos () + 1, top.getStartPos (),
+				      top, new Path (this, completed));
+    }
+
+    @Override public String toString () {
+	return getClass ().getSimpleName () + "{" + penultimate + ", top: " + top + "}";
+    }
+
+    /** The completed part of a top state */
+    static class Path {
+	private final LeoItem item;
+	private final State completed;
+
+	public Path (LeoItem item, State completed) {
+	    this.item = item;
+	    this.completed = completed;
+	}
+
+	/** Create the states below the top state, return the one the top state completed */
+	public State expand () {
+	    State s = completed;
+	    for (LeoItem li = item; li.next != null; li = li.next)
+		s = li.penultimate.advance (s);
+	    return s;
+	}
+    }
+}
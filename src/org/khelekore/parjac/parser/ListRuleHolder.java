@@ -1,55 +1,78 @@
 package org.khelekore.parjac.parser;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Map;
+import java.util.List;
 import java.util.Set;
 
+import org.khelekore.parjac.grammar.CompiledGrammar;
 import org.khelekore.parjac.grammar.Rule;
-import org.khelekore.parjac.grammar.SimplePart;
 import org.khelekore.parjac.lexer.Token;
 
 class ListRuleHolder {
+    private final CompiledGrammar cg;
     private Set<Rule> completed = Collections.emptySet ();
+    // Rules that start with a nullable part
+    private Set<Rule> nullableStart = Collections.emptySet ();
 
-    // (Token | rulename) -> rules
-    private final Map<Object, Set<Rule>> m = new HashMap<> ();
+    // symbol of first part (token or rule name) -> rules
+    private final SymbolMap<Set<Rule>> m = new SymbolMap<> ();
 
-    ListRuleHolder (Collection<Rule> rr) {
+    ListRuleHolder (CompiledGrammar cg, Collection<Rule> rr) {
+	this.cg = cg;
 	for (Rule r : rr) {
 	    if (r.isEmpty ()) {
 		if (completed.isEmpty ())
 		    completed = new HashSet<> ();
 		completed.add (r);
 	    } else {
-		SimplePart sp = r.getRulePart (0);
-		Set<Rule> ls = m.get (sp.getId ());
+		int symbol = cg.getPart (r.getId (), 0);
+		Set<Rule> ls = m.get (symbol);
 		if (ls == null) {
 		    ls = new HashSet<> ();
-		    m.put (sp.getId (), ls);
+		    m.put (symbol, ls);
 		}
 		ls.add (r);
+		if (cg.isNullable (symbol)) {
+		    if (nullableStart.isEmpty ())
+			nullableStart = new HashSet<> ();
+		    nullableStart.add (r);
+		}
 	    }
 	}
     }
 
+    /** Get a new holder with only the rules that can start with the given token */
+    public ListRuleHolder filter (Token next) {
+	List<Rule> rules = new ArrayList<> (completed);
+	for (int symbol : m.getKeys ())
+	    for (Rule r : m.get (symbol))
+		if (cg.canStartWith (r.getId (), next))
+		    rules.add (r);
+	return new ListRuleHolder (cg, rules);
+    }
+
     public void add (ListRuleHolder other) {
 	if (completed.isEmpty () && !other.completed.isEmpty ()) {
 	    completed = new HashSet<> ();
 	    completed.addAll (other.completed);
 	}
 
-	for (Map.Entry<Object, Set<Rule>> me : other.m.entrySet ()) {
-	    Object key = me.getKey ();
-	    Set<Rule> ls = m.get (key);
+	if (!other.nullableStart.isEmpty ()) {
+	    if (nullableStart.isEmpty ())
+		nullableStart = new HashSet<> ();
+	    nullableStart.addAll (other.nullableStart);
+	}
+
+	for (int symbol : other.m.getKeys ()) {
+	    Set<Rule> ls = m.get (symbol);
 	    if (ls == null) {
-		m.put (key, new HashSet<> (me.getValue ()));
+		m.put (symbol, new HashSet<> (other.m.get (symbol)));
 	    } else {
-		ls.addAll (me.getValue ());
+		ls.addAll (other.m.get (symbol));
 	    }
 	}
     }
@@ -59,37 +82,28 @@ class ListRuleHolder {
 	    "completed: " + completed + ", m: " + m + "}";
     }
 
-    public Set<String> getStartingRules () {
-	Set<String> startingRules = new HashSet<> ();
-	for (Object o : m.keySet ())
-	    if (o instanceof String)
-		startingRules.add ((String)o);
-	return startingRules;
-    }
-
     public EnumSet<Token> getStartingTokens () {
 	EnumSet<Token> et = EnumSet.noneOf (Token.class);
-	for (Object o : m.keySet ())
-	    if (o instanceof Token)
-		et.add ((Token)o);
+	for (int symbol : m.getKeys ())
+	    if (cg.isToken (symbol))
+		et.add (cg.getToken (symbol));
 	return et;
     }
 
-    public Iterator<Rule> getCompletedRules () {
-	return completed.iterator ();
+    public Collection<Rule> getCompletedRules () {
+	return completed;
     }
 
-    public Iterator<Rule> getRulesWithRuleNext (Rule r) {
-	Set<Rule> ls = m.get (r.getName ());
-	if (ls == null)
-	    return Collections.emptyIterator ();
-	return ls.iterator ();
+    /** Get the rules whose first part is nullable */
+    public Collection<Rule> getNullableStartRules () {
+	return nullableStart;
     }
 
-    public Iterator<Rule> getRulesWithTokenNext(Token t) {
-	Set<Rule> ls = m.get (t);
+    /** Get the rules that start with the given symbol, token or rule name */
+    public Collection<Rule> getRulesWithNext (int symbol) {
+	Set<Rule> ls = m.get (symbol);
 	if (ls == null)
-	    return Collections.emptyIterator ();
-	return ls.iterator ();
+	    return Collections.emptySet ();
+	return ls;
     }
 }
@@ -0,0 +1,889 @@
+package org.khelekore.parjac.parser;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.EnumSet;
+
+import org.khelekore.parjac.CompilerDiagnosticCollector;
+import org.khelekore.parjac.SourceDiagnostics;
+import org.khelekore.parjac.grammar.CompiledGrammar;
+import org.khelekore.parjac.grammar.Grammar;
+import org.khelekore.parjac.grammar.Rule;
+import org.khelekore.parjac.lexer.Lexer;
+import org.khelekore.parjac.lexer.Token;
+import org.khelekore.parjac.lexer.TokenBuffer;
+import org.khelekore.parjac.tree.SyntaxTree;
+import org.khelekore.parjac.tree.TreeNode;
+
+/** An earley parser that keeps its items in primitive arrays instead of State objects.
+ *
+ *  All the earley sets are stored after each other in the same arrays and an
+ *  item is addressed by its index. The previous and completed states are stored
+ *  as indexes, so a large file gives a few large arrays instead of millions of
+ *  small objects. The parse steps are the same as for EarleyParser and the
+ *  resulting tree is the same.
+ */
+public class PackedEarleyParser {
+    // The grammar we are using
+    private final Grammar grammar;
+    private final CompiledGrammar cg;
+    // The rule we parse, normally "Goal"
+    private final String goal;
+    private final int goalSymbol;
+    // The file we are parsing
+    private final Path path;
+    // The lexer we are using to get tokens
+    private final Lexer lexer;
+    private final TokenBuffer tokens;
+    private final PredictCache predictCache;
+    private final RuleSet predictKey;
+    // The tree builder
+    private final JavaTreeBuilder treeBuilder;
+    // Compiler output
+    private final CompilerDiagnosticCollector diagnostics;
+    private final boolean debug;
+
+    // An item is: hidden flag (1 bit) | rule id (23 bits) | dot pos (8 bits) | start pos (32 bits)
+    // Hidden items are not part of their earley set, they are only kept since
+    // other items point to them.
+    private static final long HIDDEN = 1L << 63;
+
+    // previous[i] is an item index or one of these
+    private static final int NO_PREVIOUS = -1; // like State.getPrevious () == null
+    private static final int PREDICTED = -2;   // the (rule, 0, start) item, it is never stored
+    // completed[i] is an item index or NO_COMPLETED. Only the first completion of an
+    // item is kept, the same as StateWithPrevious, so an ambiguous parse, like the
+    // sets that error recovery adds, gives one tree.
+    private static final int NO_COMPLETED = -1;
+
+    // Only sets larger than this get a symbol index
+    private static final int INDEX_THRESHOLD = 16;
+
+    private long[] items = new long[1024];
+    private int[] previous = new int[1024];
+    private int[] completed = new int[1024];
+    private int size;
+    private int peakSize;
+
+    // The earley sets, set i is [setStart[i], setStart[i + 1]) and the last set ends at size
+    private int sets;
+    private int[] setStart = new int[256];
+    private ListRuleHolder[] predicted = new ListRuleHolder[256];
+    private TreeNode[] tokenValues = new TreeNode[256];
+    // Index of the token that is scanned from each set
+    private int[] tokenIndexes = new int[256];
+    private boolean[] cleared = new boolean[256];
+    // Per set (symbol after dot << 32 | item index), sorted, built on first lookup
+    private long[][] afterDot = new long[256][];
+
+    // Items added during completion of the last set are pending until the completion is done
+    private int pendingStart = Integer.MAX_VALUE;
+    // Members of the last set
+    private final ItemHash lastSet = new ItemHash ();
+    // Pending items
+    private final ItemHash seen = new ItemHash ();
+    // Item currently being completed, kept as a field so that it can be moved by compact
+    private int completing;
+    // The lowest set that the current clearing has cleared
+    private int lowestCleared;
+    private final IntList multiComplete = new IntList ();
+    private final IntList toComplete = new IntList ();
+    private final IntList matches = new IntList ();
+    private final IntList scanned = new IntList ();
+    private int attemptedRecoveries;
+
+    public PackedEarleyParser (Grammar grammar, Path path, Lexer lexer,
+			       PredictCache predictCache, JavaTreeBuilder treeBuilder,
+			       CompilerDiagnosticCollector diagnostics,
+			       boolean debug) {
+	this (grammar, path, lexer, predictCache, treeBuilder, diagnostics, debug, "Goal");
+    }
+
+    /** Create a parser that parses the given goal instead of "Goal".
+     *  The rules of the goal have to end with END_OF_INPUT.
+     */
+    public PackedEarleyParser (Grammar grammar, Path path, Lexer lexer,
+			       PredictCache predictCache, JavaTreeBuilder treeBuilder,
+			       CompilerDiagnosticCollector diagnostics,
+			       boolean debug, String goal) {
+	this.grammar = grammar;
+	this.cg = grammar.getCompiledGrammar ();
+	this.goal = goal;
+	this.goalSymbol = cg.getRuleSymbol (goal);
+	this.path = path;
+	this.lexer = lexer;
+	this.tokens = lexer.getTokens ();
+	this.predictCache = predictCache;
+	this.predictKey = predictCache.createRuleSet ();
+	this.treeBuilder = treeBuilder;
+	this.diagnostics = diagnostics;
+	this.debug = debug;
+    }
+
+    public SyntaxTree parse () {
+	int currentPosition = 0;
+	openSet ();
+	for (Rule goalRule : grammar.getRules (goal).getRules ())
+	    addToLastSet (item (goalRule.getId (), 0, currentPosition), NO_PREVIOUS);
+	Token nextToken = Token.END_OF_INPUT;
+	TreeNode currentTokenValue = null;
+	while (lexer.hasMoreTokens ()) {
+	    nextToken = lexer.nextNonWhitespaceToken ();
+	    if (treeBuilder != null)
+		currentTokenValue = treeBuilder.getTokenValue (lexer, nextToken);
+	    boolean recovery = false;
+	    do {
+		handleToken (currentPosition, nextToken, currentTokenValue);
+		currentPosition++;
+		if (sets <= currentPosition) {
+		    addPossibleNextTokens (currentPosition - 1);
+		    attemptedRecoveries++;
+		    recovery = true;
+		} else {
+		    recovery = false;
+		}
+		if (sets <= currentPosition) {
+		    addParserError ("No possible next state");
+		    return null;
+		}
+	    } while (recovery);
+	}
+
+	int finishingSet = currentPosition;
+	if (debug)
+	    System.err.println ("finishingStates: " + setToString (finishingSet));
+	int finished = -1;
+	int numFinished = 0;
+	for (int i = setStart[finishingSet]; i < size; i++) {
+	    if (isMember (i) && dotIsLast (items[i])) {
+		if (finished < 0)
+		    finished = i;
+		numFinished++;
+	    }
+	}
+	if (numFinished == 0) {
+	    addParserError ("Did not find any finishing state");
+	} else {
+	    if (numFinished > 1)
+		addParserError ("Ended up in many states: " + setToString (finishingSet));
+	    else if (!isEndState (items[finished]))
+		addParserError ("Ended up in wrong state: " + setToString (finishingSet));
+	}
+	if (diagnostics.hasError ())
+	    return null;
+
+	if (attemptedRecoveries > 0)
+	    addParserError ("Attempted " + attemptedRecoveries + " parse recovieries");
+
+	if (treeBuilder == null)
+	    return null;
+
+	SyntaxTree sn = buildTree (getPrevious (finished)); // skip end of file
+	if (debug)
+	    System.err.println ("Built tree: " + sn);
+	return sn;
+    }
+
+    /** Get the number of items currently stored */
+    public int getItemCount () {
+	return size;
+    }
+
+    /** Get the largest number of items that have been stored during the parse.
+     *  Predicted items are shared and not counted.
+     */
+    public int getPeakRetainedStates () {
+	return peakSize;
+    }
+
+    private void handleToken (int currentPosition, Token nextToken, TreeNode currentTokenValue) {
+	if (debug) {
+	    if (currentTokenValue != null)
+		System.err.println ("nextToken: " + nextToken + ": " + currentTokenValue);
+	    else
+		System.err.println ("nextToken: " + nextToken);
+	}
+	tokenIndexes[currentPosition] = tokens.size () - 1;
+	completeSet (currentPosition);
+	predict (currentPosition, nextToken);
+	scanned.clear ();
+	scan (currentPosition, nextToken);
+	if (!scanned.isEmpty ())
+	    addScannedSet (currentTokenValue);
+	if (debug)
+	    System.err.println (currentPosition + ": final current: " + setToString (currentPosition));
+    }
+
+    private void completeSet (int current) {
+	seen.clear ();
+	multiComplete.clear ();
+	pendingStart = size;
+	toComplete.clear ();
+	for (int i = setStart[current]; i < pendingStart; i++)
+	    if (isMember (i) && dotIsLast (items[i]))
+		toComplete.add (i);
+	for (int i = 0; i < toComplete.size (); i++) {
+	    int c = toComplete.get (i);
+	    if (c >= 0)
+		complete (c);
+	}
+	while (!multiComplete.isEmpty ())
+	    complete (multiComplete.removeFirst ());
+
+	// Add the pending items to the set, items already in the set are hidden
+	for (int i = pendingStart; i < size; i++) {
+	    if (lastSet.find (items[i]) >= 0)
+		items[i] |= HIDDEN;
+	    else
+		lastSet.add (i);
+	}
+	pendingStart = Integer.MAX_VALUE;
+	afterDot[current] = null;
+    }
+
+    private void complete (int c) {
+	completing = c;
+	long ci = items[c];
+	int origin = startPos (ci);
+	int symbol = cg.getRuleSymbol (ruleId (ci));
+	findWithNext (origin, symbol, matches);
+	boolean advanced = false;
+	for (int i = 0, s = matches.size (); i < s; i++) {
+	    int m = matches.get (i);
+	    completeNext (advance (items[m]), m);
+	    advanced = true;
+	}
+	ListRuleHolder lrh = predicted[origin];
+	if (lrh != null) {
+	    for (Rule r : lrh.getRulesWithNext (symbol)) {
+		completeNext (item (r.getId (), 1, origin), PREDICTED);
+		advanced = true;
+	    }
+	}
+	if (advanced && cg.isClearable (ruleId (items[completing])))
+	    clearStates (completing);
+    }
+
+    private void completeNext (long next, int prev) {
+	int alreadySeen = seen.find (next);
+	if (alreadySeen < 0) {
+	    int n = append (next, prev, completing);
+	    seen.add (n);
+	    if (dotIsLast (next))
+		multiComplete.add (n);
+	}
+    }
+
+    /** Same walk as EarleyParser.clearStates, but the items that are dropped from
+     *  the sets are also removed from storage, unless something still points at them.
+     */
+    private void clearStates (int tc) {
+	LongStack toVisit = new LongStack ();
+	toVisit.push (tc);
+
+	// Items in the current set to keep, compared by value, just like the State objects
+	LongStack toKeep = new LongStack ();
+	int tokenPos = sets - 1; // current pos
+	lowestCleared = Integer.MAX_VALUE;
+	while (!toVisit.isEmpty ()) {
+	    long s = toVisit.pop ();
+	    toKeep.push (getItem (s));
+	    long previous = getPrevious (s);
+	    if (previous != NO_PREVIOUS) {
+		toVisit.push (previous);
+		if (cg.isToken (getSymbolAfterDot (getItem (previous)))) {
+		    retain (tokenPos, toKeep);
+		    tokenPos--;
+		}
+		if (s >= 0 && completed[(int)s] != NO_COMPLETED)
+		    tokenPos = pushToClear (completed[(int)s], toVisit, toKeep, tokenPos);
+	    }
+	}
+	if (lowestCleared != Integer.MAX_VALUE)
+	    compact (lowestCleared);
+    }
+
+    /** Push a completed item to visit, unless it is a completed clearable rule, those
+     *  have already cleared the sets they span, except the one they ended in.
+     * @return the token position after the skipped item
+     */
+    private int pushToClear (int c, LongStack toVisit, LongStack toKeep, int tokenPos) {
+	long item = items[c];
+	if (!cg.isClearable (ruleId (item))) {
+	    toVisit.push (c);
+	    return tokenPos;
+	}
+	int start = startPos (item);
+	if (tokenPos != start) {
+	    addLastItems (c, toKeep);
+	    retain (tokenPos, toKeep);
+	}
+	return start;
+    }
+
+    /** Add the items of the completed item that are in the set it ended in */
+    private void addLastItems (int c, LongStack toKeep) {
+	LongStack toVisit = new LongStack ();
+	toVisit.push (c);
+	while (!toVisit.isEmpty ()) {
+	    long s = toVisit.pop ();
+	    toKeep.push (getItem (s));
+	    long previous = getPrevious (s);
+	    if (s >= 0 && previous != NO_PREVIOUS && !cg.isToken (getSymbolAfterDot (getItem (previous)))) {
+		int i = (int)s;
+		if (completed[i] == NO_COMPLETED) // skipped a nullable part
+		    toVisit.push (previous);
+		else
+		    pushCompleted (i, toVisit);
+	    }
+	}
+    }
+
+    /** Hide all the members of the given set that are not in toKeep.
+     *  The current set is still being completed, so it is left alone.
+     */
+    private void retain (int set, LongStack toKeep) {
+	if (set == sets - 1 || cleared[set]) {
+	    toKeep.clear ();
+	    return;
+	}
+	long[] keep = toKeep.toSortedArray ();
+	toKeep.clear ();
+	for (int i = setStart[set], end = setStart[set + 1]; i < end; i++) {
+	    if (isMember (i) && Arrays.binarySearch (keep, items[i]) < 0)
+		items[i] |= HIDDEN;
+	}
+	afterDot[set] = null;
+	cleared[set] = true;
+	lowestCleared = Math.min (lowestCleared, set);
+    }
+
+    /** Remove the items from the given set and forward that nothing points to anymore. */
+    private void compact (int fromSet) {
+	int rs = setStart[fromSet];
+	int len = size - rs;
+	boolean[] alive = new boolean[len];
+	IntList work = new IntList ();
+	for (int i = rs; i < size; i++) {
+	    if ((items[i] & HIDDEN) == 0) {
+		alive[i - rs] = true;
+		work.add (i);
+	    }
+	}
+	while (!work.isEmpty ()) {
+	    int i = work.removeLast ();
+	    markAlive (previous[i], rs, alive, work);
+	    if (completed[i] >= 0)
+		markAlive (completed[i], rs, alive, work);
+	}
+
+	int[] newIndex = new int[len];
+	int pos = rs;
+	for (int i = 0; i < len; i++) {
+	    if (alive[i]) {
+		int from = rs + i;
+		newIndex[i] = pos;
+		items[pos] = items[from];
+		previous[pos] = previous[from];
+		completed[pos] = completed[from];
+		pos++;
+	    } else {
+		newIndex[i] = -1;
+	    }
+	}
+	for (int i = rs; i < pos; i++) {
+	    previous[i] = remap (previous[i], rs, newIndex);
+	    if (completed[i] >= 0)
+		completed[i] = remap (completed[i], rs, newIndex);
+	}
+	for (int s = fromSet + 1; s < sets; s++)
+	    setStart[s] = remapStart (setStart[s], rs, newIndex, pos);
+	if (pendingStart != Integer.MAX_VALUE)
+	    pendingStart = remapStart (pendingStart, rs, newIndex, pos);
+	size = pos;
+	for (int s = fromSet; s < sets; s++)
+	    afterDot[s] = null;
+
+	completing = remap (completing, rs, newIndex);
+	multiComplete.remap (rs, newIndex);
+	toComplete.remap (rs, newIndex);
+	lastSet.clear ();
+	int end = Math.min (size, pendingStart);
+	for (int i = setStart[sets - 1]; i < end; i++)
+	    if (isMember (i))
+		lastSet.add (i);
+	seen.clear ();
+	for (int i = pendingStart; i < size; i++)
+	    seen.add (i);
+    }
+
+    private static void markAlive (int i, int rs, boolean[] alive, IntList work) {
+	if (i >= rs && !alive[i - rs]) {
+	    alive[i - rs] = true;
+	    work.add (i);
+	}
+    }
+
+    private static int remap (int i, int rs, int[] newIndex) {
+	if (i < rs)
+	    return i;
+	return newIndex[i - rs];
+    }
+
+    private static int remapStart (int start, int rs, int[] newIndex, int newSize) {
+	for (int i = start - rs; i < newIndex.length; i++)
+	    if (newIndex[i] >= 0)
+		return newIndex[i];
+	return newSize;
+    }
+
+    /** Predict the rules that can start with the next token, or all of them if next is null */
+    private void predict (int current, Token next) {
+	if (cg.hasNullable ())
+	    skipNullable (current);
+	RuleSet rules = predictKey;
+	rules.clear ();
+	for (int i = setStart[current]; i < size; i++) {
+	    long item = items[i];
+	    if (isMember (i) && !dotIsLast (item)) {
+		int symbol = getSymbolAfterDot (item);
+		if (!cg.isToken (symbol))
+		    rules.set (symbol);
+	    }
+	}
+	ListRuleHolder lrh = predictCache.getPredictedRules (rules, next);
+	predicted[current] = lrh;
+	for (Rule r : lrh.getNullableStartRules ()) {
+	    int prefix = cg.getNullablePrefix (r.getId ());
+	    for (int dotPos = 1; dotPos <= prefix; dotPos++) {
+		long item = item (r.getId (), dotPos, current);
+		if (lastSet.find (item) < 0)
+		    addToLastSet (item, NO_PREVIOUS);
+	    }
+	}
+    }
+
+    /** Move the dot over nullable parts directly, same as EarleyParser.skipNullable */
+    private void skipNullable (int current) {
+	for (int i = setStart[current]; i < size; i++) {
+	    long item = items[i];
+	    if (isMember (i) && !dotIsLast (item) && cg.isNullable (getSymbolAfterDot (item))) {
+		long next = advance (item);
+		if (lastSet.find (next) < 0)
+		    addToLastSet (next, i);
+	    }
+	}
+    }
+
+    /** Find the items that can be moved over the given token, store
+     *  the items to move in scanned. May add predicted items to the current set.
+     *  @return true if any items were found
+     */
+    private boolean scan (int currentPosition, Token nextToken) {
+	int before = scanned.size ();
+	int symbol = CompiledGrammar.getSymbol (nextToken);
+	findWithNext (currentPosition, symbol, matches);
+	for (int i = 0, s = matches.size (); i < s; i++)
+	    scanned.add (matches.get (i));
+	ListRuleHolder lrh = predicted[currentPosition];
+	if (lrh != null) {
+	    for (Rule r : lrh.getRulesWithNext (symbol)) {
+		long item = item (r.getId (), 0, currentPosition);
+		int existing = lastSet.find (item);
+		if (existing < 0)
+		    existing = addToLastSet (item, NO_PREVIOUS);
+		scanned.add (existing);
+	    }
+	}
+	return scanned.size () > before;
+    }
+
+    /** Create a new set holding the advanced scanned items */
+    private void addScannedSet (TreeNode tokenValue) {
+	openSet ();
+	tokenValues[sets - 1] = tokenValue;
+	for (int i = 0, s = scanned.size (); i < s; i++) {
+	    int from = scanned.get (i);
+	    long item = advance (items[from]);
+	    if (lastSet.find (item) < 0)
+		addToLastSet (item, from);
+	}
+    }
+
+    private void addPossibleNextTokens (int currentPosition) {
+	// predictions were filtered on the token that failed, we want all of them
+	predict (currentPosition, null);
+	scanned.clear ();
+	TreeNode firstValue = null;
+	for (Token t : getPossibleNextToken (currentPosition)) {
+	    if (scan (currentPosition, t) && firstValue == null)
+		firstValue = new ErrorTreeNode (lexer.getParsePosition ());
+	}
+	if (!scanned.isEmpty ())
+	    addScannedSet (firstValue);
+    }
+
+    private EnumSet<Token> getPossibleNextToken (int set) {
+	EnumSet<Token> et = EnumSet.noneOf (Token.class);
+	ListRuleHolder lrh = predicted[set];
+	if (lrh != null) {
+	    et.addAll (lrh.getStartingTokens ());
+	    for (int i = setStart[set]; i < size; i++) {
+		long item = items[i];
+		if (isMember (i) && !dotIsLast (item)) {
+		    int symbol = getSymbolAfterDot (item);
+		    if (cg.isToken (symbol))
+			et.add (cg.getToken (symbol));
+		}
+	    }
+	}
+	return et;
+    }
+
+    /** Find the members of the given set that have symbol after the dot */
+    private void findWithNext (int set, int symbol, IntList ret) {
+	ret.clear ();
+	int start = setStart[set];
+	int end = set == sets - 1 ? Math.min (size, pendingStart) : setStart[set + 1];
+	if (end - start <= INDEX_THRESHOLD) {
+	    for (int i = start; i < end; i++) {
+		long item = items[i];
+		if (isMember (i) && !dotIsLast (item) && getSymbolAfterDot (item) == symbol)
+		    ret.add (i);
+	    }
+	    return;
+	}
+	long[] index = afterDot[set];
+	if (index == null)
+	    afterDot[set] = index = buildIndex (start, end);
+	long key = (long)symbol << 32;
+	int p = Arrays.binarySearch (index, key);
+	if (p < 0)
+	    p = -p - 1;
+	for (; p < index.length && (int)(index[p] >>> 32) == symbol; p++)
+	    ret.add ((int)index[p]);
+    }
+
+    private long[] buildIndex (int start, int end) {
+	long[] index = new long[end - start];
+	int j = 0;
+	for (int i = start; i < end; i++) {
+	    long item = items[i];
+	    if (isMember (i) && !dotIsLast (item))
+		index[j++] = ((long)getSymbolAfterDot (item) << 32) | i;
+	}
+	index = Arrays.copyOf (index, j);
+	Arrays.sort (index);
+	return index;
+    }
+
+    private SyntaxTree buildTree (long s) {
+	LongStack toVisit = new LongStack ();
+	toVisit.push (s);
+	Deque<TreeNode> parts = new ArrayDeque<> ();
+	Deque<SourceDiagnostics> errors = new ArrayDeque<> (); // since errors come in wrong order
+	buildTreeNode (toVisit, parts, errors);
+	errors.forEach (d -> diagnostics.report (d));
+	if (parts.size () == 0)
+	    return null;
+	if (parts.size () != 1)
+	    addParserError ("Got many parts back: " + parts);
+	TreeNode topNode = parts.poll ();
+	if (topNode == null)
+	    return null;
+	return new SyntaxTree (path, topNode);
+    }
+
+    private void buildTreeNode (LongStack toVisit, Deque<TreeNode> parts, Deque<SourceDiagnostics> errors) {
+	int tokenPos = sets - 2; // skip <end_of_input>
+	while (!toVisit.isEmpty ()) {
+	    long s = toVisit.pop ();
+	    long item = getItem (s);
+	    long previous = getPrevious (s);
+	    if (previous == NO_PREVIOUS) {
+		treeBuilder.build (cg.getRule (ruleId (item)), parts,
+				   tokens.getParsePosition (tokenIndexes[tokenPos]), path, diagnostics);
+		continue;
+	    } else {
+		toVisit.push (previous);
+		int symbol = getSymbolAfterDot (getItem (previous));
+		if (cg.isToken (symbol)) {
+		    TreeNode tn = tokenValues[tokenPos];
+		    if (tn instanceof ErrorTreeNode) {
+			Token missing = cg.getToken (symbol);
+			errors.push (SourceDiagnostics.error (path, tn.getParsePosition (),
+							      "Missing: %s", missing));
+			tn = EarleyParser.getErrorNode (tn.getParsePosition (), missing);
+		    }
+		    if (tn != null)
+			parts.push (tn);
+		    tokenPos--;
+		}
+		if (s >= 0)
+		    pushCompleted ((int)s, toVisit);
+	    }
+	}
+    }
+
+    private void pushCompleted (int i, LongStack toVisit) {
+	if (completed[i] >= 0)
+	    toVisit.push (completed[i]);
+    }
+
+    /* Walks use a long for an item reference, a stored item is its index and
+     * a predicted item, that is never stored, is the item with the HIDDEN bit set.
+     */
+
+    private long getItem (long ref) {
+	if (ref < 0)
+	    return ref & ~HIDDEN;
+	return items[(int)ref] & ~HIDDEN;
+    }
+
+    private long getPrevious (long ref) {
+	if (ref < 0)
+	    return NO_PREVIOUS;
+	int i = (int)ref;
+	int p = previous[i];
+	if (p == PREDICTED)
+	    return HIDDEN | item (ruleId (items[i]), 0, startPos (items[i]));
+	return p;
+    }
+
+    private void openSet () {
+	if (sets == setStart.length) {
+	    int l = sets * 2;
+	    setStart = Arrays.copyOf (setStart, l);
+	    predicted = Arrays.copyOf (predicted, l);
+	    tokenValues = Arrays.copyOf (tokenValues, l);
+	    tokenIndexes = Arrays.copyOf (tokenIndexes, l);
+	    cleared = Arrays.copyOf (cleared, l);
+	    afterDot = Arrays.copyOf (afterDot, l);
+	}
+	setStart[sets++] = size;
+	lastSet.clear ();
+    }
+
+    private int addToLastSet (long item, int prev) {
+	int i = append (item, prev, NO_COMPLETED);
+	lastSet.add (i);
+	afterDot[sets - 1] = null;
+	return i;
+    }
+
+    private int append (long item, int prev, int comp) {
+	if (size == items.length) {
+	    int l = size * 2;
+	    items = Arrays.copyOf (items, l);
+	    previous = Arrays.copyOf (previous, l);
+	    completed = Arrays.copyOf (completed, l);
+	}
+	items[size] = item;
+	previous[size] = prev;
+	completed[size] = comp;
+	if (size == peakSize)
+	    peakSize++;
+	return size++;
+    }
+
+    private boolean isMember (int i) {
+	return i < pendingStart && (items[i] & HIDDEN) == 0;
+    }
+
+    private static long item (int ruleId, int dotPos, int startPos) {
+	return ((long)ruleId << 40) | ((long)dotPos << 32) | (startPos & 0xffffffffL);
+    }
+
+    private static int ruleId (long item) {
+	return (int)(item >>> 40) & 0x7fffff;
+    }
+
+    private static int dotPos (long item) {
+	return (int)(item >>> 32) & 0xff;
+    }
+
+    private static int startPos (long item) {
+	return (int)item;
+    }
+
+    private static long advance (long item) {
+	return item + (1L << 32);
+    }
+
+    private boolean dotIsLast (long item) {
+	return dotPos (item) == cg.getParts (ruleId (item)).length;
+    }
+
+    private int getSymbolAfterDot (long item) {
+	return cg.getPart (ruleId (item), dotPos (item));
+    }
+
+    private boolean isEndState (long item) {
+	return startPos (item) == 0 && dotIsLast (item) &&
+	    cg.getRuleSymbol (ruleId (item)) == goalSymbol;
+    }
+
+    private String setToString (int set) {
+	StringBuilder sb = new StringBuilder ();
+	sb.append ("{tokenIndex: ").append (tokenIndexes[set]);
+	sb.append (", tokenValue: ").append (tokenValues[set]);
+	sb.append (", lrh: ").append (predicted[set]);
+	sb.append (", states: [");
+	int end = set == sets - 1 ? size : setStart[set + 1];
+	boolean first = true;
+	for (int i = setStart[set]; i < end; i++) {
+	    if (isMember (i)) {
+		if (!first)
+		    sb.append (", ");
+		first = false;
+		long item = items[i];
+		sb.append ("{").append (cg.getRule (ruleId (item))).append (", ");
+		sb.append (dotPos (item)).append (", ").append (startPos (item)).append ("}");
+	    }
+	}
+	return sb.append ("]}").toString ();
+    }
+
+    private void addParserError (String error) {
+	diagnostics.report (SourceDiagnostics.error (path, lexer.getParsePosition (), error));
+    }
+
+    /** Open addressed set of item indexes, compared by item value */
+    private class ItemHash {
+	private int[] slots = new int[64]; // item index + 1, 0 for empty
+	private int count;
+
+	public void clear () {
+	    if (count == 0)
+		return;
+	    if (slots.length > 1024)
+		slots = new int[64];
+	    else
+		Arrays.fill (slots, 0);
+	    count = 0;
+	}
+
+	/** Find the index of an item with the same value */
+	public int find (long item) {
+	    item &= ~HIDDEN;
+	    int mask = slots.length - 1;
+	    int slot = hash (item) & mask;
+	    int p;
+	    while ((p = slots[slot]) != 0) {
+		if ((items[p - 1] & ~HIDDEN) == item)
+		    return p - 1;
+		slot = (slot + 1) & mask;
+	    }
+	    return -1;
+	}
+
+	public void add (int index) {
+	    if (++count * 2 > slots.length)
+		grow ();
+	    insert (slots, index);
+	}
+
+	private void insert (int[] table, int index) {
+	    int mask = table.length - 1;
+	    int slot = hash (items[index] & ~HIDDEN) & mask;
+	    while (table[slot] != 0)
+		slot = (slot + 1) & mask;
+	    table[slot] = index + 1;
+	}
+
+	private void grow () {
+	    int[] newSlots = new int[slots.length * 2];
+	    for (int p : slots)
+		if (p != 0)
+		    insert (newSlots, p - 1);
+	    slots = newSlots;
+	}
+
+	private int hash (long item) {
+	    long h = item * 0x9e3779b97f4a7c15L;
+	    return (int)(h ^ (h >>> 32));
+	}
+    }
+
+    /** A growable list of ints that can also be used as a queue */
+    private static class IntList {
+	private int[] data = new int[16];
+	private int head;
+	private int tail;
+
+	public void add (int i) {
+	    if (tail == data.length) {
+		if (head > data.length / 2) {
+		    System.arraycopy (data, head, data, 0, tail - head);
+		    tail -= head;
+		    head = 0;
+		} else {
+		    data = Arrays.copyOf (data, data.length * 2);
+		}
+	    }
+	    data[tail++] = i;
+	}
+
+	public int get (int i) {
+	    return data[head + i];
+	}
+
+	public int size () {
+	    return tail - head;
+	}
+
+	public boolean isEmpty () {
+	    return head == tail;
+	}
+
+	public int removeFirst () {
+	    return data[head++];
+	}
+
+	public int removeLast () {
+	    return data[--tail];
+	}
+
+	public void clear () {
+	    head = tail = 0;
+	}
+
+	/** Move indexes after compact, removed items are replaced with -1 */
+	public void remap (int rs, int[] newIndex) {
+	    for (int i = head; i < tail; i++)
+		if (data[i] >= 0)
+		    data[i] = PackedEarleyParser.remap (data[i], rs, newIndex);
+	}
+    }
+
+    private static class LongStack {
+	private long[] data = new long[16];
+	private int size;
+
+	public void push (long l) {
+	    if (size == data.length)
+		data = Arrays.copyOf (data, size * 2);
+	    data[size++] = l;
+	}
+
+	public long pop () {
+	    return data[--size];
+	}
+
+	public boolean isEmpty () {
+	    return size == 0;
+	}
+
+	public void clear () {
+	    size = 0;
+	}
+
+	public long[] toSortedArray () {
+	    long[] ret = Arrays.copyOf (data, size);
+	    Arrays.sort (ret);
+	    return ret;
+	}
+    }
+}
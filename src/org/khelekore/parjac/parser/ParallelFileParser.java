@@ -0,0 +1,216 @@
+package org.khelekore.parjac.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.khelekore.parjac.CompilerDiagnosticCollector;
+import org.khelekore.parjac.JavaGrammarHelper;
+import org.khelekore.parjac.lexer.Lexer;
+import org.khelekore.parjac.lexer.Token;
+import org.khelekore.parjac.lexer.TokenBuffer;
+import org.khelekore.parjac.tree.ClassBody;
+import org.khelekore.parjac.tree.NormalClassDeclaration;
+import org.khelekore.parjac.tree.SyntaxTree;
+import org.khelekore.parjac.tree.TreeNode;
+import org.khelekore.parjac.tree.ZOMEntry;
+
+/** Parse one large file on many threads.
+ *
+ *  A pass over the tokens finds the largest body of a top level class and
+ *  splits it, after complete members, into chunks of at least chunkTokens tokens.
+ *  The chunks are parsed in parallel with MemberGoal as goal, the rest of the
+ *  file is parsed with an empty class body and the members are then added to
+ *  that body. The tree is the same as from a normal parse.
+ *  If any part fails to parse the whole file is parsed as usual, so errors are
+ *  reported the same way.
+ */
+public class ParallelFileParser {
+    private final Lexer lexer;
+    private final GoalParser parser;
+    private final CompilerDiagnosticCollector diagnostics;
+    private final int chunkTokens;
+
+    // Filled in by the token pass
+    private TokenBuffer tokens;
+    private String className;
+    private int bodyStart; // token index of the '{'
+    private int bodyEnd;   // token index of the '}'
+
+    /** Create a new parser
+     * @param lexer a lexer that has not read any tokens yet
+     * @param parser the parser to use for each part
+     * @param diagnostics where to report problems
+     * @param chunkTokens the smallest number of tokens to parse as one part
+     */
+    public ParallelFileParser (Lexer lexer, GoalParser parser,
+			       CompilerDiagnosticCollector diagnostics, int chunkTokens) {
+	this.lexer = lexer;
+	this.parser = parser;
+	this.diagnostics = diagnostics;
+	this.chunkTokens = chunkTokens;
+    }
+
+    public SyntaxTree parse () {
+	boolean lexOk = readTokens ();
+	int start = tokens.getStartPos (0);
+	int end = tokens.getEndPos (tokens.size () - 1);
+	List<Integer> splits = lexOk && className != null ? findSplits () : null;
+	if (splits == null || splits.size () < 3)
+	    return parseWhole (start, end);
+
+	List<Part> parts = new ArrayList<> ();
+	int[] skip = { tokens.getEndPos (bodyStart), tokens.getStartPos (bodyEnd) };
+	parts.add (new Part (lexer.getSkippingLexer (start, end, skip), "Goal"));
+	for (int i = 1; i < splits.size (); i++) {
+	    int first = splits.get (i - 1);
+	    int last = splits.get (i) - 1;
+	    Lexer l = lexer.getPartLexer (tokens.getStartPos (first), tokens.getEndPos (last));
+	    parts.add (new Part (l, JavaGrammarHelper.MEMBER_GOAL));
+	}
+	parts.parallelStream ().forEach (Part::parse);
+	if (parts.stream ().anyMatch (p -> p.tree == null || p.diagnostics.hasError ()))
+	    return parseWhole (start, end);
+
+	parts.forEach (p -> p.diagnostics.getDiagnostics ().forEach (diagnostics::report));
+	SyntaxTree tree = parts.get (0).tree;
+	ClassBody body = findBody (tree);
+	if (body == null)
+	    return parseWhole (start, end);
+	for (int i = 1; i < parts.size (); i++) {
+	    ZOMEntry members = (ZOMEntry)parts.get (i).tree.getRoot ();
+	    body.getDeclarations ().addAll (members.get ());
+	}
+	return tree;
+    }
+
+    private SyntaxTree parseWhole (int start, int end) {
+	return parser.parse (lexer.getPartLexer (start, end), "Goal", diagnostics);
+    }
+
+    /** Read all the tokens and find the largest top level class body
+     * @return false if the lexer found errors
+     */
+    private boolean readTokens () {
+	int depth = 0;
+	int parens = 0;
+	int classToken = -1; // a top level 'class'
+	String name = null;
+	int openBody = -1;   // the '{' of the top level class we are in
+	boolean ok = true;
+	while (lexer.hasMoreTokens ()) {
+	    Token t = lexer.nextNonWhitespaceToken ();
+	    int i = lexer.getTokens ().size () - 1;
+	    switch (t) {
+	    case ERROR:
+		ok = false;
+		break;
+	    case CLASS:
+		if (depth == 0 && parens == 0)
+		    classToken = i;
+		break;
+	    case IDENTIFIER:
+		if (classToken == i - 1)
+		    name = lexer.getIdentifier ();
+		break;
+	    case LEFT_PARENTHESIS:
+		parens++;
+		break;
+	    case RIGHT_PARENTHESIS:
+		parens--;
+		break;
+	    case LEFT_CURLY:
+		if (depth++ == 0 && parens == 0) {
+		    openBody = classToken >= 0 ? i : -1;
+		    classToken = -1;
+		}
+		break;
+	    case RIGHT_CURLY:
+		if (--depth == 0 && openBody >= 0) {
+		    if (className == null || i - openBody > bodyEnd - bodyStart) {
+			className = name;
+			bodyStart = openBody;
+			bodyEnd = i;
+		    }
+		    openBody = -1;
+		}
+		break;
+	    default:
+	    }
+	}
+	tokens = lexer.getTokens ();
+	return ok && depth == 0 && parens == 0;
+    }
+
+    /** Find the token indexes where the chunks of the class body start,
+     *  the last entry is the index of the closing '}'.
+     */
+    private List<Integer> findSplits () {
+	List<Integer> ret = new ArrayList<> ();
+	int chunkStart = bodyStart + 1;
+	ret.add (chunkStart);
+	int depth = 1;
+	int parens = 0;
+	for (int i = chunkStart; i < bodyEnd; i++) {
+	    Token t = tokens.getToken (i);
+	    boolean memberEnd = false;
+	    switch (t) {
+	    case LEFT_PARENTHESIS:
+		parens++;
+		break;
+	    case RIGHT_PARENTHESIS:
+		parens--;
+		break;
+	    case LEFT_CURLY:
+		depth++;
+		break;
+	    case RIGHT_CURLY:
+		// a '}' may end an initializer that is followed by more of the field
+		memberEnd = --depth == 1 && parens == 0 && !continuesField (tokens.getToken (i + 1));
+		break;
+	    case SEMICOLON:
+		memberEnd = depth == 1 && parens == 0;
+		break;
+	    default:
+	    }
+	    if (memberEnd && i + 1 - chunkStart >= chunkTokens && i + 1 < bodyEnd) {
+		chunkStart = i + 1;
+		ret.add (chunkStart);
+	    }
+	}
+	ret.add (bodyEnd);
+	return ret;
+    }
+
+    /** Check if a '}' at member level followed by the given token is not the end of the member */
+    static boolean continuesField (Token next) {
+	return next == Token.SEMICOLON || next == Token.COMMA || next == Token.DOT ||
+	    next == Token.LEFT_BRACKET;
+    }
+
+    private ClassBody findBody (SyntaxTree tree) {
+	for (TreeNode tn : tree.getCompilationUnit ().getTypes ()) {
+	    if (tn instanceof NormalClassDeclaration) {
+		NormalClassDeclaration ncd = (NormalClassDeclaration)tn;
+		if (ncd.getId ().equals (className) && ncd.getBody ().getDeclarations ().isEmpty ())
+		    return ncd.getBody ();
+	    }
+	}
+	return null;
+    }
+
+    private class Part {
+	private final Lexer lexer;
+	private final String goal;
+	private final CompilerDiagnosticCollector diagnostics = new CompilerDiagnosticCollector ();
+	private SyntaxTree tree;
+
+	public Part (Lexer lexer, String goal) {
+	    this.lexer = lexer;
+	    this.goal = goal;
+	}
+
+	public void parse () {
+	    tree = parser.parse (lexer, goal, diagnostics);
+	}
+    }
+}
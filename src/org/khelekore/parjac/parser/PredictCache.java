@@ -1,46 +1,113 @@
 package org.khelekore.parjac.parser;
 
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Map;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+import org.khelekore.parjac.grammar.CompiledGrammar;
 import org.khelekore.parjac.grammar.Grammar;
 import org.khelekore.parjac.grammar.Rule;
-import org.khelekore.parjac.grammar.RulePart;
-import org.khelekore.parjac.grammar.SimplePart;
+import org.khelekore.parjac.lexer.Token;
 
+/** The predicted rules for sets of rule names.
+ *  The predictions include the rules for the parts that follow nullable parts.
+ *  Predictions can be filtered on the next token, using the first sets of the rules.
+ *  One cache is shared by all the parser threads. Lookups of already seen
+ *  rule sets do not lock and the rules for a new set are only calculated once.
+ */
 public class PredictCache {
     private final Grammar grammar;
-    private final Map<Object, ListRuleHolder> cache;
+    private final CompiledGrammar cg;
+    // Predicted rule ids for each single rule name, indexed by symbol
+    private final int[][] predictSets;
+    // Predictions for each single rule name, indexed by symbol
+    private final ListRuleHolder[] predictions;
+    // Predictions for sets of rule names, indexed by the next token.
+    // The last slot holds the predictions that are not filtered on the next token.
+    private final ConcurrentHashMap<RuleSet, AtomicReferenceArray<ListRuleHolder>> cache;
+    private final int unfiltered;
 
     public PredictCache (Grammar grammar) {
 	this.grammar = grammar;
-	cache = Collections.synchronizedMap (calculatePredictSets ());
+	cg = grammar.getCompiledGrammar ();
+	int[][] ps = cg.getPredictSets ();
+	predictSets = ps != null ? ps : calculatePredictSets ();
+	predictions = new ListRuleHolder[predictSets.length];
+	for (int i = 0; i < predictSets.length; i++) {
+	    if (predictSets[i] != null) {
+		List<Rule> rules = new ArrayList<> (predictSets[i].length);
+		for (int id : predictSets[i])
+		    rules.add (cg.getRule (id));
+		predictions[i] = new ListRuleHolder (cg, rules);
+	    }
+	}
+	cache = new ConcurrentHashMap<> ();
+	unfiltered = cg.getNumberOfTokens ();
+    }
+
+    public CompiledGrammar getCompiledGrammar () {
+	return cg;
+    }
+
+    /** Get the predicted rule ids for each symbol, null for symbols without predictions */
+    public int[][] getPredictSets () {
+	return predictSets;
     }
 
-    public ListRuleHolder getPredictedRules (Set<String> rules) {
-	ListRuleHolder predicted = cache.get (rules);
+    /** Get a new, empty, rule set that can be used for lookups in this cache */
+    RuleSet createRuleSet () {
+	return new RuleSet (cg.getNumberOfSymbols ());
+    }
+
+    /** Get the predicted rules for the given rule name symbols.
+     *  The given set is only used for the lookup, it is copied if it needs to be stored.
+     */
+    ListRuleHolder getPredictedRules (RuleSet rules) {
+	return getPredictedRules (rules, null);
+    }
+
+    /** Get the predicted rules for the given rule name symbols that can start with
+     *  the next token. If next is null all the predicted rules are returned.
+     */
+    ListRuleHolder getPredictedRules (RuleSet rules, Token next) {
+	AtomicReferenceArray<ListRuleHolder> byToken = cache.get (rules);
+	if (byToken == null)
+	    byToken = cache.computeIfAbsent (rules.copy (), r -> new AtomicReferenceArray<> (unfiltered + 1));
+	int slot = next == null ? unfiltered : next.ordinal ();
+	ListRuleHolder predicted = byToken.get (slot);
 	if (predicted != null)
 	    return predicted;
+	if (next == null)
+	    predicted = predict (rules);
+	else
+	    predicted = getPredictedRules (rules, null).filter (next);
+	// Someone else may have done the same calculation, use the first one
+	if (!byToken.compareAndSet (slot, null, predicted))
+	    predicted = byToken.get (slot);
+	return predicted;
+    }
 
-	predicted = new ListRuleHolder (Collections.emptySet ());
-	for (String rule : rules) {
-	    ListRuleHolder pr = cache.get (rule);
+    private ListRuleHolder predict (RuleSet rules) {
+	ListRuleHolder predicted = new ListRuleHolder (cg, Collections.emptySet ());
+	for (int rule = rules.nextSymbol (0); rule >= 0; rule = rules.nextSymbol (rule + 1)) {
+	    ListRuleHolder pr = predictions[rule];
 	    if (pr != null)
 		predicted.add (pr);
 	}
-	cache.put (rules, predicted);
 	return predicted;
     }
 
-    private Map<Object, ListRuleHolder> calculatePredictSets () {
-	Map<String, Set<Rule>> ruleToPredictRules = new HashMap<> ();
+    private int[][] calculatePredictSets () {
+	int numSymbols = cg.getNumberOfSymbols ();
+	@SuppressWarnings ("unchecked") Set<Rule>[] ruleToPredictRules = new Set[numSymbols];
 	for (String rulename : grammar.getUniqueRuleNames ()) {
 	    Set<Rule> rules = new HashSet<> ();
 	    rules.addAll (grammar.getRules (rulename).getRules ());
-	    ruleToPredictRules.put (rulename, rules);
+	    ruleToPredictRules[cg.getRuleSymbol (rulename)] = rules;
 	}
 
 	boolean thereWasChange;
@@ -49,21 +116,24 @@ public class PredictCache {
 	    for (Rule rule : grammar.getRules ()) {
 		if (rule.isEmpty ())
 		    continue;
-		String rulename = rule.getName ();
-		Set<Rule> predictions = ruleToPredictRules.get (rulename);
-		SimplePart sp = rule.getRulePart (0);
-		if (sp instanceof RulePart) {
-		    String predictRule = (String)sp.getId ();
-		    if (predictRule != rulename) {
-			thereWasChange |= predictions.addAll (grammar.getRules (predictRule).getRules ());
-			thereWasChange |= predictions.addAll (ruleToPredictRules.get (predictRule));
+		int rulename = cg.getRuleSymbol (rule.getId ());
+		Set<Rule> predictions = ruleToPredictRules[rulename];
+		// The parser moves over nullable parts directly so predict what follows them as well
+		int[] parts = cg.getParts (rule.getId ());
+		int last = Math.min (cg.getNullablePrefix (rule.getId ()), parts.length - 1);
+		for (int i = 0; i <= last; i++) {
+		    int predictRule = parts[i];
+		    if (!cg.isToken (predictRule) && predictRule != rulename) {
+			thereWasChange |= predictions.addAll (grammar.getRules (cg.getRuleName (predictRule)).getRules ());
+			thereWasChange |= predictions.addAll (ruleToPredictRules[predictRule]);
 		    }
 		}
 	    }
 	} while (thereWasChange);
-	Map<Object, ListRuleHolder> ret = new HashMap<> ();
-	for (Map.Entry<String, Set<Rule>> me : ruleToPredictRules.entrySet ())
-	    ret.put (me.getKey (), new ListRuleHolder (me.getValue ()));
+	int[][] ret = new int[numSymbols][];
+	for (int i = 0; i < numSymbols; i++)
+	    if (ruleToPredictRules[i] != null)
+		ret[i] = ruleToPredictRules[i].stream ().mapToInt (Rule::getId).sorted ().toArray ();
 	return ret;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,88 @@
+package org.khelekore.parjac.parser;
+
+import java.util.Arrays;
+
+/** A set of rule name symbols, stored as a bitset.
+ *  A parser keeps one mutable instance that it fills for each earley set
+ *  and uses for lookups, the PredictCache stores immutable copies as keys.
+ */
+class RuleSet {
+    private long[] words;
+    private int hc;
+
+    public RuleSet (int numSymbols) {
+	words = new long[(numSymbols + 63) >>> 6];
+    }
+
+    private RuleSet (long[] words, int hc) {
+	this.words = words;
+	this.hc = hc;
+    }
+
+    public void clear () {
+	Arrays.fill (words, 0);
+	hc = 0;
+    }
+
+    public void set (int symbol) {
+	words[symbol >>> 6] |= 1L << symbol;
+	hc = 0;
+    }
+
+    public boolean isEmpty () {
+	for (long w : words)
+	    if (w != 0)
+		return false;
+	return true;
+    }
+
+    /** Get the next symbol that is set, starting from the given symbol.
+     * @return the next set symbol or -1 if there are no more symbols
+     */
+    public int nextSymbol (int from) {
+	int i = from >>> 6;
+	if (i >= words.length)
+	    return -1;
+	long w = words[i] & (-1L << from);
+	while (true) {
+	    if (w != 0)
+		return (i << 6) + Long.numberOfTrailingZeros (w);
+	    if (++i == words.length)
+		return -1;
+	    w = words[i];
+	}
+    }
+
+    /** Get an immutable copy that can be used as a key */
+    public RuleSet copy () {
+	return new RuleSet (words.clone (), hashCode ());
+    }
+
+    @Override public int hashCode () {
+	if (hc == 0) {
+	    int h = Arrays.hashCode (words);
+	    hc = h == 0 ? 1 : h;
+	}
+	return hc;
+    }
+
+    @Override public boolean equals (Object o) {
+	if (o == this)
+	    return true;
+	if (o == null || o.getClass () != getClass ())
+	    return false;
+	RuleSet r = (RuleSet)o;
+	return hashCode () == r.hashCode () && Arrays.equals (words, r.words);
+    }
+
+    @Override public String toString () {
+	StringBuilder sb = new StringBuilder ();
+	sb.append (getClass ().getSimpleName ()).append ("{");
+	for (int s = nextSymbol (0); s >= 0; s = nextSymbol (s + 1)) {
+	    if (sb.charAt (sb.length () - 1) != '{')
+		sb.append (", ");
+	    sb.append (s);
+	}
+	return sb.append ("}").toString ();
+    }
+}
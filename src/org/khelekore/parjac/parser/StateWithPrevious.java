@@ -0,0 +1,59 @@
+package org.khelekore.parjac.parser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.khelekore.parjac.grammar.Rule;
+
+class StateWithPrevious extends State {
+    private State previousState;
+
+    /** Keeping this as a simple pointer saves quite a lot of memory for large inputs.
+     *  It is mostly null or single state, it should only reach a list for strange input.
+     *
+     *  Goes from null, to direct pointer to a real List.
+     *  May also be a LeoItem.Path that is expanded when needed.
+     */
+    private Object completed;
+
+    public StateWithPrevious (Rule r, int dotPos, int startPos, State previousState, Object completed) {
+	super (r, dotPos, startPos);
+	this.previousState = previousState;
+	this.completed = completed;
+    }
+
+    @Override public State getPrevious () {
+	return previousState;
+    }
+
+    @Override @SuppressWarnings("unchecked") public void addCompleted (State c) {
+	expandLeoPath ();
+	if (completed == null) {
+	    completed = c;
+	} else {
+	    List<State> ls;
+	    if (completed instanceof State) {
+		ls = new ArrayList<> ();
+		ls.add ((State)completed);
+	    } else {
+		ls = (List<State>)completed;
+	    }
+	    ls.add (c);
+	}
+    }
+
+    @Override @SuppressWarnings("unchecked") public List<State> getCompleted () {
+	expandLeoPath ();
+	if (completed == null)
+	    return Collections.emptyList ();
+	if (completed instanceof State)
+	    return Collections.singletonList ((State)completed);
+	return (List<State>)completed;
+    }
+
+    private void expandLeoPath () {
+	if (completed instanceof LeoItem.Path)
+	    completed = ((LeoItem.Path)completed).expand ();
+    }
+}
@@ -0,0 +1,100 @@
+package org.khelekore.parjac.parser;
+
+/** A small open addressed map from grammar symbols to values.
+ *  Symbols are non negative ints so no boxing is needed.
+ */
+class SymbolMap<T> {
+    private int[] keys;     // symbol + 1, 0 means empty slot
+    private Object[] values;
+    private int size;
+
+    public SymbolMap () {
+	this (4);
+    }
+
+    public SymbolMap (int expectedSize) {
+	int cap = Integer.highestOneBit (Math.max (2, expectedSize) * 2 - 1) * 2;
+	keys = new int[cap];
+	values = new Object[cap];
+    }
+
+    @SuppressWarnings ("unchecked") public T get (int symbol) {
+	int mask = keys.length - 1;
+	int slot = hash (symbol) & mask;
+	int k;
+	int key = symbol + 1;
+	while ((k = keys[slot]) != 0) {
+	    if (k == key)
+		return (T)values[slot];
+	    slot = (slot + 1) & mask;
+	}
+	return null;
+    }
+
+    public void put (int symbol, T value) {
+	int mask = keys.length - 1;
+	int slot = hash (symbol) & mask;
+	int k;
+	int key = symbol + 1;
+	while ((k = keys[slot]) != 0) {
+	    if (k == key) {
+		values[slot] = value;
+		return;
+	    }
+	    slot = (slot + 1) & mask;
+	}
+	keys[slot] = key;
+	values[slot] = value;
+	if (++size * 2 > keys.length)
+	    grow ();
+    }
+
+    public int size () {
+	return size;
+    }
+
+    /** Get all the symbols in this map, in no particular order */
+    public int[] getKeys () {
+	int[] ret = new int[size];
+	int j = 0;
+	for (int k : keys)
+	    if (k != 0)
+		ret[j++] = k - 1;
+	return ret;
+    }
+
+    private void grow () {
+	int[] oldKeys = keys;
+	Object[] oldValues = values;
+	keys = new int[oldKeys.length * 2];
+	values = new Object[oldKeys.length * 2];
+	int mask = keys.length - 1;
+	for (int i = 0; i < oldKeys.length; i++) {
+	    if (oldKeys[i] != 0) {
+		int slot = hash (oldKeys[i] - 1) & mask;
+		while (keys[slot] != 0)
+		    slot = (slot + 1) & mask;
+		keys[slot] = oldKeys[i];
+		values[slot] = oldValues[i];
+	    }
+	}
+    }
+
+    private static int hash (int symbol) {
+	int h = symbol * 0x9e3779b9;
+	return h ^ (h >>> 16);
+    }
+
+    @Override public String toString () {
+	StringBuilder sb = new StringBuilder ();
+	sb.append (getClass ().getSimpleName ()).append ("{");
+	for (int i = 0; i < keys.length; i++) {
+	    if (keys[i] != 0) {
+		if (sb.length () > getClass ().getSimpleName ().length () + 1)
+		    sb.append (", ");
+		sb.append (keys[i] - 1).append (": ").append (values[i]);
+	    }
+	}
+	return sb.append ("}").toString ();
+    }
+}
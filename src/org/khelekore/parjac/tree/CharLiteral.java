@@ -1,5 +1,6 @@
 package org.khelekore.parjac.tree;
 
+import org.khelekore.parjac.lexer.LiteralSpan;
 import org.khelekore.parjac.lexer.ParsePosition;
 
 public class CharLiteral extends PositionNode implements LiteralValue, NumericValue {
@@ -10,12 +11,18 @@ public class CharLiteral extends PositionNode implements LiteralValue, NumericVa
 	this.value = value;
     }
 
+    /** Decode the value at once, a char is smaller than the span */
+    public CharLiteral (LiteralSpan span, ParsePosition pos) {
+	super (pos);
+	this.value = span.getCharValue ();
+    }
+
     public char get () {
 	return value;
     }
 
     @Override public String toString () {
-	return getClass ().getSimpleName () + "{" + value + "}";
+	return getClass ().getSimpleName () + "{" + get () + "}";
     }
 
     @Override public void visit (TreeVisitor visitor) {
@@ -23,7 +30,7 @@ public class CharLiteral extends PositionNode implements LiteralValue, NumericVa
     }
 
     @Override public IntLiteral getNegated () {
-	return new IntLiteral (-value, getParsePosition ());
+	return new IntLiteral (-get (), getParsePosition ());
     }
 
     @Override public ExpressionType getExpressionType () {
@@ -15,7 +15,7 @@ import org.khelekore.parjac.lexer.Token;
 public class ConstructorDeclaration extends FlaggedTypeBase {
     private final ConstructorDeclarator declarator;
     private final Throws throwsClause;
-    private final ConstructorBody body;
+    private ConstructorBody body;
 
     public ConstructorDeclaration (Rule r, Deque<TreeNode> parts, ParsePosition ppos,
 				   Path path, CompilerDiagnosticCollector diagnostics) {
@@ -70,6 +70,15 @@ public class ConstructorDeclaration extends FlaggedTypeBase {
 	return throwsClause;
     }
 
+    public ConstructorBody getBody () {
+	return body;
+    }
+
+    /** Replace the body, used when the body is parsed after the rest of the file */
+    public void setBody (ConstructorBody body) {
+	this.body = body;
+    }
+
     public String getDescription () {
 	StringBuilder sb = new StringBuilder ();
 	sb.append ("(");
@@ -1,5 +1,7 @@
 package org.khelekore.parjac.tree;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.List;
 
@@ -26,4 +28,10 @@ public class EnumBodyDeclarations extends PositionNode {
 	if (classBodyDeclarations != null)
 	    classBodyDeclarations.forEach (d -> d.visit (visitor));
     }
+
+    @Override public Collection<? extends TreeNode> getChildNodes () {
+	if (classBodyDeclarations != null)
+	    return classBodyDeclarations;
+	return Collections.emptyList ();
+    }
 }
\ No newline at end of file
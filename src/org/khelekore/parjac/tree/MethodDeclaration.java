@@ -11,7 +11,7 @@ import org.khelekore.parjac.lexer.ParsePosition;
 
 public class MethodDeclaration extends FlaggedTypeBase {
     private final MethodHeader header;
-    private final MethodBody body;
+    private MethodBody body;
 
     public MethodDeclaration (Rule r, Deque<TreeNode> parts, ParsePosition pos,
 			      Path path, CompilerDiagnosticCollector diagnostics) {
@@ -59,6 +59,11 @@ public class MethodDeclaration extends FlaggedTypeBase {
 	return body;
     }
 
+    /** Replace the body, used when the body is parsed after the rest of the file */
+    public void setBody (MethodBody body) {
+	this.body = body;
+    }
+
     @Override public ExpressionType getExpressionType () {
 	return getResult ().getExpressionType ();
     }
@@ -1,21 +1,34 @@
 package org.khelekore.parjac.tree;
 
+import org.khelekore.parjac.lexer.LiteralSpan;
 import org.khelekore.parjac.lexer.ParsePosition;
 
 public class StringLiteral extends PositionNode {
-    private final String value;
+    // The source of the value, null if the value was given
+    private final LiteralSpan span;
+    // Decoded on first use, get may be called from several threads
+    private volatile String value;
 
     public StringLiteral (String value, ParsePosition pos) {
 	super (pos);
+	this.span = null;
 	this.value = value;
     }
 
+    public StringLiteral (LiteralSpan span, ParsePosition pos) {
+	super (pos);
+	this.span = span;
+    }
+
     public String get () {
-	return value;
+	String v = value;
+	if (v == null)
+	    value = v = span.getValue ();
+	return v;
     }
 
     @Override public String toString () {
-	return getClass ().getSimpleName () + "{" + value + "}";
+	return getClass ().getSimpleName () + "{" + get () + "}";
     }
 
     @Override public void visit (TreeVisitor visitor) {
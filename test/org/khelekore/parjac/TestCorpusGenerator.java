@@ -0,0 +1,78 @@
+package org.khelekore.parjac;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.khelekore.parjac.batch.CorpusGenerator;
+import org.khelekore.parjac.grammar.Grammar;
+import org.khelekore.parjac.parser.TestParseHelper;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class TestCorpusGenerator {
+    private Grammar g;
+
+    @BeforeClass
+    public void beforeClass () throws IOException {
+	g = TestParseHelper.getJavaGrammarFromFile ("CompilationUnit", false);
+    }
+
+    @Test
+    public void testGeneratedFilesCompile () throws IOException {
+	CorpusGenerator cg = new CorpusGenerator (3, 4, 3, 3);
+	Map<Path, String> files = generate (cg);
+	assert files.size () == cg.getNumberOfFiles () : "Wrong number of files: " + files.size ();
+	assert files.containsKey (Paths.get ("p2", "C2_3.java"));
+
+	Path dir = Files.createTempDirectory ("parjac_corpus");
+	try {
+	    cg.write (dir);
+	    SourceProvider sp =
+		new FileSourceProvider (Collections.singletonList (dir), StandardCharsets.UTF_8);
+	    CompilerDiagnosticCollector diagnostics = new CompilerDiagnosticCollector ();
+	    CompilationArguments settings =
+		new CompilationArguments (sp, new MemoryBytecodeWriter (), Collections.emptyList (),
+					  new CompilationArguments.Options ());
+	    new Compiler (diagnostics, g, settings).compile ();
+	    assert !diagnostics.hasError () :
+		"Generated files failed to compile: " + diagnostics.getDiagnostics ().findFirst ().get ();
+	} finally {
+	    try (Stream<Path> s = Files.walk (dir)) {
+		s.sorted (Comparator.reverseOrder ()).forEach (p -> p.toFile ().delete ());
+	    }
+	}
+    }
+
+    @Test
+    public void testSamePackage () throws IOException {
+	Map<Path, String> files = generate (new CorpusGenerator (1, 2, 2, 2));
+	assert files.size () == 2;
+	String s = files.get (Paths.get ("p0", "C0_0.java"));
+	assert s.contains ("C0_1.method0") : "Missing call to class in same package";
+	assert !s.contains ("import p0") : "Imported own package";
+    }
+
+    @Test
+    public void testRepeatable () throws IOException {
+	assert generate (new CorpusGenerator (2, 2, 2, 3)).equals (generate (new CorpusGenerator (2, 2, 2, 3)));
+    }
+
+    @Test (expectedExceptions = IllegalArgumentException.class)
+    public void testNoPackages () {
+	new CorpusGenerator (0, 1, 1, 1);
+    }
+
+    private Map<Path, String> generate (CorpusGenerator cg) throws IOException {
+	Map<Path, String> files = new HashMap<> ();
+	cg.generate (files::put);
+	return files;
+    }
+}
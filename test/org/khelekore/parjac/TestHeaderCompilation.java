@@ -0,0 +1,106 @@
+package org.khelekore.parjac;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import org.khelekore.parjac.grammar.Grammar;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class TestHeaderCompilation {
+    private Grammar g;
+
+    @BeforeClass
+    public void beforeClass () throws IOException {
+	g = JavaGrammarHelper.getValidatedJavaGrammar (false);
+    }
+
+    @Test
+    public void testMethodsThrow () throws ReflectiveOperationException {
+	Class<?> c = getClass ("public class Foo {\n" +
+			       "    public Foo () { }\n" +
+			       "    public static int foo (int a) { return a + 1; }\n" +
+			       "    public void bar () throws Exception { }\n" +
+			       "}", "Foo");
+	Method m = c.getMethod ("foo", int.class);
+	assert m.getReturnType () == int.class : "Wrong return type: " + m.getReturnType ();
+	assertThrowsStub (() -> m.invoke (null, 1));
+	Method bar = c.getMethod ("bar");
+	assert bar.getExceptionTypes ().length == 1 : "Wrong exceptions: " + bar;
+	Constructor<?> ctr = c.getConstructor ();
+	assertThrowsStub (() -> ctr.newInstance ());
+    }
+
+    @Test
+    public void testConstants () throws ReflectiveOperationException {
+	Class<?> c = getClass ("public class Foo {\n" +
+			       "    public static final int I = 17;\n" +
+			       "    public static final long L = 3;\n" +
+			       "    public static final double D = 2.5;\n" +
+			       "    public static final boolean B = true;\n" +
+			       "    public static final char C = 'x';\n" +
+			       "    public static final String S = \"hello\";\n" +
+			       "    public static int notConstant = 4;\n" +
+			       "    public int field = 5;\n" +
+			       "}", "Foo");
+	assert c.getField ("I").get (null).equals (17);
+	assert c.getField ("L").get (null).equals (3L);
+	assert c.getField ("D").get (null).equals (2.5);
+	assert c.getField ("B").get (null).equals (true);
+	assert c.getField ("C").get (null).equals ('x');
+	assert c.getField ("S").get (null).equals ("hello");
+	assert c.getField ("notConstant").get (null).equals (0) : "Field was initialized";
+	assert c.getField ("field").getType () == int.class;
+    }
+
+    @Test
+    public void testBodiesNotChecked () throws ReflectiveOperationException {
+	// the return type is wrong, but only the signature is used
+	Class<?> c = getClass ("public class Foo { public static int foo () { return \"a\"; } }", "Foo");
+	assert c.getMethod ("foo").getReturnType () == int.class;
+    }
+
+    private interface Call {
+	void call () throws ReflectiveOperationException;
+    }
+
+    private void assertThrowsStub (Call c) throws ReflectiveOperationException {
+	try {
+	    c.call ();
+	    assert false : "Expected an exception";
+	} catch (InvocationTargetException e) {
+	    assert e.getCause () instanceof UnsupportedOperationException : "Wrong exception: " + e.getCause ();
+	}
+    }
+
+    private Class<?> getClass (String s, String className) throws ReflectiveOperationException {
+	CompilerDiagnosticCollector diagnostics = new CompilerDiagnosticCollector ();
+	SourceProvider sp = new StringSourceProvider (Paths.get (className + ".java"), s);
+	MemoryBytecodeWriter bw = new MemoryBytecodeWriter ();
+	List<Path> classPathEntries = Collections.emptyList ();
+	CompilationArguments settings =
+	    new CompilationArguments (sp, bw, classPathEntries,
+				      new CompilationArguments.Options ().headerOnly (true));
+	Compiler c = new Compiler (diagnostics, g, settings);
+	c.compile ();
+	if (diagnostics.hasError ()) {
+	    diagnostics.getDiagnostics ().
+		forEach (d -> System.err.println (d.getMessage (Locale.getDefault ())));
+	    assert false : "Compilation generated errors";
+	}
+	ClassLoader cl = new ClassLoader () {
+	    protected Class<?> findClass (String name) throws ClassNotFoundException {
+		byte[] b = bw.getBytecode (Paths.get (name + ".class"));
+		return defineClass (name, b, 0, b.length);
+	    }
+	};
+	return cl.loadClass (className);
+    }
+}
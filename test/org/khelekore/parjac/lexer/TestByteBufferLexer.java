@@ -0,0 +1,167 @@
+package org.khelekore.parjac.lexer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.testng.annotations.Test;
+
+/** The byte lexer has to give the same tokens as the char lexer */
+public class TestByteBufferLexer {
+
+    @Test
+    public void testSources () throws IOException {
+	List<Path> files;
+	try (Stream<Path> s = Stream.concat (Files.walk (Paths.get ("src")), Files.walk (Paths.get ("test")))) {
+	    files = s.filter (p -> p.toString ().endsWith (".java")).collect (Collectors.toList ());
+	}
+	assert !files.isEmpty () : "Found no source files";
+	for (Path p : files) {
+	    byte[] bytes = Files.readAllBytes (p);
+	    String s = new String (bytes, StandardCharsets.UTF_8);
+	    compare (p.toString (), s, bytes);
+	}
+    }
+
+    @Test
+    public void testAscii () {
+	compare ("class A { int i = 0x7fff_ffff; long l = 12L; double d = 1.5e3; float f = .5f; }");
+	compare ("String s = \"a\\tb\\\"c\\u0041\\101\"; char c = '\\n'; char d = '\\u0041';");
+	compare ("a.b...c::d->e >>>= f <<= g /* block\n comment */ // line\n x");
+	compare ("\\u0061bc \\uuu0062 if\r\nwhile\rfor");
+	compare ("int i = 2147483648; int j = 09; \"unterminated\n 'x");
+	compare ("@interface A {}\u001a");
+    }
+
+    @Test
+    public void testNonAscii () {
+	compare ("int café = 1; String åäö = \"€\";");
+	compare ("// 😀 smile\nString s = \"😀\"; char c = '€';");
+	compare ("/* é€😀 */ int π = 3;");
+	compare ("String s = \"é\\u00e9\"; int é\\u00e9 = 1;");
+	compare ("char c = '😀'; €");
+	compare ("é.é é...");
+	compare ("😀 x\n  €€ 😀😀 y\n\u00e9 é z");
+    }
+
+    @Test
+    public void testTrivia () {
+	// long comments and whitespace at every alignment so that we hit all parts of a word
+	String text = "    \t      ab\u00e9c * / **\r\n *  \r  xx\n";
+	for (int i = 0; i < 16; i++) {
+	    String pad = "                ".substring (i);
+	    compare (pad + "/*" + text + text + "*/" + pad + "x");
+	    compare (pad + "//" + text + pad + "x");
+	    compare ("//" + pad + "\r\n" + pad + "x\t/*" + pad + "é*/");
+	    compare (pad + "/*" + text);
+	}
+    }
+
+    @Test
+    public void testLineNumbers () {
+	String s = "class é {\n  int €;\n  /* 😀\n */ int x;\n}";
+	ByteBufferLexer bl = new ByteBufferLexer (ByteBuffer.wrap (s.getBytes (StandardCharsets.UTF_8)));
+	CharBufferLexer cl = new CharBufferLexer (CharBuffer.wrap (s));
+	while (cl.hasMoreTokens ()) {
+	    Token t = cl.nextNonWhitespaceToken ();
+	    assert bl.nextNonWhitespaceToken () == t;
+	    assert bl.getLineNumber () == cl.getLineNumber () :
+		"Wrong line for: " + t + ", " + bl.getLineNumber () + " != " + cl.getLineNumber ();
+	    assert bl.getCurrentLine ().equals (cl.getCurrentLine ()) :
+		"Wrong current line: " + bl.getCurrentLine () + " != " + cl.getCurrentLine ();
+	}
+    }
+
+    @Test
+    public void testMalformed () {
+	testMalformed (new byte[] { 'a', ' ', (byte)0xff, ' ', 'b' });
+	testMalformed (new byte[] { 'a', ' ', (byte)0xc3 });
+	testMalformed (new byte[] { 'a', ' ', (byte)0xe2, (byte)0x82, ' ', 'b' });
+	// overlong encoding of '/'
+	testMalformed (new byte[] { 'a', ' ', (byte)0xc0, (byte)0xaf, 'b' });
+	// encoded surrogate
+	testMalformed (new byte[] { 'a', ' ', (byte)0xed, (byte)0xa0, (byte)0x80, 'b' });
+    }
+
+    @Test
+    public void testMalformedInComment () {
+	byte[] bytes = { '/', '/', (byte)0xff, '\n', 'a', ' ', '/', '*', (byte)0xc3, '*', '/', ' ', 'b' };
+	ByteBufferLexer bl = new ByteBufferLexer (ByteBuffer.wrap (bytes));
+	assert bl.nextNonWhitespaceToken () == Token.IDENTIFIER;
+	assert bl.getIdentifier ().equals ("a");
+	assert bl.nextNonWhitespaceToken () == Token.IDENTIFIER;
+	assert bl.getIdentifier ().equals ("b");
+	assert bl.nextNonWhitespaceToken () == Token.END_OF_INPUT;
+    }
+
+    private void testMalformed (byte[] bytes) {
+	ByteBufferLexer bl = new ByteBufferLexer (ByteBuffer.wrap (bytes));
+	assert bl.nextNonWhitespaceToken () == Token.IDENTIFIER;
+	Token t;
+	boolean foundError = false;
+	while ((t = bl.nextNonWhitespaceToken ()) != Token.END_OF_INPUT)
+	    foundError |= t == Token.ERROR;
+	assert foundError : "Expected an error for malformed input";
+    }
+
+    private void compare (String s) {
+	byte[] bytes = s.getBytes (StandardCharsets.UTF_8);
+	compare (s, s, bytes);
+    }
+
+    private void compare (String name, String s, byte[] bytes) {
+	// with the same table the identifiers have to be the same instances
+	SymbolTable symbols = new SymbolTable ();
+	ByteBufferLexer bl = new ByteBufferLexer (ByteBuffer.wrap (bytes), symbols);
+	CharBufferLexer cl = new CharBufferLexer (CharBuffer.wrap (s.toCharArray ()), symbols);
+	while (cl.hasMoreTokens ()) {
+	    Token expected = cl.nextToken ();
+	    Token got = bl.nextToken ();
+	    String where = name + ":" + cl.getLineNumber () + ":" + cl.getTokenColumn ();
+	    assert got == expected : where + ": got: " + got + ", expected: " + expected;
+	    assert bl.getLineNumber () == cl.getLineNumber () : where + ": wrong line: " + bl.getLineNumber ();
+	    assert bl.getTokenStartPos () == cl.getTokenStartPos () : where + ": wrong start: " + bl.getTokenStartPos ();
+	    assert bl.getTokenEndPos () == cl.getTokenEndPos () : where + ": wrong end: " + bl.getTokenEndPos ();
+	    assert bl.getTokenColumn () == cl.getTokenColumn () : where + ": wrong column: " + bl.getTokenColumn ();
+	    ParsePosition bp = bl.getParsePosition ();
+	    ParsePosition cp = cl.getParsePosition ();
+	    assert bp.getTokenStartPos () == cp.getTokenStartPos () && bp.getTokenEndPos () == cp.getTokenEndPos () &&
+		bp.getTokenColumn () == cp.getTokenColumn () : where + ": wrong parse position: " + bp;
+	    assert String.valueOf (bl.getError ()).equals (String.valueOf (cl.getError ())) :
+		where + ": wrong error: " + bl.getError () + ", expected: " + cl.getError ();
+	    if (expected == Token.ERROR)
+		continue;
+	    switch (expected) {
+	    case IDENTIFIER:
+		assert bl.getIdentifier () == cl.getIdentifier () : where + ": wrong identifier: " + bl.getIdentifier ();
+		break;
+	    case STRING_LITERAL:
+		assert bl.getStringValue ().equals (cl.getStringValue ()) : where + ": wrong string: " + bl.getStringValue ();
+		break;
+	    case CHARACTER_LITERAL:
+		assert bl.getCharValue () == cl.getCharValue () : where + ": wrong char: " + bl.getCharValue ();
+		break;
+	    case INT_LITERAL:
+		assert bl.getIntValue () == cl.getIntValue () : where + ": wrong int: " + bl.getIntValue ();
+		break;
+	    case LONG_LITERAL:
+		assert bl.getLongValue () == cl.getLongValue () : where + ": wrong long: " + bl.getLongValue ();
+		break;
+	    case FLOAT_LITERAL:
+		assert Float.compare (bl.getFloatValue (), cl.getFloatValue ()) == 0 : where + ": wrong float";
+		break;
+	    case DOUBLE_LITERAL:
+		assert Double.compare (bl.getDoubleValue (), cl.getDoubleValue ()) == 0 : where + ": wrong double";
+		break;
+	    default:
+	    }
+	}
+	assert !bl.hasMoreTokens () : name + ": byte lexer has more tokens";
+    }
+}
@@ -116,6 +116,19 @@ public class TestLexer {
 	testInput ("/* whatever", Token.ERROR);
 	testInput ("/* whatever \n whatever */", Token.MULTILINE_COMMENT);
 	testInput ("/* whatever \n * whatever \n *\n/*/", Token.MULTILINE_COMMENT);
+	testInput ("/** whatever **/", Token.MULTILINE_COMMENT);
+	testInput ("/* whatever *", Token.ERROR);
+	testInput ("/*/ a", Token.ERROR);
+	testInput ("/* a */ b /* c */", Token.MULTILINE_COMMENT, Token.WHITESPACE, Token.IDENTIFIER,
+		   Token.WHITESPACE, Token.MULTILINE_COMMENT);
+    }
+
+    @Test
+    public void testCommentLines () {
+	CharBufferLexer l = (CharBufferLexer)getLexer ("/* a\r\n b\r c\n d */ x");
+	assert l.nextNonWhitespaceToken () == Token.IDENTIFIER;
+	assert l.getLineNumber () == 4 : "Wrong line: " + l.getLineNumber ();
+	assert l.getTokenColumn () == 6 : "Wrong column: " + l.getTokenColumn ();
     }
 
     @Test
@@ -144,6 +157,28 @@ public class TestLexer {
     public void testStringLiteral () {
 	testString ("\"\"", "");
 	testString ("\"abc123\"", "abc123");
+	testInput ("\"abc\nx", Token.ERROR, Token.LF, Token.IDENTIFIER);
+	testString ("\"a\\tb\\\"c\\\\\"", "a\tb\"c\\");
+	testString ("\"\\101\\0\"", "A\0");
+    }
+
+    @Test
+    public void testLiteralSpan () {
+	Lexer l = getLexer ("\"abc\" \"a\\n\" \"\\u0041\" 'a' '\\n'");
+	boolean[] escapes = { false, true, true, false, true };
+	for (boolean e : escapes) {
+	    Token t = l.nextNonWhitespaceToken ();
+	    assert t == Token.STRING_LITERAL || t == Token.CHARACTER_LITERAL : "Wrong token: " + t;
+	    assert l.getLiteral ().hasEscapes () == e : "Wrong escapes for: " + l.getLiteral ();
+	}
+	l = getLexer ("\"abc\"");
+	l.nextToken ();
+	assert l.getLiteral ().getValue () == "abc" : "Literal value is not interned";
+	l = getLexer ("'\\n' 'a'");
+	l.nextNonWhitespaceToken ();
+	assert l.getLiteral ().getCharValue () == '\n' : "Wrong char value: " + l.getLiteral ();
+	l.nextNonWhitespaceToken ();
+	assert l.getLiteral ().getCharValue () == 'a' : "Wrong char value: " + l.getLiteral ();
     }
 
     @Test
@@ -242,6 +277,10 @@ public class TestLexer {
 	testInt ("0x00_FF__00_FF", 0x00_FF__00_FF);
 	testInt ("0b1111", 0b1111);
 	testInput ("0x", Token.ERROR);
+	testInt ("0xFFFFFFFF", 0xFFFFFFFF);
+	testInput ("0x1_0000_0000", Token.ERROR);
+	testInt ("0_7", 0_7);
+	testInput ("0_", Token.ERROR);
 	testInput ("0xffffff;", Token.INT_LITERAL, Token.SEMICOLON);
 
 	// javac is a bit iffy with octal handling compared to binary
@@ -266,6 +305,13 @@ public class TestLexer {
 	testLong ("2_147_483_648L", 2_147_483_648L);
 	testLong ("2147483649L", 2147483649L);
 	testLong ("0xC0B0L", 0xC0B0L);
+	testLong ("9223372036854775808L", -9223372036854775808L);
+	testInput ("9223372036854775809L", Token.ERROR);
+	testLong ("0xFFFF_FFFF_FFFF_FFFFL", 0xFFFF_FFFF_FFFF_FFFFL);
+	testLong ("01777777777777777777777L", 01777777777777777777777L);
+	testInput ("0x1_0000_0000_0000_0000L", Token.ERROR);
+	testInput ("18446744073709551616L", Token.ERROR);
+	testInput ("99999999999999999999999999L", Token.ERROR);
     }
 
     private void testLong (String toLex, long expected) {
@@ -285,6 +331,7 @@ public class TestLexer {
 	testDouble ("1e1_0", 1e1_0);
 	testInput ("1ee", Token.ERROR, Token.IDENTIFIER);
 	testDouble ("1e-9d", 1e-9d);
+	testInput ("1e5+3", Token.DOUBLE_LITERAL, Token.PLUS, Token.INT_LITERAL);
 	testDouble ("1e137", 1e137);
 	testDouble ("1_0.3_2e4_7",1_0.3_2e4_7);
 	testDouble ("0xa.p2", 0xa.p2);
@@ -347,6 +394,68 @@ public class TestLexer {
 	testInput ("§§", Token.ERROR, Token.ERROR);
     }
 
+    @Test
+    public void testAllKeywords () {
+	for (Token t : Token.values ())
+	    if (t.isKeyword ())
+		testInput (t.toString (), t);
+	for (String s : Arrays.asList ("classes", "clas", "Class", "whilE", "i", "ifx", "do_",
+				       "synchronize", "strictfpp", "instanceOf", "nul", "truee"))
+	    testInput (s, Token.IDENTIFIER);
+    }
+
+    @Test
+    public void testIdentifiers () {
+	SymbolTable symbols = new SymbolTable ();
+	Lexer l1 = new CharBufferLexer (CharBuffer.wrap ("foo bar"), symbols);
+	Lexer l2 = new CharBufferLexer (CharBuffer.wrap ("bar"), symbols);
+	testIdentifier (l1, "foo");
+	l1.nextToken ();
+	testIdentifier (l1, "bar");
+	testIdentifier (l2, "bar");
+	assert l1.getIdentifier () == l2.getIdentifier () : "Identifiers should be interned";
+	testIdentifier (getLexer ("\\u0066oo"), "foo");
+	testIdentifier (getLexer ("f\\u006fo"), "foo");
+	testInput ("\\u0069f", Token.IF);
+    }
+
+    @Test
+    public void testUnicodeEscapes () {
+	testInput ("a\\u0020\\u0009b", Token.IDENTIFIER, Token.WHITESPACE, Token.IDENTIFIER);
+	testInput ("// a\\u000ab", Token.ONELINE_COMMENT, Token.LF, Token.IDENTIFIER);
+	testInput ("\\u0031\\u0032", Token.INT_LITERAL);
+	testInput ("\\u003", Token.ERROR, Token.IDENTIFIER);
+	testString ("\"\\u0041\\101\"", "AA");
+    }
+
+    private void testIdentifier (Lexer l, String expected) {
+	Token t = l.nextToken ();
+	assert t == Token.IDENTIFIER : "Wrong Token: expected: IDENTIFIER, got: " + t;
+	assert expected.equals (l.getIdentifier ()) : "Wrong identifier: " + l.getIdentifier ();
+    }
+
+    @Test
+    public void testTokenBuffer () {
+	Lexer l = getLexer ("package\n  foo;\r\n\n bar");
+	for (Token t : Arrays.asList (Token.PACKAGE, Token.IDENTIFIER, Token.SEMICOLON,
+				      Token.IDENTIFIER, Token.END_OF_INPUT))
+	    assert l.nextNonWhitespaceToken () == t;
+	TokenBuffer tb = l.getTokens ();
+	assert tb.size () == 5 : "Wrong number of tokens: " + tb.size ();
+	assert tb.getToken (1) == Token.IDENTIFIER;
+	testPosition (tb.getParsePosition (0), 1, 0, 0, 7);
+	testPosition (tb.getParsePosition (1), 2, 2, 10, 13);
+	testPosition (tb.getParsePosition (2), 2, 5, 13, 14);
+	testPosition (tb.getParsePosition (3), 4, 1, 18, 21);
+    }
+
+    private void testPosition (ParsePosition pos, int line, int column, int start, int end) {
+	assert pos.getLineNumber () == line : "Wrong line: " + pos;
+	assert pos.getTokenColumn () == column : "Wrong column: " + pos;
+	assert pos.getTokenStartPos () == start : "Wrong start: " + pos;
+	assert pos.getTokenEndPos () == end : "Wrong end: " + pos;
+    }
+
     @Test
     public void testNextNonWhitespaceToken () {
 	testNextNonWhitespace ("", Token.END_OF_INPUT);
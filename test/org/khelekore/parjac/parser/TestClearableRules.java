@@ -0,0 +1,192 @@
+package org.khelekore.parjac.parser;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+import org.khelekore.parjac.CompilerDiagnosticCollector;
+import org.khelekore.parjac.JavaGrammarHelper;
+import org.khelekore.parjac.grammar.ClearableRuleFinder;
+import org.khelekore.parjac.grammar.Grammar;
+import org.khelekore.parjac.lexer.CharBufferLexer;
+import org.khelekore.parjac.tree.SyntaxTree;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/** Clearing states must not change the parse, so compare with a parser that does not clear. */
+public class TestClearableRules {
+    private Setup none;
+    private Setup standard;
+    private Setup auto;
+
+    @BeforeClass
+    public void createGrammars () throws IOException {
+	none = new Setup ("none");
+	standard = new Setup (null);
+	auto = new Setup ("auto");
+    }
+
+    @Test
+    public void testFoundRules () {
+	List<String> found = new ClearableRuleFinder (standard.g).find ();
+	for (String name : Arrays.asList ("ClassBodyDeclaration", "EnumConstant"))
+	    assert found.contains (name) : "Did not find: " + name + ", found: " + found;
+	assert !found.contains ("VariableInitializer") : "Found expression level rule: " + found;
+	// a trailing else can extend the last statement
+	for (String name : Arrays.asList ("BlockStatement", "SwitchBlockStatementGroup"))
+	    assert !found.contains (name) : "Found statement level rule: " + name + ", found: " + found;
+    }
+
+    @Test
+    public void testUnsafeRules () throws IOException {
+	for (String rules : Arrays.asList ("BlockStatement", "NoSuchRule", "ClassBodyDeclaration,BlockStatement")) {
+	    CompilerDiagnosticCollector diagnostics = new CompilerDiagnosticCollector ();
+	    Grammar g = JavaGrammarHelper.getValidatedJavaGrammar (false, rules, diagnostics);
+	    assert g == null : "Accepted clearable rules: " + rules;
+	    assert diagnostics.hasError () : "No error for: " + rules;
+	}
+	CompilerDiagnosticCollector diagnostics = new CompilerDiagnosticCollector ();
+	assert JavaGrammarHelper.getValidatedJavaGrammar (false, "EnumConstant", diagnostics) != null;
+	assert !diagnostics.hasError ();
+    }
+
+    @Test
+    public void testStatements () {
+	testSameTree ("class A { void foo () {\n" +
+		      "    if (a) if (b) x (); else y ();\n" +
+		      "    if (a) { } else { z (); }\n" +
+		      "    switch (x) { case 1: a (); b (); case 2: default: c (); break; }\n" +
+		      "    Supplier<Map<A, B>> s = HashMap<A, B>::new; int i = a < b ? c : d;\n" +
+		      "    Runnable r = () -> { foo (); bar (); };\n" +
+		      "    class Local { int x; } new Object () { void bar () { } };\n" +
+		      "    try { a (); } catch (E e) { b (); } finally { c (); }\n" +
+		      "    label: for (;;) { continue label; }\n" +
+		      "}}");
+    }
+
+    @Test
+    public void testDanglingElse () {
+	testSameTree ("class A { void f () { if (a) x = 1; else if (b) if (c) x = 1; else x = 2; else x = 3; } }");
+	testSameTree ("class A { void f () {\n" +
+		      "    switch (x) { case 1: if (a) y (); else if (b) if (c) z (); else w (); else v (); }\n" +
+		      "}}");
+	// like the parse method of java.util.Date
+	testSameTree ("class A { void parse (String s) {\n" +
+		      "    while (i < limit) {\n" +
+		      "        c = s.charAt (i);\n" +
+		      "        if (c <= ' ' || c == ',')\n" +
+		      "            continue;\n" +
+		      "        if (c == '(') {\n" +
+		      "            depth++;\n" +
+		      "        } else if ('0' <= c && c <= '9') {\n" +
+		      "            if (prevc == '+' || prevc == '-' && year != Integer.MIN_VALUE)\n" +
+		      "                if (n <= 24) n = n * 60; else n = n % 100 + n / 100 * 60;\n" +
+		      "            else if (c == ':')\n" +
+		      "                if (hour < 0) hour = (byte) n; else if (min < 0) min = (byte) n; else break;\n" +
+		      "            else if (c == '/')\n" +
+		      "                if (mon < 0) mon = (byte) (n - 1); else if (mday < 0) mday = (byte) n; else break;\n" +
+		      "            else if (i < limit && c != ',' && c > ' ' && c != '-')\n" +
+		      "                break;\n" +
+		      "            else if (hour >= 0 && min < 0)\n" +
+		      "                min = (byte) n;\n" +
+		      "            else\n" +
+		      "                break;\n" +
+		      "            prevc = 0;\n" +
+		      "        }\n" +
+		      "    }\n" +
+		      "}}");
+    }
+
+    @Test
+    public void testDeclarations () {
+	testSameTree ("enum E { A, B (1), @Deprecated C { void foo () {} }, D (a < b, c > d); E () {} }");
+	testSameTree ("interface I { int i = 3; default void foo () { bar (); } void bar (); }");
+	testSameTree ("@interface Ann { int value () default 1; String[] names () default { \"a\" }; }");
+	testSameTree ("class A { int[] a = { 1, 2 }; { a (); } static { b (); } A () { this (1); } }");
+    }
+
+    @Test
+    public void testRecovery () {
+	String s = "class A { void foo () { int a = 3 int b = 4; } }";
+	String expected = getErrors (none, s, false);
+	assert getErrors (standard, s, false).equals (expected);
+	assert getErrors (standard, s, true).equals (expected);
+    }
+
+    @Test
+    public void testFewerStatesInManyMethods () {
+	StringBuilder sb = new StringBuilder ("class Big {\n");
+	for (int i = 0; i < 300; i++)
+	    sb.append ("    void m" + i + " () { switch (a) { case " + i + ": b (" + i + "); break; } }\n");
+	sb.append ("}\n");
+	String s = sb.toString ();
+	for (boolean packed : new boolean[] { false, true }) {
+	    int all = standard.peakStates (s, packed);
+	    int kept = none.peakStates (s, packed);
+	    assert all * 2 < kept : "Clearing did not help, packed: " + packed + ", " + all + " vs " + kept;
+	}
+    }
+
+    private void testSameTree (String s) {
+	for (boolean packed : new boolean[] { false, true }) {
+	    String expected = String.valueOf (none.parse (s, packed, null));
+	    String got = String.valueOf (standard.parse (s, packed, null));
+	    assert got.equals (expected) : "Got different trees: " + got + ", expected: " + expected;
+	    got = String.valueOf (auto.parse (s, packed, null));
+	    assert got.equals (expected) : "Got different trees: " + got + ", expected: " + expected;
+	}
+    }
+
+    private String getErrors (Setup setup, String s, boolean packed) {
+	CompilerDiagnosticCollector diagnostics = new CompilerDiagnosticCollector ();
+	setup.parse (s, packed, diagnostics);
+	assert diagnostics.hasError () : "Expected parser errors";
+	return TestParseHelper.getParseOutput (diagnostics);
+    }
+
+    private static class Setup {
+	private final Grammar g;
+	private final PredictCache predictCache;
+	private final JavaTreeBuilder treeBuilder;
+	private final Path path = Paths.get ("TestClearableRules");
+
+	public Setup (String clearableRules) throws IOException {
+	    g = JavaGrammarHelper.getValidatedJavaGrammar (false, clearableRules);
+	    predictCache = new PredictCache (g);
+	    treeBuilder = new JavaTreeBuilder (g);
+	}
+
+	public SyntaxTree parse (String s, boolean packed, CompilerDiagnosticCollector diagnostics) {
+	    boolean checkErrors = diagnostics == null;
+	    if (checkErrors)
+		diagnostics = new CompilerDiagnosticCollector ();
+	    CharBufferLexer lexer = new CharBufferLexer (CharBuffer.wrap (s));
+	    SyntaxTree tree;
+	    if (packed)
+		tree = new PackedEarleyParser (g, path, lexer, predictCache, treeBuilder, diagnostics, false).parse ();
+	    else
+		tree = new EarleyParser (g, path, lexer, predictCache, treeBuilder, diagnostics, false).parse ();
+	    if (checkErrors)
+		assert !diagnostics.hasError () : "Got parser errors: " +
+		    TestParseHelper.getParseOutput (diagnostics);
+	    return tree;
+	}
+
+	public int peakStates (String s, boolean packed) {
+	    CompilerDiagnosticCollector diagnostics = new CompilerDiagnosticCollector ();
+	    CharBufferLexer lexer = new CharBufferLexer (CharBuffer.wrap (s));
+	    if (packed) {
+		PackedEarleyParser p =
+		    new PackedEarleyParser (g, path, lexer, predictCache, treeBuilder, diagnostics, false);
+		p.parse ();
+		return p.getPeakRetainedStates ();
+	    }
+	    EarleyParser p = new EarleyParser (g, path, lexer, predictCache, treeBuilder, diagnostics, false);
+	    p.parse ();
+	    return p.getPeakRetainedStates ();
+	}
+    }
+}
@@ -0,0 +1,89 @@
+package org.khelekore.parjac.parser;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.khelekore.parjac.CompilerDiagnosticCollector;
+import org.khelekore.parjac.JavaGrammarHelper;
+import org.khelekore.parjac.grammar.Grammar;
+import org.khelekore.parjac.lexer.CharBufferLexer;
+import org.khelekore.parjac.tree.SyntaxTree;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/** Right recursive input, EarleyParser uses leo items for these,
+ *  PackedEarleyParser does not so the trees are compared.
+ */
+public class TestDeepNesting {
+    private static final int DEPTH = 500;
+    private Grammar g;
+    private PredictCache predictCache;
+    private JavaTreeBuilder treeBuilder;
+
+    @BeforeClass
+    public void createGrammar () throws IOException {
+	g = JavaGrammarHelper.getValidatedJavaGrammar (false);
+	predictCache = new PredictCache (g);
+	treeBuilder = new JavaTreeBuilder (g);
+    }
+
+    @Test
+    public void testElseIfLadder () {
+	StringBuilder sb = new StringBuilder ("if (a == 0) x = 0;");
+	for (int i = 1; i < DEPTH; i++)
+	    sb.append (" else if (a == " + i + ") x = " + i + ";");
+	sb.append (" else x = -1;");
+	testSameTree (sb.toString ());
+    }
+
+    @Test
+    public void testAssignmentChain () {
+	StringBuilder sb = new StringBuilder ("x = ");
+	for (int i = 0; i < DEPTH; i++)
+	    sb.append ("a" + i + " = ");
+	sb.append ("0;");
+	testSameTree (sb.toString ());
+    }
+
+    @Test
+    public void testTernaryChain () {
+	StringBuilder sb = new StringBuilder ("x = ");
+	for (int i = 0; i < DEPTH; i++)
+	    sb.append ("a == " + i + " ? " + i + " : ");
+	sb.append ("-1;");
+	testSameTree (sb.toString ());
+    }
+
+    @Test
+    public void testNestedLambdas () {
+	StringBuilder sb = new StringBuilder ("f = ");
+	for (int i = 0; i < DEPTH; i++)
+	    sb.append ("a" + i + " -> ");
+	sb.append ("0;");
+	testSameTree (sb.toString ());
+    }
+
+    private void testSameTree (String statements) {
+	String s = "class A { void f () { " + statements + " } int x; }";
+	CompilerDiagnosticCollector leoDiagnostics = new CompilerDiagnosticCollector ();
+	SyntaxTree leoTree = parse (s, false, leoDiagnostics);
+	CompilerDiagnosticCollector packedDiagnostics = new CompilerDiagnosticCollector ();
+	SyntaxTree packedTree = parse (s, true, packedDiagnostics);
+	assert !leoDiagnostics.hasError () : "Got parser errors: " +
+	    TestParseHelper.getParseOutput (leoDiagnostics);
+	assert !packedDiagnostics.hasError () : "Got parser errors: " +
+	    TestParseHelper.getParseOutput (packedDiagnostics);
+	assert leoTree.toString ().equals (packedTree.toString ()) :
+	    "Got different trees: " + leoTree + ", expected: " + packedTree;
+    }
+
+    private SyntaxTree parse (String s, boolean packed, CompilerDiagnosticCollector diagnostics) {
+	Path path = Paths.get ("TestDeepNesting");
+	CharBufferLexer lexer = new CharBufferLexer (CharBuffer.wrap (s));
+	if (packed)
+	    return new PackedEarleyParser (g, path, lexer, predictCache, treeBuilder, diagnostics, false).parse ();
+	return new EarleyParser (g, path, lexer, predictCache, treeBuilder, diagnostics, false).parse ();
+    }
+}
@@ -0,0 +1,120 @@
+package org.khelekore.parjac.parser;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.khelekore.parjac.CompilerDiagnosticCollector;
+import org.khelekore.parjac.JavaGrammarHelper;
+import org.khelekore.parjac.grammar.Grammar;
+import org.khelekore.parjac.lexer.CharBufferLexer;
+import org.khelekore.parjac.lexer.Lexer;
+import org.khelekore.parjac.tree.SyntaxTree;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class TestDeferredBodyParser {
+    private Grammar g;
+    private PredictCache predictCache;
+    private JavaTreeBuilder treeBuilder;
+    private final Path path = Paths.get ("TestDeferredBodyParser");
+
+    @BeforeClass
+    public void createGrammar () throws IOException {
+	g = JavaGrammarHelper.getValidatedJavaGrammar (false);
+	predictCache = new PredictCache (g);
+	treeBuilder = new JavaTreeBuilder (g);
+    }
+
+    @Test
+    public void testNoBodies () {
+	testSameTree ("", 0);
+	testSameTree ("class A {}", 0);
+	testSameTree ("class A { int a; abstract void foo (); }", 0);
+	testSameTree ("interface I { int a = 1; void foo (); }", 0);
+	testSameTree ("@interface A { int[] x () default {1, 2}; }", 0);
+    }
+
+    @Test
+    public void testBodies () {
+	testSameTree ("class A { void foo () { int a = 1; } }", 1);
+	testSameTree ("class A { A () { super (); } A (int a) { this (); } }", 2);
+	testSameTree ("class A { void foo () throws E, F { } <T> T bar (T t) { return t; } }", 2);
+	testSameTree ("interface I { default void foo () { } static void bar () { } }", 2);
+	testSameTree ("class A { class B { B () {} void foo () { } } void bar () { } }", 3);
+    }
+
+    @Test
+    public void testOtherBlocks () {
+	testSameTree ("package foo;\nimport java.util.List;\n" +
+		      "@Ann ({1, 2}) public class A<T> extends B implements C {\n" +
+		      "    private int a = 3, b[] = {1, 2};\n" +
+		      "    Object o = new Object () { void x () {} }, p = new Object () { };\n" +
+		      "    Runnable r = () -> { };\n" +
+		      "    Class<?> c = A.class;\n" +
+		      "    static { a = 4; }\n" +
+		      "    { b = null; }\n" +
+		      "    @Ann ({3}) A () { new Object () { void foo () { } }; }\n" +
+		      "    void foo () { class L { void bar () { } } }\n" +
+		      "    enum E { X (1) { void foo () { } }, Y; E () {} E (int i) { } }\n" +
+		      "}\n", 4);
+    }
+
+    @Test
+    public void testErrors () {
+	testSameDiagnostics ("class A { int a; void foo () { int a = 3 int b = 4; } int b; }");
+	testSameDiagnostics ("class A { void foo () { } int b = 3 } int c; }");
+	testSameDiagnostics ("class A { void foo () { } int a ");
+    }
+
+    /** Parse with deferred bodies and check that we get the same tree as a normal parse */
+    private void testSameTree (String s, int expectedBodies) {
+	CompilerDiagnosticCollector diagnostics = new CompilerDiagnosticCollector ();
+	SyntaxTree expected = parse (charLexer (s), "Goal", diagnostics);
+	AtomicInteger bodyParses = new AtomicInteger ();
+	SyntaxTree tree = parseDeferred (s, bodyParses, diagnostics);
+	assert !diagnostics.hasError () : "Got parser errors: " + TestParseHelper.getParseOutput (diagnostics);
+	assert bodyParses.get () == expectedBodies :
+	    "Expected: " + expectedBodies + " bodies, got: " + bodyParses;
+	assert String.valueOf (tree).equals (String.valueOf (expected)) :
+	    "Got different trees: " + tree + ", expected: " + expected;
+    }
+
+    private void testSameDiagnostics (String s) {
+	CompilerDiagnosticCollector expected = new CompilerDiagnosticCollector ();
+	SyntaxTree expectedTree = parse (charLexer (s), "Goal", expected);
+	CompilerDiagnosticCollector diagnostics = new CompilerDiagnosticCollector ();
+	SyntaxTree tree = parseDeferred (s, new AtomicInteger (), diagnostics);
+	assert String.valueOf (tree).equals (String.valueOf (expectedTree)) :
+	    "Got different trees: " + tree + ", expected: " + expectedTree;
+	String output = TestParseHelper.getParseOutput (diagnostics);
+	String expectedOutput = TestParseHelper.getParseOutput (expected);
+	assert expected.hasError () : "Expected parser errors";
+	assert output.equals (expectedOutput) : "Got different errors: " + output + ", expected: " + expectedOutput;
+    }
+
+    private SyntaxTree parseDeferred (String s, AtomicInteger bodyParses,
+				      CompilerDiagnosticCollector diagnostics) {
+	GoalParser parser = (l, goal, d) -> {
+	    if (!goal.equals ("Goal"))
+		bodyParses.incrementAndGet ();
+	    return parse (l, goal, d);
+	};
+	DeferredBodyParser dbp = new DeferredBodyParser (charLexer (s), parser, diagnostics);
+	if (dbp.parse () == null)
+	    return null;
+	dbp.getBodies ().parallelStream ().forEach (DeferredBodyParser.Body::parse);
+	return dbp.finish ();
+    }
+
+    private SyntaxTree parse (Lexer lexer, String goal, CompilerDiagnosticCollector diagnostics) {
+	return new EarleyParser (g, path, lexer, predictCache, treeBuilder,
+				 diagnostics, false, goal).parse ();
+    }
+
+    private static Lexer charLexer (String s) {
+	return new CharBufferLexer (CharBuffer.wrap (s));
+    }
+}
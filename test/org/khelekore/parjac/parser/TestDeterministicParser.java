@@ -0,0 +1,166 @@
+package org.khelekore.parjac.parser;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.khelekore.parjac.CompilerDiagnosticCollector;
+import org.khelekore.parjac.JavaGrammarHelper;
+import org.khelekore.parjac.grammar.Grammar;
+import org.khelekore.parjac.lexer.CharBufferLexer;
+import org.khelekore.parjac.lexer.Lexer;
+import org.khelekore.parjac.tree.SyntaxTree;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class TestDeterministicParser {
+    private Grammar g;
+    private PredictCache predictCache;
+    private JavaTreeBuilder treeBuilder;
+    private DeterministicTable table;
+    private final Path path = Paths.get ("TestDeterministicParser");
+
+    @BeforeClass
+    public void createGrammar () throws IOException {
+	g = JavaGrammarHelper.getValidatedJavaGrammar (false);
+	predictCache = new PredictCache (g);
+	treeBuilder = new JavaTreeBuilder (g);
+	table = new DeterministicTable (g);
+    }
+
+    @Test
+    public void testDeclarations () {
+	testSameTree ("", 0);
+	testSameTree ("package foo.bar;\nimport java.util.List;\nimport java.util.*;\n" +
+		      "import static java.lang.Math.max;\nimport static java.lang.Math.*;\nclass A {}", 0);
+	testSameTree ("@Ann ({1, 2}) public abstract class A<T extends B & C> extends D<T> implements E {\n" +
+		      "    private int a = 3, b[] = {1, 2};\n" +
+		      "    static { a = 4; }\n" +
+		      "    A () { this (1); }\n" +
+		      "    A (int... a) { super (); }\n" +
+		      "    abstract <S> S foo (S s) throws X, Y;\n" +
+		      "    class B { }\n" +
+		      "}", 0);
+	testSameTree ("interface I<T> { int A = 1; default void foo () { } }", 0);
+	testSameTree ("@interface A { int[] x () default {1, 2}; }", 0);
+	testSameTree ("enum E { X (1) { void foo () { } }, Y; E () {} E (int i) { } }", 0);
+    }
+
+    @Test
+    public void testStatements () {
+	testSameTree ("class A { void foo () {\n" +
+		      "    int a = 1, b[] = {2};\n" +
+		      "    java.util.List<String> l = new java.util.ArrayList<> ();\n" +
+		      "    Map.Entry<String, List<int[]>>[] es = null;\n" +
+		      "    a.b.c = d.e ();\n" +
+		      "    a.b.c[1] = (a < b) ? (String)x : y;\n" +
+		      "    a++; --b; this.a = -a;\n" +
+		      "    if (a) b (); else { c (); }\n" +
+		      "    for (int i = 0; i < a; i++) x += i;\n" +
+		      "    for (String s : l) continue;\n" +
+		      "    while (true) break;\n" +
+		      "    do { } while (a);\n" +
+		      "    switch (a) { case 1: return; default: throw new E (); }\n" +
+		      "    try (R r = f ()) { } catch (A | B e) { } finally { }\n" +
+		      "    synchronized (this) { }\n" +
+		      "    label: x ();\n" +
+		      "}}", 0);
+    }
+
+    @Test
+    public void testExpressions () {
+	testSameTree ("class A { Object[] os = {\n" +
+		      "    a + b * c - d / e % f, a << 2 >> 3 >>> 4, a & b | c ^ d && e || !f,\n" +
+		      "    a instanceof B, (int)a, (List<String>)b, (a.b.C<D>[])c, (a) - b,\n" +
+		      "    new int[3][], new int[] {1, 2}, new A<B> () { }, a.new B (), A.class, int[].class,\n" +
+		      "    a.<T>b (), super.foo (), A.super.foo (), a.b[c].d (e)[f],\n" +
+		      "    () -> 1, x -> x, (x, y) -> { return x; }, (int x) -> x, String::valueOf, A[]::new,\n" +
+		      "    this.<T>foo (), a = b += c, ~a, +a, 'c', \"s\", 1L, 2.0, true, null\n" +
+		      "}; }", 0);
+    }
+
+    @Test
+    public void testOtherGoals () {
+	testSameTree ("{ int a = 1; foo (a); }", JavaGrammarHelper.METHOD_BODY_GOAL);
+	testSameTree ("{ super (1); a = 2; }", JavaGrammarHelper.CONSTRUCTOR_BODY_GOAL);
+	testSameTree ("int a; void foo () { } class B { }", JavaGrammarHelper.MEMBER_GOAL);
+    }
+
+    @Test
+    public void testMemberFallback () {
+	// The cast can only be told apart from an expression at the ')'
+	StringBuilder sb = new StringBuilder ("a0");
+	for (int i = 1; i < 200; i++)
+	    sb.append (".a").append (i);
+	String longCast = "Object o = (A<" + sb + ">)b;";
+	testSameTree ("class A { int a; void foo () { " + longCast + " } int b; }", 1);
+	testSameTree ("class A { Object o = new Object () { void foo () { " + longCast + " } }; }", 1);
+    }
+
+    @Test
+    public void testErrors () {
+	testSameDiagnostics ("class A { int a; void foo () { int a = 3 int b = 4; } int b; }");
+	testSameDiagnostics ("class A { void foo () { } int b = 3 } int c; }");
+	testSameDiagnostics ("class A { void foo () { } int a ");
+	testSameDiagnostics ("import a.b.*.c; class A { }");
+    }
+
+    private void testSameTree (String s, int expectedFallbacks) {
+	CompilerDiagnosticCollector diagnostics = new CompilerDiagnosticCollector ();
+	SyntaxTree expected = parse (charLexer (s), "Goal", diagnostics);
+	AtomicInteger wholeParses = new AtomicInteger ();
+	DeterministicParser dp = getParser (s, "Goal", wholeParses, diagnostics);
+	SyntaxTree tree = dp.parse ();
+	assert !diagnostics.hasError () : "Got parser errors: " + TestParseHelper.getParseOutput (diagnostics);
+	assert wholeParses.get () == 0 : "Input was parsed by the fallback parser";
+	assert dp.getMemberFallbacks () == expectedFallbacks :
+	    "Expected: " + expectedFallbacks + " member fallbacks, got: " + dp.getMemberFallbacks ();
+	assert String.valueOf (tree).equals (String.valueOf (expected)) :
+	    "Got different trees: " + tree + ", expected: " + expected;
+    }
+
+    private void testSameTree (String s, String goal) {
+	CompilerDiagnosticCollector diagnostics = new CompilerDiagnosticCollector ();
+	SyntaxTree expected = parse (charLexer (s), goal, diagnostics);
+	AtomicInteger wholeParses = new AtomicInteger ();
+	SyntaxTree tree = getParser (s, goal, wholeParses, diagnostics).parse ();
+	assert !diagnostics.hasError () : "Got parser errors: " + TestParseHelper.getParseOutput (diagnostics);
+	assert wholeParses.get () == 0 : "Input was parsed by the fallback parser";
+	assert String.valueOf (tree).equals (String.valueOf (expected)) :
+	    "Got different trees: " + tree + ", expected: " + expected;
+    }
+
+    private void testSameDiagnostics (String s) {
+	CompilerDiagnosticCollector expected = new CompilerDiagnosticCollector ();
+	SyntaxTree expectedTree = parse (charLexer (s), "Goal", expected);
+	CompilerDiagnosticCollector diagnostics = new CompilerDiagnosticCollector ();
+	SyntaxTree tree = getParser (s, "Goal", new AtomicInteger (), diagnostics).parse ();
+	assert String.valueOf (tree).equals (String.valueOf (expectedTree)) :
+	    "Got different trees: " + tree + ", expected: " + expectedTree;
+	String output = TestParseHelper.getParseOutput (diagnostics);
+	String expectedOutput = TestParseHelper.getParseOutput (expected);
+	assert expected.hasError () : "Expected parser errors";
+	assert output.equals (expectedOutput) : "Got different errors: " + output + ", expected: " + expectedOutput;
+    }
+
+    private DeterministicParser getParser (String s, String goal, AtomicInteger wholeParses,
+					   CompilerDiagnosticCollector diagnostics) {
+	GoalParser fallback = (l, fallbackGoal, d) -> {
+	    if (fallbackGoal.equals (goal))
+		wholeParses.incrementAndGet ();
+	    return parse (l, fallbackGoal, d);
+	};
+	return new DeterministicParser (table, path, charLexer (s), treeBuilder, diagnostics, goal, fallback);
+    }
+
+    private SyntaxTree parse (Lexer lexer, String goal, CompilerDiagnosticCollector diagnostics) {
+	return new EarleyParser (g, path, lexer, predictCache, treeBuilder,
+				 diagnostics, false, goal).parse ();
+    }
+
+    private static Lexer charLexer (String s) {
+	return new CharBufferLexer (CharBuffer.wrap (s));
+    }
+}
@@ -0,0 +1,81 @@
+package org.khelekore.parjac.parser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import org.khelekore.parjac.CompilerDiagnosticCollector;
+import org.khelekore.parjac.JavaGrammarHelper;
+import org.khelekore.parjac.grammar.Grammar;
+import org.khelekore.parjac.grammar.GrammarImage;
+import org.khelekore.parjac.grammar.Rule;
+import org.khelekore.parjac.lexer.CharBufferLexer;
+import org.khelekore.parjac.tree.SyntaxTree;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class TestGrammarImage {
+    private static final long CHECKSUM = 4711;
+
+    private Grammar g;
+    private PredictCache predictCache;
+    private byte[] image;
+
+    @BeforeClass
+    public void createImage () throws IOException {
+	g = JavaGrammarHelper.getValidatedJavaGrammar (false);
+	predictCache = new PredictCache (g);
+	Path file = Files.createTempFile ("java_8", ".pj.image");
+	try {
+	    GrammarImage.write (g, predictCache.getPredictSets (), CHECKSUM, file);
+	    image = Files.readAllBytes (file);
+	} finally {
+	    Files.delete (file);
+	}
+    }
+
+    @Test
+    public void testSameRules () {
+	Grammar ig = GrammarImage.read (ByteBuffer.wrap (image), CHECKSUM, false);
+	assert ig != null : "Failed to read grammar image";
+	assert ig.getNumberOfRules () == g.getNumberOfRules ();
+	for (int i = 0; i < g.getNumberOfRules (); i++) {
+	    Rule r = g.getRules ().get (i);
+	    Rule ir = ig.getRules ().get (i);
+	    assert ir.toString ().equals (r.toString ()) : "Got: " + ir + ", expected: " + r;
+	    assert ig.isClearableRule (ir) == g.isClearableRule (r);
+	}
+	assert Arrays.deepEquals (new PredictCache (ig).getPredictSets (), predictCache.getPredictSets ());
+    }
+
+    @Test
+    public void testSameTree () {
+	Grammar ig = GrammarImage.read (ByteBuffer.wrap (image), CHECKSUM, false);
+	String s = "class A { void foo () { for (int i = 0; i < 3; i++) { if (i > 1) bar (i); } } }";
+	SyntaxTree expected = parse (g, predictCache, s);
+	SyntaxTree got = parse (ig, new PredictCache (ig), s);
+	assert got.toString ().equals (expected.toString ()) :
+	    "Got different trees: " + got + ", expected: " + expected;
+    }
+
+    @Test
+    public void testStaleImage () {
+	assert GrammarImage.read (ByteBuffer.wrap (image), CHECKSUM + 1, false) == null;
+	assert GrammarImage.read (ByteBuffer.wrap (image, 0, image.length / 2), CHECKSUM, false) == null;
+    }
+
+    private SyntaxTree parse (Grammar gr, PredictCache pc, String s) {
+	CompilerDiagnosticCollector diagnostics = new CompilerDiagnosticCollector ();
+	CharBufferLexer lexer = new CharBufferLexer (CharBuffer.wrap (s));
+	Path path = Paths.get ("TestGrammarImage");
+	SyntaxTree tree =
+	    new EarleyParser (gr, path, lexer, pc, new JavaTreeBuilder (gr), diagnostics, false).parse ();
+	assert !diagnostics.hasError () : "Got parser errors: " +
+	    TestParseHelper.getParseOutput (diagnostics);
+	return tree;
+    }
+}
@@ -0,0 +1,166 @@
+package org.khelekore.parjac.parser;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.khelekore.parjac.CompilerDiagnosticCollector;
+import org.khelekore.parjac.JavaGrammarHelper;
+import org.khelekore.parjac.grammar.Grammar;
+import org.khelekore.parjac.lexer.CharBufferLexer;
+import org.khelekore.parjac.tree.SyntaxTree;
+import org.khelekore.parjac.tree.TreeNode;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class TestIncrementalParser {
+    private Grammar g;
+    private PredictCache predictCache;
+    private JavaTreeBuilder treeBuilder;
+    private final Path path = Paths.get ("TestIncrementalParser");
+
+    private static final String CLASS =
+	"package foo;\n" +
+	"import java.util.List;\n" +
+	"class A {\n" +
+	"    private int a = 3;\n" +
+	"    void foo (int b) {\n" +
+	"        int c = a + b;\n" +
+	"        if (c > 2)\n" +
+	"            bar (c);\n" +
+	"        for (int i = 0; i < c; i++) { a += i; }\n" +
+	"    }\n" +
+	"    int bar (int x) { return x * 2; }\n" +
+	"}\n";
+
+    @BeforeClass
+    public void createGrammar () throws IOException {
+	g = JavaGrammarHelper.getValidatedJavaGrammar (false);
+	predictCache = new PredictCache (g);
+	treeBuilder = new JavaTreeBuilder (g);
+    }
+
+    @Test
+    public void testSameTokenKinds () {
+	IncrementalParser ip = parse (CLASS);
+	edit (ip, "= 3;", "= 4;");
+	edit (ip, "int c = a", "int d = a");
+	edit (ip, "x * 2", "x * 20000");
+	// only the set of the changed token is parsed again
+	int tokens = countTokens (ip.getText ());
+	assert ip.getReusedSets () == tokens : "Expected " + tokens + " reused sets, got: " + ip.getReusedSets ();
+    }
+
+    @Test
+    public void testAddAndRemove () {
+	IncrementalParser ip = parse (CLASS);
+	edit (ip, "bar (c);", "bar (c); c++;");
+	int tokens = countTokens (ip.getText ());
+	assert ip.getReusedSets () > tokens / 2 : "Only reused " + ip.getReusedSets () + " of " + tokens;
+	edit (ip, "bar (c); c++;", "bar (c);");
+	edit (ip, "int c = a + b;", "int c = (a + b) * foo (a, b, 3);");
+	edit (ip, "    int bar", "    void baz () { }\n    int bar");
+	edit (ip, "(a + b) * foo (a, b, 3)", "a");
+	edit (ip, "{ a += i; }", ";");
+	edit (ip, "package foo;", "package foo.bar;");
+	edit (ip, "return x * 2; }\n}", "return x * 2; }\n    int y;\n}");
+    }
+
+    @Test
+    public void testWhitespaceAndComments () {
+	IncrementalParser ip = parse (CLASS);
+	edit (ip, "int c = a", "int c =\n\n  a");
+	edit (ip, "class A {", "/** A class */\nclass A {");
+	edit (ip, "}\n", "}\n// the end\n");
+    }
+
+    @Test
+    public void testErrors () {
+	IncrementalParser ip = parse (CLASS);
+	CompilerDiagnosticCollector diagnostics = new CompilerDiagnosticCollector ();
+	ip.edit (ip.getText ().indexOf ("bar (c);") + 7, 1, "", diagnostics);
+	assert diagnostics.hasError () : "Expected parser errors";
+	edit (ip, "bar (c)", "bar (c);");
+	edit (ip, "bar (c);", "bar (c;");
+	edit (ip, "bar (c;", "bar (c);");
+    }
+
+    @Test
+    public void testRejectedReparse () {
+	IncrementalParser ip = parse (CLASS.replace ("    int bar", "    int z;\n    int bar"));
+	// parses, but the tree builder finds the duplicate modifier after the old sets are moved
+	edit (ip, "private int a", "private private int a");
+	edit (ip, "int z;", "int w;");
+	edit (ip, "private private int a", "private int a");
+	edit (ip, "int w;", "int v;");
+    }
+
+    @Test
+    public void testManyEdits () {
+	IncrementalParser ip = parse (CLASS);
+	for (int i = 0; i < 20; i++) {
+	    edit (ip, "if (c > 2)", "if (c > 2) foo (" + i + "); if (c > 2)");
+	    edit (ip, "a += i;", "a += i; a -= " + i + ";");
+	    edit (ip, "private int a", "private int a" + i);
+	}
+    }
+
+    @Test
+    public void testSymbolTableIsBounded () {
+	IncrementalParser ip = parse (CLASS);
+	String name = "a";
+	for (int i = 0; i < 3000; i++) {
+	    String from = "private int " + name + " ";
+	    name = "a" + i;
+	    int offset = ip.getText ().indexOf (from);
+	    assert ip.edit (offset, from.length (), "private int " + name + " ", new CompilerDiagnosticCollector ()) != null;
+	}
+	assert ip.getSymbolCount () < 1100 : "Symbol table was not replaced: " + ip.getSymbolCount ();
+    }
+
+    private IncrementalParser parse (String s) {
+	IncrementalParser ip = new IncrementalParser (g, path, predictCache, treeBuilder);
+	CompilerDiagnosticCollector diagnostics = new CompilerDiagnosticCollector ();
+	SyntaxTree tree = ip.parse (s, diagnostics);
+	assert !diagnostics.hasError () : "Got parser errors: " + TestParseHelper.getParseOutput (diagnostics);
+	assert tree != null : "Failed to parse: " + s;
+	return ip;
+    }
+
+    /** Replace the first from with to and check that the tree is the same as from a full parse */
+    private void edit (IncrementalParser ip, String from, String to) {
+	int offset = ip.getText ().indexOf (from);
+	assert offset >= 0 : "Did not find: " + from;
+	CompilerDiagnosticCollector diagnostics = new CompilerDiagnosticCollector ();
+	SyntaxTree tree = ip.edit (offset, from.length (), to, diagnostics);
+	CompilerDiagnosticCollector expectedDiagnostics = new CompilerDiagnosticCollector ();
+	CharBufferLexer lexer = new CharBufferLexer (CharBuffer.wrap (ip.getText ()));
+	SyntaxTree expected = new EarleyParser (g, path, lexer, predictCache, treeBuilder,
+						expectedDiagnostics, false).parse ();
+	String output = TestParseHelper.getParseOutput (diagnostics);
+	String expectedOutput = TestParseHelper.getParseOutput (expectedDiagnostics);
+	assert output.equals (expectedOutput) : "Got different errors: " + output + ", expected: " + expectedOutput;
+	assert String.valueOf (tree).equals (String.valueOf (expected)) :
+	    "Got different trees: " + tree + ", expected: " + expected;
+	if (tree != null) {
+	    String positions = getPositions (tree.getRoot (), new StringBuilder ());
+	    String expectedPositions = getPositions (expected.getRoot (), new StringBuilder ());
+	    assert positions.equals (expectedPositions) :
+		"Got different positions: " + positions + ", expected: " + expectedPositions;
+	}
+    }
+
+    private int countTokens (String s) {
+	CharBufferLexer lexer = new CharBufferLexer (CharBuffer.wrap (s));
+	while (lexer.hasMoreTokens ())
+	    lexer.nextNonWhitespaceToken ();
+	return lexer.getTokens ().size ();
+    }
+
+    private String getPositions (TreeNode tn, StringBuilder sb) {
+	sb.append (tn.getParsePosition ()).append ("\n");
+	tn.getChildNodes ().forEach (cn -> getPositions (cn, sb));
+	return sb.toString ();
+    }
+}
@@ -0,0 +1,88 @@
+package org.khelekore.parjac.parser;
+
+import java.nio.CharBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.khelekore.parjac.CompilerDiagnosticCollector;
+import org.khelekore.parjac.grammar.CompiledGrammar;
+import org.khelekore.parjac.grammar.Grammar;
+import org.khelekore.parjac.lexer.CharBufferLexer;
+import org.khelekore.parjac.lexer.Token;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class TestNullable {
+    private Grammar g;
+    private PredictCache predictCache;
+
+    @BeforeClass
+    public void createGrammar () {
+	g = new Grammar (false);
+	g.addRule ("Goal", "Statements", Token.END_OF_INPUT);
+	g.addRule ("Statements");
+	g.addRule ("Statements", "Statements", "Statement");
+	g.addRule ("Statement", "Modifiers", "Value", Token.SEMICOLON);
+	g.addRule ("Modifiers");
+	g.addRule ("Modifiers", "Modifiers", Token.IDENTIFIER);
+	g.addRule ("Value");
+	g.addRule ("Value", Token.INT_LITERAL);
+	g.validateRules ();
+	predictCache = new PredictCache (g);
+    }
+
+    @Test
+    public void testNullableSymbols () {
+	CompiledGrammar cg = g.getCompiledGrammar ();
+	assert cg.isNullable (cg.getRuleSymbol ("Statements"));
+	assert cg.isNullable (cg.getRuleSymbol ("Modifiers"));
+	assert cg.isNullable (cg.getRuleSymbol ("Value"));
+	assert !cg.isNullable (cg.getRuleSymbol ("Statement"));
+	assert !cg.isNullable (CompiledGrammar.getSymbol (Token.SEMICOLON));
+	assert g.getRules ("Statements").canBeEmpty ();
+	assert !g.getRules ("Goal").canBeEmpty ();
+    }
+
+    @Test
+    public void testEmptyParts () {
+	testSuccessfulParse ("");
+	testSuccessfulParse (";");
+	testSuccessfulParse (";;;");
+	testSuccessfulParse ("1;");
+	testSuccessfulParse ("a 1;");
+	testSuccessfulParse ("a b c;");
+	testSuccessfulParse ("a; 1; a b 2; ;");
+    }
+
+    @Test
+    public void testWrongOrder () {
+	testFailedParse ("1 a;");
+	testFailedParse ("1 2;");
+    }
+
+    private void testSuccessfulParse (String s) {
+	for (boolean packed : new boolean[] { false, true }) {
+	    CompilerDiagnosticCollector diagnostics = parse (s, packed);
+	    assert !diagnostics.hasError () : "Got parser errors: " +
+		TestParseHelper.getParseOutput (diagnostics);
+	}
+    }
+
+    private void testFailedParse (String s) {
+	for (boolean packed : new boolean[] { false, true }) {
+	    CompilerDiagnosticCollector diagnostics = parse (s, packed);
+	    assert diagnostics.hasError () : "Failed to detect errors";
+	}
+    }
+
+    private CompilerDiagnosticCollector parse (String s, boolean packed) {
+	CompilerDiagnosticCollector diagnostics = new CompilerDiagnosticCollector ();
+	Path path = Paths.get ("TestNullable");
+	CharBufferLexer lexer = new CharBufferLexer (CharBuffer.wrap (s));
+	if (packed)
+	    new PackedEarleyParser (g, path, lexer, predictCache, null, diagnostics, false).parse ();
+	else
+	    new EarleyParser (g, path, lexer, predictCache, null, diagnostics, false).parse ();
+	return diagnostics;
+    }
+}
@@ -0,0 +1,135 @@
+package org.khelekore.parjac.parser;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.khelekore.parjac.CompilerDiagnosticCollector;
+import org.khelekore.parjac.JavaGrammarHelper;
+import org.khelekore.parjac.grammar.Grammar;
+import org.khelekore.parjac.lexer.CharBufferLexer;
+import org.khelekore.parjac.tree.SyntaxTree;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class TestPackedEarleyParser {
+    private Grammar g;
+    private PredictCache predictCache;
+    private JavaTreeBuilder treeBuilder;
+
+    @BeforeClass
+    public void createGrammar () throws IOException {
+	g = JavaGrammarHelper.getValidatedJavaGrammar (false);
+	predictCache = new PredictCache (g);
+	treeBuilder = new JavaTreeBuilder (g);
+    }
+
+    @Test
+    public void testSimpleClasses () {
+	testSameTree ("");
+	testSameTree ("class A {}");
+	testSameTree ("package foo; import java.util.List; class A {} class B {}");
+	testSameTree ("class HW { public static void main (String... args) { S.o.p(\"HW!\"); } }");
+    }
+
+    @Test
+    public void testClassBodies () {
+	testSameTree ("class A<T extends Comparable<T>> extends B implements C, D {\n" +
+		      "    private int a = 3, b[] = {1, 2};\n" +
+		      "    static { a = 4; }\n" +
+		      "    A () { super (); }\n" +
+		      "    class Inner { void foo () { new Object () { int x; }; } }\n" +
+		      "    <S> S get (List<? super S> l) throws E { return l.get (0); }\n" +
+		      "}");
+	testSameTree ("enum E { A, B (1), C { void foo () {} }; E () {} E (int i) {} }");
+	testSameTree ("interface I { int i = 3; default void foo () { } void bar (); }");
+	testSameTree ("@interface Ann { int value () default 1; }");
+    }
+
+    @Test
+    public void testStatements () {
+	testSameTree ("class A { void foo () {\n" +
+		      "    for (int i = 0; i < 10; i++) { if (i > 3) break; else continue; }\n" +
+		      "    for (String s : l) System.out.println (s);\n" +
+		      "    switch (x) { case 1: case 2: foo (); break; default: return; }\n" +
+		      "    try (R r = new R ()) { throw new E (); } catch (E | F e) { } finally { }\n" +
+		      "    Runnable r = () -> { }; Function<A, B> f = a -> a.b ();\n" +
+		      "    int[][] arr = new int[3][]; x = a ? b : c; y = (int)z;\n" +
+		      "    synchronized (this) { while (true) do { } while (false); }\n" +
+		      "}}");
+    }
+
+    @Test
+    public void testManyMembers () {
+	StringBuilder sb = new StringBuilder ("class Many {\n");
+	for (int i = 0; i < 200; i++) {
+	    sb.append ("    private int f" + i + " = " + i + ";\n");
+	    sb.append ("    public int m" + i + " (int a) { if (a > " + i + ") return f" + i +
+		       "; for (int j = 0; j < a; j++) a += j; return a; }\n");
+	}
+	sb.append ("}\n");
+	testSameTree (sb.toString ());
+    }
+
+    @Test
+    public void testRecovery () {
+	testSameDiagnostics ("class A { int a = 3 }");
+	testSameDiagnostics ("class A { void foo () { int a = 3 int b = 4; } }");
+	testSameDiagnostics ("class A { int x = ; }");
+	testSameDiagnostics ("class A { void f() { int x = ; } }");
+	testSameDiagnostics ("class A { void f() { foo (1, ); int y = 2 * ; } }");
+    }
+
+    @Test
+    public void testRecoveryWithoutClearing () throws IOException {
+	// the sets that recovery adds are ambiguous, without clearing nothing hides that
+	Grammar none = JavaGrammarHelper.getValidatedJavaGrammar (false, "none");
+	PredictCache pc = new PredictCache (none);
+	JavaTreeBuilder tb = new JavaTreeBuilder (none);
+	for (String s : new String[] { "class A { int x = ; }", "class A { void f() { int x = ; } }" }) {
+	    CompilerDiagnosticCollector diagnostics = new CompilerDiagnosticCollector ();
+	    SyntaxTree tree = new PackedEarleyParser (none, Paths.get ("TestPackedEarleyParser"),
+						      new CharBufferLexer (CharBuffer.wrap (s)), pc, tb,
+						      diagnostics, false).parse ();
+	    assert tree != null : "Failed to recover: " + TestParseHelper.getParseOutput (diagnostics);
+	    assert TestParseHelper.getParseOutput (diagnostics).contains ("Missing: identifier") :
+		"Wrong errors: " + TestParseHelper.getParseOutput (diagnostics);
+	}
+    }
+
+    private void testSameTree (String s) {
+	CompilerDiagnosticCollector objectDiagnostics = new CompilerDiagnosticCollector ();
+	SyntaxTree objectTree = parse (s, false, objectDiagnostics);
+	CompilerDiagnosticCollector packedDiagnostics = new CompilerDiagnosticCollector ();
+	SyntaxTree packedTree = parse (s, true, packedDiagnostics);
+	assert !objectDiagnostics.hasError () : "Got parser errors: " +
+	    TestParseHelper.getParseOutput (objectDiagnostics);
+	assert !packedDiagnostics.hasError () : "Got parser errors: " +
+	    TestParseHelper.getParseOutput (packedDiagnostics);
+	assert String.valueOf (packedTree).equals (String.valueOf (objectTree)) :
+	    "Got different trees: " + packedTree + ", expected: " + objectTree;
+    }
+
+    private void testSameDiagnostics (String s) {
+	CompilerDiagnosticCollector objectDiagnostics = new CompilerDiagnosticCollector ();
+	SyntaxTree objectTree = parse (s, false, objectDiagnostics);
+	CompilerDiagnosticCollector packedDiagnostics = new CompilerDiagnosticCollector ();
+	SyntaxTree packedTree = parse (s, true, packedDiagnostics);
+	assert objectDiagnostics.hasError () : "Expected parser errors";
+	assert String.valueOf (packedTree).equals (String.valueOf (objectTree)) :
+	    "Got different trees: " + packedTree + ", expected: " + objectTree;
+	String packedOutput = TestParseHelper.getParseOutput (packedDiagnostics);
+	String objectOutput = TestParseHelper.getParseOutput (objectDiagnostics);
+	assert packedOutput.equals (objectOutput) :
+	    "Got different errors: " + packedOutput + ", expected: " + objectOutput;
+    }
+
+    private SyntaxTree parse (String s, boolean packed, CompilerDiagnosticCollector diagnostics) {
+	Path path = Paths.get ("TestPackedEarleyParser");
+	CharBufferLexer lexer = new CharBufferLexer (CharBuffer.wrap (s));
+	if (packed)
+	    return new PackedEarleyParser (g, path, lexer, predictCache, treeBuilder, diagnostics, false).parse ();
+	return new EarleyParser (g, path, lexer, predictCache, treeBuilder, diagnostics, false).parse ();
+    }
+}
@@ -0,0 +1,188 @@
+package org.khelekore.parjac.parser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.khelekore.parjac.CompilerDiagnosticCollector;
+import org.khelekore.parjac.JavaGrammarHelper;
+import org.khelekore.parjac.grammar.Grammar;
+import org.khelekore.parjac.lexer.ByteBufferLexer;
+import org.khelekore.parjac.lexer.CharBufferLexer;
+import org.khelekore.parjac.lexer.Lexer;
+import org.khelekore.parjac.lexer.ParsePosition;
+import org.khelekore.parjac.tree.NormalClassDeclaration;
+import org.khelekore.parjac.tree.SyntaxTree;
+import org.khelekore.parjac.tree.TreeNode;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class TestParallelFileParser {
+    private Grammar g;
+    private PredictCache predictCache;
+    private JavaTreeBuilder treeBuilder;
+    private final Path path = Paths.get ("TestParallelFileParser");
+
+    @BeforeClass
+    public void createGrammar () throws IOException {
+	g = JavaGrammarHelper.getValidatedJavaGrammar (false);
+	predictCache = new PredictCache (g);
+	treeBuilder = new JavaTreeBuilder (g);
+    }
+
+    @Test
+    public void testSmallFiles () {
+	testSameTree ("", 0);
+	testSameTree ("class A {}", 0);
+	testSameTree ("class A { int a; }", 0);
+	testSameTree ("enum E { A, B; int a; void foo () {} }", 0);
+	testSameTree ("interface I { int a = 1; void foo (); }", 0);
+    }
+
+    @Test
+    public void testMembers () {
+	testSameTree ("package foo;\nimport java.util.List;\n" +
+		      "@Ann ({1, 2}) public class A<T> extends B implements C {\n" +
+		      "    private int a = 3, b[] = {1, 2};\n" +
+		      "    Object o = new Object () { int x; }, p = new Object () { };\n" +
+		      "    Runnable r = () -> { };\n" +
+		      "    int l = new int[] {1, 2}.length;\n" +
+		      "    static { a = 4; }\n" +
+		      "    { b = null; };\n" +
+		      "    A () { super (); }\n" +
+		      "    class Inner { void foo () { new Object () { int x; }; } }\n" +
+		      "    enum E { X, Y }\n" +
+		      "    @Deprecated <S> S get (List<? super S> l) throws E { return l.get (0); }\n" +
+		      "    void bar () { for (;;) { } };\n" +
+		      "}\n" +
+		      "class B { int b; }\n", 11);
+    }
+
+    @Test
+    public void testManyMembers () {
+	String s = manyMembers (200);
+	testSameTree (s, 20);
+	testSameTree ("class Small { int a; void foo () {} }\n" + s, 20);
+    }
+
+    @Test
+    public void testByteLexer () {
+	String s = "class Ö {\n    String å = \"€\";\n    /* 😀 */ int π;\n    void é () { }\n}";
+	CompilerDiagnosticCollector diagnostics = new CompilerDiagnosticCollector ();
+	// positions are reported in chars, so they match the char lexer
+	SyntaxTree expected = parse (charLexer (s), "Goal", false, diagnostics);
+	SyntaxTree tree = parseSplit (byteLexer (s), 1, false, new AtomicInteger (), diagnostics);
+	assert !diagnostics.hasError () : TestParseHelper.getParseOutput (diagnostics);
+	assertSame (tree, expected);
+    }
+
+    @Test
+    public void testPackedParser () {
+	String s = manyMembers (20);
+	CompilerDiagnosticCollector diagnostics = new CompilerDiagnosticCollector ();
+	SyntaxTree expected = parse (charLexer (s), "Goal", true, diagnostics);
+	AtomicInteger memberParses = new AtomicInteger ();
+	SyntaxTree tree = parseSplit (charLexer (s), 1, true, memberParses, diagnostics);
+	assert !diagnostics.hasError () : TestParseHelper.getParseOutput (diagnostics);
+	assert memberParses.get () > 1 : "File was not split";
+	assertSame (tree, expected);
+    }
+
+    @Test
+    public void testErrors () {
+	testSameDiagnostics ("class A { int a; void foo () { int a = 3 int b = 4; } int b; }");
+	testSameDiagnostics ("class A { int a; int b = 3 } int c; }");
+	testSameDiagnostics ("class A { int a; int b; ");
+    }
+
+    private String manyMembers (int n) {
+	StringBuilder sb = new StringBuilder ("class Many {\n");
+	for (int i = 0; i < n; i++) {
+	    sb.append ("    private int f" + i + " = " + i + ";\n");
+	    sb.append ("    public int m" + i + " (int a) { if (a > " + i + ") return f" + i +
+		       "; for (int j = 0; j < a; j++) a += j; return a; }\n");
+	}
+	sb.append ("}\n");
+	return sb.toString ();
+    }
+
+    /** Parse with the smallest chunks and check that we get the same tree as a normal parse */
+    private void testSameTree (String s, int expectedParts) {
+	CompilerDiagnosticCollector diagnostics = new CompilerDiagnosticCollector ();
+	SyntaxTree expected = parse (charLexer (s), "Goal", false, diagnostics);
+	AtomicInteger memberParses = new AtomicInteger ();
+	SyntaxTree tree = parseSplit (charLexer (s), 1, false, memberParses, diagnostics);
+	assert !diagnostics.hasError () : "Got parser errors: " + TestParseHelper.getParseOutput (diagnostics);
+	assert memberParses.get () >= expectedParts :
+	    "Expected at least: " + expectedParts + " parts, got: " + memberParses;
+	assertSame (tree, expected);
+    }
+
+    private void assertSame (SyntaxTree tree, SyntaxTree expected) {
+	assert String.valueOf (tree).equals (String.valueOf (expected)) :
+	    "Got different trees: " + tree + ", expected: " + expected;
+	if (expected == null)
+	    return;
+	List<TreeNode> types = expected.getCompilationUnit ().getTypes ();
+	for (int i = 0; i < types.size (); i++) {
+	    if (!(types.get (i) instanceof NormalClassDeclaration))
+		continue;
+	    List<TreeNode> ed = ((NormalClassDeclaration)types.get (i)).getBody ().getDeclarations ();
+	    List<TreeNode> td =
+		((NormalClassDeclaration)tree.getCompilationUnit ().getTypes ().get (i)).getBody ().getDeclarations ();
+	    for (int j = 0; j < ed.size (); j++) {
+		ParsePosition ep = ed.get (j).getParsePosition ();
+		ParsePosition tp = td.get (j).getParsePosition ();
+		assert tp.getTokenStartPos () == ep.getTokenStartPos () &&
+		    tp.getLineNumber () == ep.getLineNumber () &&
+		    tp.getTokenColumn () == ep.getTokenColumn () :
+		    "Wrong position: " + tp + ", expected: " + ep;
+	    }
+	}
+    }
+
+    private void testSameDiagnostics (String s) {
+	CompilerDiagnosticCollector expected = new CompilerDiagnosticCollector ();
+	SyntaxTree expectedTree = parse (charLexer (s), "Goal", false, expected);
+	CompilerDiagnosticCollector diagnostics = new CompilerDiagnosticCollector ();
+	SyntaxTree tree = parseSplit (charLexer (s), 1, false, new AtomicInteger (), diagnostics);
+	assert String.valueOf (tree).equals (String.valueOf (expectedTree)) :
+	    "Got different trees: " + tree + ", expected: " + expectedTree;
+	String output = TestParseHelper.getParseOutput (diagnostics);
+	String expectedOutput = TestParseHelper.getParseOutput (expected);
+	assert expected.hasError () : "Expected parser errors";
+	assert output.equals (expectedOutput) : "Got different errors: " + output + ", expected: " + expectedOutput;
+    }
+
+    private SyntaxTree parseSplit (Lexer lexer, int chunkTokens, boolean packed,
+				   AtomicInteger memberParses, CompilerDiagnosticCollector diagnostics) {
+	GoalParser parser = (l, goal, d) -> {
+	    if (goal.equals (JavaGrammarHelper.MEMBER_GOAL))
+		memberParses.incrementAndGet ();
+	    return parse (l, goal, packed, d);
+	};
+	return new ParallelFileParser (lexer, parser, diagnostics, chunkTokens).parse ();
+    }
+
+    private SyntaxTree parse (Lexer lexer, String goal, boolean packed,
+			      CompilerDiagnosticCollector diagnostics) {
+	if (packed)
+	    return new PackedEarleyParser (g, path, lexer, predictCache, treeBuilder,
+					   diagnostics, false, goal).parse ();
+	return new EarleyParser (g, path, lexer, predictCache, treeBuilder,
+				 diagnostics, false, goal).parse ();
+    }
+
+    private static Lexer charLexer (String s) {
+	return new CharBufferLexer (CharBuffer.wrap (s));
+    }
+
+    private static Lexer byteLexer (String s) {
+	return new ByteBufferLexer (ByteBuffer.wrap (s.getBytes (StandardCharsets.UTF_8)));
+    }
+}